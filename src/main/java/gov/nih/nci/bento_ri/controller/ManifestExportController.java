@@ -0,0 +1,79 @@
+package gov.nih.nci.bento_ri.controller;
+
+import gov.nih.nci.bento_ri.model.OverviewTable;
+import gov.nih.nci.bento_ri.model.PrivateESDataFetcher;
+import gov.nih.nci.bento_ri.service.ManifestWriter;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import jakarta.servlet.http.HttpServletRequest;
+
+import java.util.Map;
+
+/**
+ * Streams overview tables as manifest files
+ * The request body takes the same facet filters as the overview queries, plus optional order_by and sort_direction
+ * Requests go through the same QueryGate as GraphQL queries
+ */
+@RestController
+public class ManifestExportController {
+    private static final Logger logger = LogManager.getLogger(ManifestExportController.class);
+    private final PrivateESDataFetcher dataFetcher;
+    private final QueryGate queryGate;
+
+    public ManifestExportController(PrivateESDataFetcher dataFetcher, QueryGate queryGate) {
+        this.dataFetcher = dataFetcher;
+        this.queryGate = queryGate;
+    }
+
+    @PostMapping("/v1/export/{overviewType}")
+    public ResponseEntity<StreamingResponseBody> export(@PathVariable String overviewType,
+            @RequestParam(defaultValue = "csv") String format,
+            @RequestBody(required = false) Map<String, Object> params,
+            HttpServletRequest request) {
+        OverviewTable table = dataFetcher.exportableTable(overviewType);
+        Map<String, Object> filters = params == null ? Map.of() : params;
+        HttpStatus refusal = queryGate.refusal(request);
+        ManifestWriter.Format manifestFormat;
+
+        if (refusal != null) {
+            return ResponseEntity.status(refusal).build();
+        }
+
+        if (table == null) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).build();
+        }
+
+        // Bad filters are reported before the response starts, instead of failing halfway through the file
+        try {
+            manifestFormat = ManifestWriter.Format.fromName(format);
+            dataFetcher.checkExportParams(filters);
+        } catch (IllegalArgumentException e) {
+            logger.warn("Refused to export " + overviewType + ": " + e.getMessage());
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).build();
+        }
+
+        // No content length, so the rows are sent with chunked transfer encoding as they're written
+        StreamingResponseBody body = out -> {
+            ManifestWriter writer = new ManifestWriter(out, manifestFormat);
+            dataFetcher.exportOverview(table, filters, writer);
+            logger.info("Exported " + writer.getRowCount() + " rows of " + overviewType);
+        };
+
+        return ResponseEntity.ok()
+            .contentType(MediaType.parseMediaType(manifestFormat.contentType))
+            .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + overviewType + "." + manifestFormat.extension + "\"")
+            .body(body);
+    }
+}
@@ -0,0 +1,134 @@
+package gov.nih.nci.bento_ri.controller;
+
+import gov.nih.nci.bento_ri.model.OverviewTable;
+import gov.nih.nci.bento_ri.model.PrivateESDataFetcher;
+import gov.nih.nci.bento_ri.service.ManifestJobService;
+import gov.nih.nci.bento_ri.service.ManifestWriter;
+
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import jakarta.servlet.http.HttpServletRequest;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Builds manifests in the background: submit the filters, poll the job, then download the file
+ * Downloads honor Range headers, so an interrupted download can be resumed
+ * Every request goes through the same QueryGate as GraphQL queries, and jobs can only be polled and downloaded with
+ * the session that submitted them
+ */
+@RestController
+public class ManifestJobController {
+    private final PrivateESDataFetcher dataFetcher;
+    private final ManifestJobService jobService;
+    private final QueryGate queryGate;
+
+    public ManifestJobController(PrivateESDataFetcher dataFetcher, ManifestJobService jobService, QueryGate queryGate) {
+        this.dataFetcher = dataFetcher;
+        this.jobService = jobService;
+        this.queryGate = queryGate;
+    }
+
+    @PostMapping("/v1/manifest-jobs/{overviewType}")
+    public ResponseEntity<Map<String, Object>> submit(@PathVariable String overviewType,
+            @RequestParam(defaultValue = "csv") String format,
+            @RequestBody(required = false) Map<String, Object> params,
+            HttpServletRequest request) {
+        OverviewTable table = dataFetcher.exportableTable(overviewType);
+        Map<String, Object> filters = params == null ? Map.of() : params;
+        HttpStatus refusal = queryGate.refusal(request);
+        ManifestWriter.Format manifestFormat;
+        ManifestJobService.Job job;
+
+        if (refusal != null) {
+            return ResponseEntity.status(refusal).build();
+        }
+
+        if (table == null) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).build();
+        }
+
+        // Bad filters are reported now, instead of failing the job once it runs
+        try {
+            manifestFormat = ManifestWriter.Format.fromName(format);
+            dataFetcher.checkExportParams(filters);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(Map.of("error", e.getMessage()));
+        }
+
+        try {
+            job = jobService.submit(overviewType, manifestFormat, queryGate.callerId(request), writer -> dataFetcher.exportOverview(table, filters, writer));
+        } catch (IOException e) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body(Map.of("error", e.getMessage()));
+        }
+
+        return ResponseEntity.status(HttpStatus.ACCEPTED).body(describe(job));
+    }
+
+    @GetMapping("/v1/manifest-jobs/{jobId}")
+    public ResponseEntity<Map<String, Object>> status(@PathVariable String jobId, HttpServletRequest request) {
+        ManifestJobService.Job job = jobService.getJob(jobId, queryGate.callerId(request));
+        HttpStatus refusal = queryGate.refusal(request);
+
+        if (refusal != null) {
+            return ResponseEntity.status(refusal).build();
+        }
+
+        if (job == null) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).build();
+        }
+
+        return ResponseEntity.ok(describe(job));
+    }
+
+    // Spring serves Resource bodies as partial content when the request has a Range header
+    @GetMapping("/v1/manifest-jobs/{jobId}/file")
+    public ResponseEntity<Resource> download(@PathVariable String jobId, HttpServletRequest request) {
+        ManifestJobService.Job job = jobService.getJob(jobId, queryGate.callerId(request));
+        HttpStatus refusal = queryGate.refusal(request);
+
+        if (refusal != null) {
+            return ResponseEntity.status(refusal).build();
+        }
+
+        if (job == null) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).build();
+        }
+
+        if (job.getStatus() != ManifestJobService.Status.DONE) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).build();
+        }
+
+        return ResponseEntity.ok()
+            .contentType(MediaType.parseMediaType("application/gzip"))
+            .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + job.getFileName() + "\"")
+            .header(HttpHeaders.ACCEPT_RANGES, "bytes")
+            .body(new FileSystemResource(jobService.getFile(job)));
+    }
+
+    private Map<String, Object> describe(ManifestJobService.Job job) {
+        Map<String, Object> description = new HashMap<>();
+
+        description.put("job_id", job.id);
+        description.put("type", job.type);
+        description.put("format", job.format.extension);
+        description.put("status", job.getStatus().name());
+        description.put("rows", job.getRowCount());
+        description.put("error", job.getError());
+
+        return description;
+    }
+}
@@ -0,0 +1,70 @@
+package gov.nih.nci.bento_ri.controller;
+
+import gov.nih.nci.bento_ri.service.ManifestWriter;
+import gov.nih.nci.bento_ri.service.ParticipantIdResolver;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import jakarta.servlet.http.HttpServletRequest;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.Set;
+
+/**
+ * Resolves an uploaded list of participant IDs, sent as the request body
+ * The list is read and checked before the response starts, so a list that's too long gets a 400 instead of a
+ * truncated file, and the results are then streamed as they're resolved
+ * Requests go through the same QueryGate as GraphQL queries
+ */
+@RestController
+public class ParticipantIdUploadController {
+    private static final Logger logger = LogManager.getLogger(ParticipantIdUploadController.class);
+    private final ParticipantIdResolver resolver;
+    private final QueryGate queryGate;
+
+    public ParticipantIdUploadController(ParticipantIdResolver resolver, QueryGate queryGate) {
+        this.resolver = resolver;
+        this.queryGate = queryGate;
+    }
+
+    @PostMapping("/v1/participant-ids/resolve")
+    public ResponseEntity<StreamingResponseBody> resolve(@RequestParam(defaultValue = "ndjson") String format,
+            InputStream body,
+            HttpServletRequest request) throws IOException {
+        HttpStatus refusal = queryGate.refusal(request);
+        ManifestWriter.Format resultFormat;
+        Set<String> ids;
+
+        if (refusal != null) {
+            return ResponseEntity.status(refusal).build();
+        }
+
+        try {
+            resultFormat = ManifestWriter.Format.fromName(format);
+            ids = resolver.readIds(new InputStreamReader(body, StandardCharsets.UTF_8));
+        } catch (IllegalArgumentException e) {
+            logger.warn("Refused to resolve participant IDs: " + e.getMessage());
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).build();
+        }
+
+        // No content length, so the results are sent with chunked transfer encoding as they're resolved
+        StreamingResponseBody results = out -> resolver.resolve(ids, new ManifestWriter(out, resultFormat));
+
+        return ResponseEntity.ok()
+            .contentType(MediaType.parseMediaType(resultFormat.contentType))
+            .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"participant_ids." + resultFormat.extension + "\"")
+            .body(results);
+    }
+}
@@ -0,0 +1,79 @@
+package gov.nih.nci.bento_ri.controller;
+
+import gov.nih.nci.bento.model.ConfigurationDAO;
+import gov.nih.nci.bento.service.AuthenticationService;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+
+import jakarta.servlet.http.Cookie;
+import jakarta.servlet.http.HttpServletRequest;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+
+/**
+ * The checks the GraphQL endpoint makes before it runs a query, for the REST endpoints that run queries too
+ * Requests must be authenticated when auth.enabled is set, and are refused when allow_graphql_query is off
+ */
+@Component
+public class QueryGate {
+    private static final Logger logger = LogManager.getLogger(QueryGate.class);
+    // The session cookie of the Bento auth service, which AuthenticationService checks
+    public static final String SESSION_COOKIE = "connect.sid";
+    private final ConfigurationDAO config;
+    private final AuthenticationService authService;
+
+    public QueryGate(ConfigurationDAO config, AuthenticationService authService) {
+        this.config = config;
+        this.authService = authService;
+    }
+
+    /**
+     * Checks whether a request may run queries
+     * @param request The HTTP request, with the caller's session cookie
+     * @return The status to refuse the request with, or null if it may go ahead
+     */
+    public HttpStatus refusal(HttpServletRequest request) {
+        if (config.isAuthEnabled() && !authService.isAuthenticated(request)) {
+            logger.warn("Refused an unauthenticated request to " + request.getRequestURI());
+            return HttpStatus.UNAUTHORIZED;
+        }
+
+        if (!config.isAllowGraphQLQuery()) {
+            logger.warn("Refused a request to " + request.getRequestURI() + ", since queries aren't allowed");
+            return HttpStatus.FORBIDDEN;
+        }
+
+        return null;
+    }
+
+    /**
+     * Identifies the caller of a request by its session, for things that belong to whoever created them
+     * The session ID is hashed, so that it can be stored without giving the session away
+     * @param request The HTTP request, with the caller's session cookie
+     * @return The caller ID, or null if the request has no session
+     */
+    public String callerId(HttpServletRequest request) {
+        if (request.getCookies() == null) {
+            return null;
+        }
+
+        for (Cookie cookie : request.getCookies()) {
+            if (cookie.getName().equals(SESSION_COOKIE) && !cookie.getValue().isEmpty()) {
+                try {
+                    MessageDigest digest = MessageDigest.getInstance("SHA-256");
+                    return HexFormat.of().formatHex(digest.digest(cookie.getValue().getBytes(StandardCharsets.UTF_8)));
+                } catch (NoSuchAlgorithmException e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+        }
+
+        return null;
+    }
+}
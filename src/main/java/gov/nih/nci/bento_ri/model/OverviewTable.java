@@ -0,0 +1,305 @@
+package gov.nih.nci.bento_ri.model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * What an overview table retrieves from Opensearch, compiled once from overview_tables.yaml
+ * Property mappings, source includes and sort clauses are built ahead of time and never modified
+ */
+public final class OverviewTable {
+    private static final String ASC = "asc";
+    private static final String DESC = "desc";
+
+    // A field of the table's rows
+    public static final class Property {
+        public final String gqlName;
+        public final String osName;
+        public final Property[] nested; // Empty for fields that aren't nested objects
+
+        Property(String gqlName, String osName, Property[] nested) {
+            this.gqlName = gqlName;
+            this.osName = osName;
+            this.nested = nested;
+        }
+    }
+
+    private final String name;
+    private final String endpoint;
+    private final String index;
+    private final String queryName;
+    private final boolean exportable;
+    private final Property[] fields;
+    private final List<Map<String, Object>> properties;
+    private final List<String> sourceIncludes;
+    private final Map<String, String> renames;
+    private final boolean passThrough;
+    private final Map<String, String> snapshotFilters;
+    private final Set<String> sortKeys;
+    private final Map<String, Object> defaultSortClause;
+    private final Map<String, Map<String, Object>> ascendingSortClauses;
+    private final Map<String, Map<String, Object>> descendingSortClauses;
+
+    private OverviewTable(String name, Map<String, Object> config) {
+        Object defaultSort = require(name, config, "default_sort");
+        Object sortFieldsRaw = config.get("sort_fields");
+        Map<String, Map<String, Object>> ascending = new HashMap<>();
+        Map<String, Map<String, Object>> descending = new HashMap<>();
+
+        this.name = name;
+        this.endpoint = (String) require(name, config, "endpoint");
+        this.index = (String) require(name, config, "index");
+        this.queryName = (String) config.get("query_name");
+        this.exportable = Boolean.TRUE.equals(config.get("exportable"));
+        this.fields = compileProperties(name, require(name, config, "properties"));
+        this.properties = Collections.unmodifiableList(toMaps(fields));
+        this.sourceIncludes = List.copyOf(includes(fields, ""));
+        this.renames = renames(fields);
+        this.passThrough = Arrays.stream(fields).allMatch(field -> namesMatch(field.nested));
+        this.defaultSortClause = Map.of((String) defaultSort, ASC);
+
+        if (sortFieldsRaw instanceof Map) {
+            for (Map.Entry<?, ?> sortField : ((Map<?, ?>) sortFieldsRaw).entrySet()) {
+                Map<?, ?> sortConfig = (Map<?, ?>) sortField.getValue();
+                String osName = (String) sortConfig.get("os_name");
+                String path = (String) sortConfig.get("path");
+
+                if (osName == null) {
+                    throw new IllegalArgumentException("Sort field " + sortField.getKey() + " of overview table " + name + " has no os_name");
+                }
+
+                ascending.put((String) sortField.getKey(), sortClause(osName, path, ASC));
+                descending.put((String) sortField.getKey(), sortClause(osName, path, DESC));
+            }
+        }
+
+        this.ascendingSortClauses = Map.copyOf(ascending);
+        this.descendingSortClauses = Map.copyOf(descending);
+        this.snapshotFilters = snapshotFilters(name, config.get("snapshot_filters"));
+
+        Set<String> keys = new HashSet<>();
+        keys.addAll(defaultSortClause.keySet());
+        ascending.values().forEach(clause -> keys.addAll(clause.keySet()));
+        this.sortKeys = Set.copyOf(keys);
+    }
+
+    /**
+     * Compiles the overview tables of overview_tables.yaml
+     * @param config The parsed YAML, table name -> table configuration
+     * @return Table name -> table, in the order of the YAML
+     */
+    public static Map<String, OverviewTable> compile(Map<String, Map<String, Object>> config) {
+        Map<String, OverviewTable> tables = new LinkedHashMap<>();
+
+        for (Map.Entry<String, Map<String, Object>> entry : config.entrySet()) {
+            tables.put(entry.getKey(), new OverviewTable(entry.getKey(), entry.getValue()));
+        }
+
+        return Collections.unmodifiableMap(tables);
+    }
+
+    /**
+     * The Opensearch index that an endpoint searches
+     * @param endpoint Opensearch endpoint, such as "/diagnoses/_search"
+     * @return
+     */
+    public static String searchedIndex(String endpoint) {
+        return endpoint.split("/")[1];
+    }
+
+    /**
+     * The sort clause for a GraphQL field, or the default sort if the field isn't sortable
+     * @param orderBy GraphQL field to sort by
+     * @param direction "asc" or "desc", anything else sorts in ascending order
+     * @return
+     */
+    public Map<String, Object> sortClause(String orderBy, String direction) {
+        Map<String, Map<String, Object>> clauses = DESC.equalsIgnoreCase(direction) ? descendingSortClauses : ascendingSortClauses;
+
+        if (orderBy == null || !clauses.containsKey(orderBy)) {
+            return defaultSortClause;
+        }
+
+        return clauses.get(orderBy);
+    }
+
+    public boolean isSortable(String orderBy) {
+        return ascendingSortClauses.containsKey(orderBy);
+    }
+
+    public String name() {
+        return name;
+    }
+
+    public String endpoint() {
+        return endpoint;
+    }
+
+    public String index() {
+        return index;
+    }
+
+    public String queryName() {
+        return queryName;
+    }
+
+    public boolean isExportable() {
+        return exportable;
+    }
+
+    public Property[] fields() {
+        return fields.clone();
+    }
+
+    // GraphQL field -> Opensearch field mappings, in the form ESService.collectPage() takes
+    public List<Map<String, Object>> properties() {
+        return properties;
+    }
+
+    // Opensearch _source includes for all of the table's fields
+    public List<String> sourceIncludes() {
+        return sourceIncludes;
+    }
+
+    // GraphQL field -> Opensearch field, for the top level fields whose names differ
+    public Map<String, String> renames() {
+        return renames;
+    }
+
+    // Whether rows can be served straight from each document's _source, with only renames() applied
+    public boolean isPassThrough() {
+        return passThrough;
+    }
+
+    // GraphQL filter -> Opensearch field, for the filters a local snapshot can answer, empty if the table has no snapshot
+    public Map<String, String> snapshotFilters() {
+        return snapshotFilters;
+    }
+
+    public boolean hasSnapshot() {
+        return !snapshotFilters.isEmpty();
+    }
+
+    // Opensearch fields of every sort clause, including the default sort
+    public Set<String> sortKeys() {
+        return sortKeys;
+    }
+
+    private static Object require(String name, Map<String, Object> config, String key) {
+        Object value = config.get(key);
+
+        if (value == null) {
+            throw new IllegalArgumentException("Overview table " + name + " has no " + key);
+        }
+
+        return value;
+    }
+
+    private static Property[] compileProperties(String name, Object propertiesRaw) {
+        List<?> propertyConfigs = (List<?>) propertiesRaw;
+        Property[] compiled = new Property[propertyConfigs.size()];
+
+        for (int i = 0; i < compiled.length; i++) {
+            Map<?, ?> propertyConfig = (Map<?, ?>) propertyConfigs.get(i);
+            String gqlName = (String) propertyConfig.get("gql_name");
+            String osName = (String) propertyConfig.get("os_name");
+            Object nested = propertyConfig.get("nested");
+
+            if (gqlName == null || osName == null) {
+                throw new IllegalArgumentException("Every property of overview table " + name + " needs a gql_name and an os_name");
+            }
+
+            compiled[i] = new Property(gqlName, osName, nested == null ? new Property[0] : compileProperties(name, nested));
+        }
+
+        return compiled;
+    }
+
+    private static List<Map<String, Object>> toMaps(Property[] properties) {
+        List<Map<String, Object>> maps = new ArrayList<>(properties.length);
+
+        for (Property property : properties) {
+            if (property.nested.length > 0) {
+                maps.add(Map.of(
+                    "gqlName", property.gqlName,
+                    "osName", property.osName,
+                    "nested", Collections.unmodifiableList(toMaps(property.nested))
+                ));
+            } else {
+                maps.add(Map.of("gqlName", property.gqlName, "osName", property.osName));
+            }
+        }
+
+        return maps;
+    }
+
+    private static List<String> includes(Property[] properties, String prefix) {
+        List<String> includes = new ArrayList<>();
+
+        for (Property property : properties) {
+            if (property.nested.length > 0) {
+                includes.addAll(includes(property.nested, prefix + property.osName + "."));
+            } else {
+                includes.add(prefix + property.osName);
+            }
+        }
+
+        return includes;
+    }
+
+    private static Map<String, String> snapshotFilters(String name, Object filtersRaw) {
+        Map<String, String> filters = new HashMap<>();
+
+        if (filtersRaw == null) {
+            return Map.of();
+        }
+
+        if (!(filtersRaw instanceof Map)) {
+            throw new IllegalArgumentException("snapshot_filters of overview table " + name + " must map filters to Opensearch fields");
+        }
+
+        ((Map<?, ?>) filtersRaw).forEach((filter, field) -> filters.put((String) filter, (String) field));
+
+        return Map.copyOf(filters);
+    }
+
+    private static Map<String, String> renames(Property[] properties) {
+        Map<String, String> renames = new HashMap<>();
+
+        for (Property property : properties) {
+            if (!property.gqlName.equals(property.osName)) {
+                renames.put(property.gqlName, property.osName);
+            }
+        }
+
+        return Map.copyOf(renames);
+    }
+
+    private static boolean namesMatch(Property[] properties) {
+        for (Property property : properties) {
+            if (!property.gqlName.equals(property.osName) || !namesMatch(property.nested)) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private static Map<String, Object> sortClause(String osName, String path, String direction) {
+        if (path == null) {
+            return Map.of(osName, direction);
+        }
+
+        return Map.of(path + "." + osName, Map.of(
+            "nested_path", path,
+            "order", direction
+        ));
+    }
+}
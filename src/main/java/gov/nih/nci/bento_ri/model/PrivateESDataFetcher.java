@@ -3,10 +3,25 @@ package gov.nih.nci.bento_ri.model;
 import gov.nih.nci.bento.constants.Const;
 import gov.nih.nci.bento.model.AbstractPrivateESDataFetcher;
 import gov.nih.nci.bento.model.search.yaml.YamlQueryFactory;
-import gov.nih.nci.bento.service.ESService;
 import gov.nih.nci.bento.utility.TypeChecker;
+import gov.nih.nci.bento_ri.service.CohortSets;
+import gov.nih.nci.bento_ri.service.CohortStore;
+import gov.nih.nci.bento_ri.service.CountStrategy;
+import gov.nih.nci.bento_ri.service.CursorRegistry;
+import gov.nih.nci.bento_ri.service.FacetEngine;
+import gov.nih.nci.bento_ri.service.FacetFilterSettings;
+import gov.nih.nci.bento_ri.service.FacetIndex;
+import gov.nih.nci.bento_ri.service.HomeStatsSnapshot;
 import gov.nih.nci.bento_ri.service.InventoryESService;
+import gov.nih.nci.bento_ri.service.ManifestWriter;
+import gov.nih.nci.bento_ri.service.OverviewSnapshotStore;
+import gov.nih.nci.bento_ri.service.ParticipantIdIndex;
+import gov.nih.nci.bento_ri.service.ParticipantIdLookup;
+import gov.nih.nci.bento_ri.service.StudyCatalog;
+import graphql.schema.DataFetchingEnvironment;
+import graphql.schema.SelectedField;
 import graphql.schema.idl.RuntimeWiring;
+import graphql.schema.idl.TypeRuntimeWiring;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -16,6 +31,8 @@ import org.springframework.core.io.ClassPathResource;
 import org.springframework.stereotype.Component;
 import org.yaml.snakeyaml.Yaml;
 
+import jakarta.annotation.PostConstruct;
+
 import com.github.benmanes.caffeine.cache.Cache;
 import com.google.common.reflect.TypeToken;
 import com.google.gson.JsonArray;
@@ -25,7 +42,13 @@ import com.google.gson.JsonObject;
 import java.io.InputStream;
 import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
 import java.util.stream.Collectors;
+import java.util.stream.StreamSupport;
 
 import static graphql.schema.idl.TypeRuntimeWiring.newTypeWiring;
 
@@ -36,20 +59,92 @@ public class PrivateESDataFetcher extends AbstractPrivateESDataFetcher {
     private InventoryESService inventoryESService;
     @Autowired
     private Cache<String, Object> caffeineCache;
+    @Autowired
+    private OverviewSnapshotStore snapshotStore;
+    @Autowired
+    private FacetEngine facetEngine;
+    @Autowired
+    private CohortStore cohortStore;
+    @Autowired
+    private ParticipantIdLookup participantIdLookup;
+    @Autowired
+    private StudyCatalog studyCatalog;
+    @Autowired
+    private HomeStatsSnapshot homeStats;
 
     private Map<String, Map<String, Map<String, Integer>>> facetFilterThresholds;
-    private Map<String, List<Map<String, String>>> facetFilters;
+    private Map<String, List<Map<String, String>>> facetFilters = new HashMap<>();
+    private Map<String, FacetFilterSettings> facetFilterSettings = new HashMap<>();
+    private Map<String, CountStrategy> countStrategies = new HashMap<>();
+    private Map<String, Integer> precisionThresholds = new HashMap<>();
+    private Map<String, OverviewTable> overviewTables;
 
     // parameters used in queries
     final String PAGE_SIZE = "first";
     final String OFFSET = "offset";
     final String ORDER_BY = "order_by";
     final String SORT_DIRECTION = "sort_direction";
+    final String FACET = "facet";
+    final String AFTER = "after";
+    final String CURSOR_MODE = "cursor_mode";
+
+    // Cohort manifest fields that are retrieved with every entity type
+    final Set<String> COHORT_BASE_FIELDS = Set.of(
+        "dbgap_accession", "consent_group_name", "consent_group_number",
+        "id", "participant_id", "race", "sex_at_birth"
+    );
+
+    // Entity types of the cohort manifest, each retrieved by its own request
+    final List<String> COHORT_ENTITIES = List.of(
+        "diagnoses", "genetic_analyses", "survivals",
+        "synonyms", "treatments", "treatment_responses"
+    );
+
+    // Entity type requests of cohortMetadata run on their own pool, so that they can't take over the shared slice pool
+    final int COHORT_ENTITY_THREADS = 4;
+    private final ExecutorService cohortEntityExecutor = Executors.newFixedThreadPool(COHORT_ENTITY_THREADS, runnable -> {
+        Thread thread = new Thread(runnable, "cohort-entities");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // Rows per request when exporting a manifest
+    final int EXPORT_PAGE_SIZE = 1000;
+
+    // Maximum number of overview pages being prefetched at once, across all users
+    // Prefetching also stops whenever the cluster is busy, see InventoryESService.isBusy()
+    final int PREFETCH_BUDGET = 4;
+    private final Semaphore prefetchBudget = new Semaphore(PREFETCH_BUDGET);
+    private final ExecutorService prefetchExecutor = Executors.newFixedThreadPool(2, runnable -> {
+        Thread thread = new Thread(runnable, "overview-prefetch");
+        thread.setDaemon(true);
+        thread.setPriority(Thread.MIN_PRIORITY);
+        return thread;
+    });
+
+    // Buckets of each cohort chart, and each cohort's participant counts in them
+    private record CohortChartCounts(
+        Map<String, List<String>> bucketNames,
+        Map<String, Map<String, List<Map<String, Object>>>> groupCounts,
+        int participantCount
+    ) {}
+
+    // Aggregation that counts the participants of the combined cohorts
+    final String PARTICIPANT_COUNT_AGG_NAME = "participant_count";
 
     // Maximum numbers of buckets to show in cohort analyzer charts
     final int COHORT_CHART_BUCKET_LIMIT_HIGH = 20;
     final int COHORT_CHART_BUCKET_LIMIT_LOW = 5;
 
+    // Maximum number of cohorts compared by one cohortCharts call
+    final int COHORT_CHART_COHORT_LIMIT = 10;
+
+    // Maximum number of IDs returned by one participantIdSuggestions call
+    final int PARTICIPANT_ID_SUGGESTION_LIMIT = 100;
+
+    // Fields of studiesListing, named the same in GraphQL and Opensearch
+    final List<String> STUDIES_LISTING_FIELDS = List.of("dbgap_accession", "study_name", "num_participants", "num_diseases");
+
     final String STUDIES_FACET_END_POINT = "/study_participants/_search";
     final String COHORTS_END_POINT = "/cohorts/_search";
     final String GENETIC_ANALYSES_END_POINT = "/genetic_analyses/_search";
@@ -59,7 +154,6 @@ public class PrivateESDataFetcher extends AbstractPrivateESDataFetcher {
     final String TREATMENTS_END_POINT = "/treatments/_search";
     final String TREATMENT_RESPONSES_END_POINT = "/treatment_responses/_search";
     final String DIAGNOSES_END_POINT = "/diagnoses/_search";
-    final String HOME_STATS_END_POINT = "/home_stats/_search";
     final String STUDIES_END_POINT = "/studies/_search";
     final String SAMPLES_END_POINT = "/samples/_search";
     final Map<String, String> ENDPOINTS = Map.ofEntries(
@@ -74,7 +168,7 @@ public class PrivateESDataFetcher extends AbstractPrivateESDataFetcher {
     );
 
     // For slider fields
-    final Set<String> RANGE_PARAMS = Set.of(
+    public static final Set<String> RANGE_PARAMS = Set.of(
         // Diagnoses
         "age_at_diagnosis",
         // Survivals
@@ -101,6 +195,7 @@ public class PrivateESDataFetcher extends AbstractPrivateESDataFetcher {
         super(esService);
         inventoryESService = esService;
         yamlQueryFactory = new YamlQueryFactory(esService);
+        Map<String, List<Map<String, Object>>> facetFilterConfigs;
 
         // Load facet filters
         try {
@@ -108,7 +203,7 @@ public class PrivateESDataFetcher extends AbstractPrivateESDataFetcher {
             ClassPathResource facetFiltersResource = new ClassPathResource(facetFiltersPath);
             InputStream facetFilterFileStream = facetFiltersResource.getInputStream();
             Yaml facetFilterYaml = new Yaml();
-            this.facetFilters = facetFilterYaml.load(facetFilterFileStream);
+            facetFilterConfigs = facetFilterYaml.load(facetFilterFileStream);
         } catch (IOException e) {
             logger.error("Error reading facet filters: "+ e.toString());
             throw new IOException(e.toString());
@@ -125,80 +220,169 @@ public class PrivateESDataFetcher extends AbstractPrivateESDataFetcher {
             logger.error("Error reading facet filter recount thresholds: " + e.toString());
             throw new IOException(e.toString());
         }
+
+        // Load overview tables
+        try {
+            String overviewTablesPath = Const.YAML_QUERY.SUB_FOLDER + "overview_tables.yaml";
+            ClassPathResource overviewTablesResource = new ClassPathResource(overviewTablesPath);
+            InputStream overviewTablesFileStream = overviewTablesResource.getInputStream();
+            Yaml overviewTablesYaml = new Yaml();
+            this.overviewTables = OverviewTable.compile(overviewTablesYaml.load(overviewTablesFileStream));
+        } catch (IOException | IllegalArgumentException | ClassCastException e) {
+            logger.error("Error reading overview tables: " + e.toString());
+            throw new IOException(e.toString());
+        }
+
+        // Parse each facet filter's settings, and how its counts are computed
+        try {
+            for (Map.Entry<String, List<Map<String, Object>>> entry : facetFilterConfigs.entrySet()) {
+                List<Map<String, String>> filters = new ArrayList<>();
+
+                for (Map<String, Object> filter : entry.getValue()) {
+                    Map<String, String> textSettings = FacetFilterSettings.textSettings(filter);
+                    FacetFilterSettings settings = FacetFilterSettings.fromConfig(filter);
+                    String field = textSettings.get("agg_name");
+
+                    filters.add(textSettings);
+                    facetFilterSettings.put(field, settings);
+                    countStrategies.put(field, settings.countStrategy());
+                    precisionThresholds.put(field, settings.precisionThreshold());
+                }
+
+                facetFilters.put(entry.getKey(), filters);
+            }
+        } catch (IllegalArgumentException | ClassCastException | NullPointerException e) {
+            logger.error("Error reading facet filter settings: " + e.toString());
+            throw new IOException(e.toString());
+        }
+
+        // Compile the aggregation request bodies for every facet filter
+        inventoryESService.compileQueryTemplates(facetFilters, facetFilterSettings, RANGE_PARAMS);
+    }
+
+    // Overview tables with snapshot_filters are kept as local snapshots, when that's enabled
+    @PostConstruct
+    public void trackSnapshots() {
+        List<OverviewSnapshotStore.Table> snapshotTables = new ArrayList<>();
+
+        for (OverviewTable table : overviewTables.values()) {
+            Map<String, String> fields = new LinkedHashMap<>();
+            Set<String> stringColumns = new HashSet<>();
+            Set<String> numberColumns = new HashSet<>();
+
+            if (!table.hasSnapshot()) {
+                continue;
+            }
+
+            for (OverviewTable.Property field : table.fields()) {
+                fields.put(field.gqlName, field.osName);
+            }
+
+            table.snapshotFilters().forEach((filter, column) ->
+                (RANGE_PARAMS.contains(filter) ? numberColumns : stringColumns).add(column)
+            );
+
+            snapshotTables.add(new OverviewSnapshotStore.Table(
+                table.name(),
+                OverviewTable.searchedIndex(table.endpoint()),
+                fields,
+                stringColumns,
+                numberColumns,
+                table.sortKeys()
+            ));
+        }
+
+        snapshotStore.track(snapshotTables);
+    }
+
+    // Explore page counts come from an in-memory facet index, when that's enabled
+    @PostConstruct
+    public void trackFacets() {
+        facetEngine.track(RANGE_PARAMS);
+    }
+
+    // Studies are served from a catalog of the current release, with every field of the study tables
+    @PostConstruct
+    public void trackStudies() {
+        Set<String> studyFields = new HashSet<>(STUDIES_LISTING_FIELDS);
+
+        for (String tableName : List.of("studies", "study_details")) {
+            OverviewTable table = overviewTables.get(tableName);
+
+            for (OverviewTable.Property field : table.fields()) {
+                studyFields.add(field.osName);
+            }
+
+            studyFields.addAll(table.sortKeys());
+        }
+
+        studyCatalog.track(studyFields);
     }
 
     @Override
     public RuntimeWiring buildRuntimeWiring() throws IOException {
-        return RuntimeWiring.newRuntimeWiring()
-                .type(newTypeWiring("QueryType")
+        TypeRuntimeWiring.Builder queryType = newTypeWiring("QueryType")
                         .dataFetchers(yamlQueryFactory.createYamlQueries(Const.ES_ACCESS_TYPE.PRIVATE))
                         .dataFetcher("idsLists", env -> idsLists())
                         .dataFetcher("getParticipants", env -> {
                             Map<String, Object> args = env.getArguments();
                             return getParticipants(args);
                         })
+                        .dataFetcher("facetValues", env -> {
+                            Map<String, Object> args = env.getArguments();
+                            return facetValues(args);
+                        })
                         .dataFetcher("cohortCharts", env -> {
                             Map<String, Object> args = env.getArguments();
                             return cohortCharts(args);
                         })
                         .dataFetcher("cohortMetadata", env -> {
                             Map<String, Object> args = env.getArguments();
-                            return cohortMetadata(args);
-                        })
-                        .dataFetcher("participantOverview", env -> {
-                            Map<String, Object> args = env.getArguments();
-                            return participantOverview(args);
-                        })
-                        .dataFetcher("diagnosisOverview", env -> {
-                            Map<String, Object> args = env.getArguments();
-                            return diagnosisOverview(args);
-                        })
-                        .dataFetcher("geneticAnalysisOverview", env -> {
-                            Map<String, Object> args = env.getArguments();
-                            return geneticAnalysisOverview(args);
+                            return cohortMetadata(args, selectedFields(env));
                         })
                         .dataFetcher("studyOverview", env -> {
                             Map<String, Object> args = env.getArguments();
                             return studyOverview(args);
                         })
-                        .dataFetcher("survivalOverview", env -> {
-                            Map<String, Object> args = env.getArguments();
-                            return survivalOverview(args);
-                        })
-                        .dataFetcher("treatmentOverview", env -> {
-                            Map<String, Object> args = env.getArguments();
-                            return treatmentOverview(args);
-                        })
-                        .dataFetcher("treatmentResponseOverview", env -> {
-                            Map<String, Object> args = env.getArguments();
-                            return treatmentResponseOverview(args);
-                        })
                         .dataFetcher("studyDetails", env -> {
                             Map<String, Object> args = env.getArguments();
                             return studyDetails(args);
                         })
                         .dataFetcher("studiesListing", env -> studiesListing())
-                        .dataFetcher("numberOfDiseases", env -> {
-                            Map<String, Object> args = env.getArguments();
-                            return numberOfDiseases(args);
-                        })
-                        .dataFetcher("numberOfParticipants", env -> {
+                        .dataFetcher("registerCohort", env -> {
                             Map<String, Object> args = env.getArguments();
-                            return numberOfParticipants(args);
+                            return registerCohort(args);
                         })
-                        .dataFetcher("numberOfStudies", env -> {
+                        .dataFetcher("cohortSetOperations", env -> {
                             Map<String, Object> args = env.getArguments();
-                            return numberOfStudies(args);
+                            return cohortSetOperations(args);
                         })
-                        .dataFetcher("numberOfSurvivals", env -> {
+                        .dataFetcher("participantIdSuggestions", env -> {
                             Map<String, Object> args = env.getArguments();
-                            return numberOfSurvivals(args);
+                            return participantIdSuggestions(args);
                         })
                         .dataFetcher("findParticipantIdsInList", env -> {
                             Map<String, Object> args = env.getArguments();
                             return findParticipantIdsInList(args);
-                        })
-                )
+                        });
+
+        // Landing page counts are served from the home stats of the current release
+        for (String field : HomeStatsSnapshot.FIELDS) {
+            queryType.dataFetcher(field, env -> homeStats.get(field));
+        }
+
+        // Overview tables that need no other processing are served straight from their descriptors
+        for (OverviewTable table : overviewTables.values()) {
+            if (table.queryName() != null) {
+                queryType.dataFetcher(table.queryName(), env -> {
+                    Map<String, Object> args = env.getArguments();
+                    return overview(args, table, selectedFields(env));
+                });
+            }
+        }
+
+        return RuntimeWiring.newRuntimeWiring()
+                .type(queryType)
                 .build();
     }
 
@@ -223,6 +407,11 @@ public class PrivateESDataFetcher extends AbstractPrivateESDataFetcher {
         } else {
             only_includes = List.of();
         }
+
+        if (isExactlyCounted(category, indexType)) {
+            return getExactGroupCount(category, params, Set.of(PAGE_SIZE), indexType, only_includes);
+        }
+
         return getGroupCount(category, query, endpoint, cardinalityAggName, only_includes);
     }
 
@@ -240,16 +429,19 @@ public class PrivateESDataFetcher extends AbstractPrivateESDataFetcher {
     }
 
     private List<Map<String, Object>> filterSubjectCountBy(String category, Map<String, Object> params, String endpoint, Map<String, Object> additionalParams, String cardinalityAggName, String indexType) throws IOException {
+        if (isExactlyCounted(category, indexType)) {
+            return getExactGroupCount(category, params, Set.of(PAGE_SIZE, category), indexType, List.of());
+        }
+
         Map<String, Object> query = inventoryESService.buildFacetFilterQuery(params, RANGE_PARAMS, Set.of(PAGE_SIZE, category), indexType);
         return getGroupCount(category, query, endpoint, cardinalityAggName, List.of());
     }
 
     private JsonArray getNodeCount(String category, Map<String, Object> query, String endpoint) throws IOException {
-        query = inventoryESService.addNodeCountAggregations(query, category);
-        String queryJson = gson.toJson(query);
+        String queryJson = inventoryESService.renderNodeCountAggregations(query, category);
         Request request = new Request("GET", endpoint);
         request.setJsonEntity(queryJson);
-        JsonObject jsonObject = inventoryESService.send(request);
+        JsonObject jsonObject = inventoryESService.send(request, InventoryESService.ResponseUse.AGGREGATIONS);
         Map<String, JsonArray> aggs = inventoryESService.collectNodeCountAggs(jsonObject, category);
         JsonArray buckets = aggs.get(category);
 
@@ -257,11 +449,15 @@ public class PrivateESDataFetcher extends AbstractPrivateESDataFetcher {
     }
 
     private List<Map<String, Object>> getGroupCountByRange(String category, Map<String, Object> query, String endpoint, String cardinalityAggName) throws IOException {
-        query = inventoryESService.addRangeCountAggregations(query, category, cardinalityAggName);
-        String queryJson = gson.toJson(query);
+        if (countStrategies.get(category) == CountStrategy.DOC_COUNT) {
+            cardinalityAggName = null;
+        }
+
+        int precisionThreshold = precisionThresholds.getOrDefault(category, CountStrategy.DEFAULT_PRECISION_THRESHOLD);
+        String queryJson = inventoryESService.renderRangeCountAggregations(query, category, cardinalityAggName, precisionThreshold);
         Request request = new Request("GET", endpoint);
         request.setJsonEntity(queryJson);
-        JsonObject jsonObject = inventoryESService.send(request);
+        JsonObject jsonObject = inventoryESService.send(request, InventoryESService.ResponseUse.AGGREGATIONS);
         Map<String, JsonArray> aggs = inventoryESService.collectRangCountAggs(jsonObject, category);
         JsonArray buckets = aggs.get(category);
 
@@ -272,20 +468,25 @@ public class PrivateESDataFetcher extends AbstractPrivateESDataFetcher {
         if (RANGE_PARAMS.contains(category)) { // Not sure if this case ever occurs, because there's a separate method getGroupCountByRange() for range params
             query = inventoryESService.addRangeAggregations(query, category, only_includes);
             Request request = new Request("GET", endpoint);
-            String jsonizedRequest = gson.toJson(query);
+            String jsonizedRequest = inventoryESService.serializeForAggregations(query);
             request.setJsonEntity(jsonizedRequest);
-            JsonObject jsonObject = inventoryESService.send(request);
+            JsonObject jsonObject = inventoryESService.send(request, InventoryESService.ResponseUse.AGGREGATIONS);
             Map<String, JsonObject> aggs = inventoryESService.collectRangAggs(jsonObject, category);
             JsonObject ranges = aggs.get(category);
 
             return getRangeGroupCountHelper(ranges);
         } else {
             String[] AGG_NAMES = new String[] {category};
-            query = inventoryESService.addAggregations(query, AGG_NAMES, cardinalityAggName, only_includes);
+            int precisionThreshold = precisionThresholds.getOrDefault(category, CountStrategy.DEFAULT_PRECISION_THRESHOLD);
+
+            if (countStrategies.get(category) == CountStrategy.DOC_COUNT) {
+                cardinalityAggName = null;
+            }
+
             Request request = new Request("GET", endpoint);
-            String jsonizedRequest = gson.toJson(query);
+            String jsonizedRequest = inventoryESService.renderAggregations(query, category, cardinalityAggName, precisionThreshold, only_includes);
             request.setJsonEntity(jsonizedRequest);
-            JsonObject jsonObject = inventoryESService.send(request);
+            JsonObject jsonObject = inventoryESService.send(request, InventoryESService.ResponseUse.AGGREGATIONS);
             Map<String, JsonArray> aggs = inventoryESService.collectTermAggs(jsonObject, AGG_NAMES);
             JsonArray buckets = aggs.get(category);
 
@@ -293,6 +494,78 @@ public class PrivateESDataFetcher extends AbstractPrivateESDataFetcher {
         }
     }
 
+    /**
+     * Counts participants for each value of a nested facet filter exactly
+     * Aggregates the participants index with reverse_nested, instead of estimating cardinality
+     * @param category The facet filter to count
+     * @param params GraphQL variables
+     * @param excludedParams GraphQL variables to skip
+     * @param indexType The index of the facet filter, which is nested in the participants index
+     * @param only_includes Values to limit the counts to
+     * @return
+     * @throws IOException
+     */
+    private List<Map<String, Object>> getExactGroupCount(String category, Map<String, Object> params, Set<String> excludedParams, String indexType, List<String> only_includes) throws IOException {
+        Map<String, Object> query = inventoryESService.buildFacetFilterQuery(params, RANGE_PARAMS, excludedParams, "participants");
+        Request request = new Request("GET", PARTICIPANTS_END_POINT);
+        String jsonizedRequest = inventoryESService.renderExactCountAggregations(query, category, indexType, only_includes);
+        request.setJsonEntity(jsonizedRequest);
+        JsonObject jsonObject = inventoryESService.send(request, InventoryESService.ResponseUse.AGGREGATIONS);
+
+        return inventoryESService.collectExactCounts(jsonObject);
+    }
+
+    /**
+     * Adds counts for selected values that fell outside of a facet filter's top values
+     * Only needed for facet filters whose number of values is limited by max_buckets
+     * @param category The facet filter
+     * @param params GraphQL variables
+     * @param endpoint Opensearch endpoint of the facet filter's index
+     * @param cardinalityAggName Opensearch field for identifying unique results
+     * @param indexType The index of the facet filter
+     * @param filterCounts The facet filter's top values and their counts
+     * @param values The facet filter's selected values
+     * @return
+     * @throws IOException
+     */
+    private List<Map<String, Object>> addSelectedValueCounts(String category, Map<String, Object> params, String endpoint, String cardinalityAggName, String indexType, List<Map<String, Object>> filterCounts, List<String> values) throws IOException {
+        if (values == null || filterCounts.size() < inventoryESService.bucketLimit(category)) {
+            return filterCounts;
+        }
+
+        Set<String> shownValues = filterCounts.stream()
+            .map(filterCount -> (String) filterCount.get("group"))
+            .collect(Collectors.toSet());
+        List<String> missingValues = values.stream()
+            .filter(value -> !value.isEmpty() && !shownValues.contains(value))
+            .collect(Collectors.toList());
+        List<Map<String, Object>> selectedCounts;
+        List<Map<String, Object>> allCounts;
+
+        if (missingValues.isEmpty()) {
+            return filterCounts;
+        }
+
+        if (isExactlyCounted(category, indexType)) {
+            selectedCounts = getExactGroupCount(category, params, Set.of(PAGE_SIZE, category), indexType, missingValues);
+        } else {
+            Map<String, Object> query = inventoryESService.buildFacetFilterQuery(params, RANGE_PARAMS, Set.of(PAGE_SIZE, category), indexType);
+            selectedCounts = getGroupCount(category, query, endpoint, cardinalityAggName, missingValues);
+        }
+
+        allCounts = new ArrayList<>(filterCounts);
+        allCounts.addAll(selectedCounts);
+
+        return allCounts;
+    }
+
+    // Whether a facet filter's counts are computed with reverse_nested instead of cardinality
+    private boolean isExactlyCounted(String category, String indexType) {
+        return countStrategies.get(category) == CountStrategy.EXACT
+            && !RANGE_PARAMS.contains(category)
+            && !indexType.equals("participants");
+    }
+
     private List<Map<String, Object>> getRangeGroupCountHelper(JsonObject ranges) throws IOException {
         List<Map<String, Object>> data = new ArrayList<>();
         if (ranges.get("count").getAsInt() == 0) {
@@ -335,6 +608,88 @@ public class PrivateESDataFetcher extends AbstractPrivateESDataFetcher {
         return data;
     }
 
+    /**
+     * Pages through all of the values of a facet filter, in the order of the values
+     * For facet filters with more values than getParticipants returns
+     * @param params GraphQL variables
+     * @return Map with the page's "values" and the "after" cursor of the next page
+     * @throws IOException
+     */
+    private Map<String, Object> facetValues(Map<String, Object> params) throws IOException {
+        String facet = (String) params.get(FACET);
+        String after = (String) params.get(AFTER);
+        int pageSize = (int) params.get(PAGE_SIZE);
+        Set<String> excludedParams = Set.of(PAGE_SIZE, FACET, AFTER, facet);
+        String index = null;
+        Map<String, String> facetFilter = null;
+        String cardinalityAggName;
+        Map<String, Object> query;
+        Map<String, Object> page;
+        Request request;
+        JsonObject jsonObject;
+
+        // Find the facet filter's configuration
+        for (Map.Entry<String, List<Map<String, String>>> entry : facetFilters.entrySet()) {
+            for (Map<String, String> filter : entry.getValue()) {
+                if (filter.get("agg_name").equals(facet)) {
+                    index = entry.getKey();
+                    facetFilter = filter;
+                }
+            }
+        }
+
+        if (facetFilter == null || RANGE_PARAMS.contains(facet)) {
+            throw new IOException("Unknown facet filter: " + facet);
+        }
+
+        if (pageSize < 1 || pageSize > InventoryESService.MAX_BUCKETS) {
+            throw new IOException("Page size must be between 1 and " + InventoryESService.MAX_BUCKETS);
+        }
+
+        // Exact counts come from the participants index, so only use the composite aggregation for the page's values
+        if (countStrategies.get(facet) == CountStrategy.DOC_COUNT || isExactlyCounted(facet, index)) {
+            cardinalityAggName = null;
+        } else {
+            cardinalityAggName = facetFilter.get("cardinality_agg_name");
+        }
+
+        query = inventoryESService.buildFacetFilterQuery(params, RANGE_PARAMS, excludedParams, index);
+        query = inventoryESService.addCompositeAggregations(query, facet, cardinalityAggName,
+            precisionThresholds.getOrDefault(facet, CountStrategy.DEFAULT_PRECISION_THRESHOLD), pageSize, after);
+        request = new Request("GET", ENDPOINTS.get(index));
+        request.setJsonEntity(inventoryESService.serializeForAggregations(query));
+        jsonObject = inventoryESService.send(request, InventoryESService.ResponseUse.AGGREGATIONS);
+        page = inventoryESService.collectCompositePage(jsonObject, facet, cardinalityAggName);
+
+        if (isExactlyCounted(facet, index)) {
+            @SuppressWarnings("unchecked")
+            List<Map<String, Object>> pageValues = (List<Map<String, Object>>) page.get("values");
+            List<String> groups = pageValues.stream()
+                .map(value -> (String) value.get("group"))
+                .collect(Collectors.toList());
+            Map<String, Object> exactCounts = new HashMap<>();
+            List<Map<String, Object>> values = new ArrayList<>();
+
+            if (!groups.isEmpty()) {
+                for (Map<String, Object> exactCount : getExactGroupCount(facet, params, excludedParams, index, groups)) {
+                    exactCounts.put((String) exactCount.get("group"), exactCount.get("subjects"));
+                }
+            }
+
+            // Keep the order of the composite aggregation
+            for (String group : groups) {
+                values.add(Map.ofEntries(
+                    Map.entry("group", group),
+                    Map.entry("subjects", exactCounts.getOrDefault(group, 0))
+                ));
+            }
+
+            page.put("values", values);
+        }
+
+        return page;
+    }
+
     private Map<String, List<Object>> idsLists() throws IOException {
         String cacheKey = "idsLists";
         Map<String, List<Object>> results = new HashMap<>();
@@ -353,51 +708,8 @@ public class PrivateESDataFetcher extends AbstractPrivateESDataFetcher {
             return data;
         }
 
-        Map<String, Object> idsListsParams = Map.ofEntries(
-            Map.entry(OFFSET, 0),
-            Map.entry(ORDER_BY, "participant_ids"),
-            Map.entry(PAGE_SIZE, ESService.MAX_ES_SIZE),
-            Map.entry(SORT_DIRECTION, "asc")
-        );
-        final List<Map<String, Object>> idsListsProperties = List.of(
-            Map.ofEntries(
-                Map.entry("gqlName", "participant_ids"),
-                Map.entry("osName", "participant_ids")
-            ),
-            Map.ofEntries(
-                Map.entry("gqlName", "associated_ids"),
-                Map.entry("osName", "associated_ids"),
-                Map.entry("nested", List.of(
-                    Map.ofEntries(
-                        Map.entry("gqlName", "associated_id"),
-                        Map.entry("osName", "associated_id")
-                    ),
-                    Map.ofEntries(
-                        Map.entry("gqlName", "participant_id"),
-                        Map.entry("osName", "participant_id")
-                    )
-                ))
-            )
-        );
-
-        Map<String, Map<String, Object>> idsListsMapping = Map.ofEntries(// field -> sort field
-            Map.entry("participant_ids", Map.ofEntries(
-                Map.entry("osName", "participant_ids"),
-                Map.entry("isNested", false)
-            )),
-            Map.entry("associated_ids.associated_id", Map.ofEntries(
-                Map.entry("osName", "associated_ids"),
-                Map.entry("isNested", true),
-                Map.entry("path", "associated_ids")
-            )),
-            Map.entry("associated_ids.participant_id", Map.ofEntries(
-                Map.entry("osName", "participant_id"),
-                Map.entry("isNested", true),
-                Map.entry("path", "associated_ids")
-            ))
-        );
-
-        List<Map<String, Object>> idsListsResults = overview("/participant_ids_lists/_search", idsListsParams, idsListsProperties, "participant_ids", idsListsMapping, "participants");
+        Map<String, Object> idsListsQuery = esService.buildListQuery();
+        List<Map<String, Object>> idsListsResults = inventoryESService.collectAll("participant_ids_lists", idsListsQuery, ParticipantIdLookup.IDS_LISTS_PROPERTIES);
         List<Object> participantIds = List.of();
         List<Object> associatedIds = List.of();
 
@@ -450,6 +762,15 @@ public class PrivateESDataFetcher extends AbstractPrivateESDataFetcher {
             return data;
         }
 
+        // Every count can come from the facet index, if it has all of the filters
+        FacetIndex.Selection selection = facetEngine.select(params, Set.of(PAGE_SIZE));
+
+        if (selection != null) {
+            data = getFacetIndexCounts(selection, params);
+            caffeineCache.put(cacheKey, data);
+            return data;
+        }
+
         // logger.info("cache miss... querying for data.");
         data = new HashMap<>();
 
@@ -461,11 +782,10 @@ public class PrivateESDataFetcher extends AbstractPrivateESDataFetcher {
         // Get disease counts for Explore page stats bar
         Map<String, Object> diseaseQuery = inventoryESService.buildFacetFilterQuery(params, RANGE_PARAMS, Set.of(), "diagnoses");
         String[] diseaseField = new String[]{"diagnosis"};
-        diseaseQuery = inventoryESService.countValues(diseaseQuery, diseaseField);
         Request diseaseCountRequest = new Request("GET", DIAGNOSES_END_POINT);
-        String diseaseQueryJson = gson.toJson(diseaseQuery);
+        String diseaseQueryJson = inventoryESService.renderCountValues(diseaseQuery, diseaseField);
         diseaseCountRequest.setJsonEntity(diseaseQueryJson);
-        JsonObject diseaseCountResult = inventoryESService.send(diseaseCountRequest);
+        JsonObject diseaseCountResult = inventoryESService.send(diseaseCountRequest, InventoryESService.ResponseUse.AGGREGATIONS);
         int numberOfDiseases = diseaseCountResult.getAsJsonObject("aggregations")
             .getAsJsonObject("num_values_of_diagnosis").get("value").getAsInt();
 
@@ -518,23 +838,26 @@ public class PrivateESDataFetcher extends AbstractPrivateESDataFetcher {
                 List<String> values = null;
                 Object valuesRaw = params.get(field);
                 String widgetQueryName = filter.get(WIDGET_QUERY);
-                boolean shouldCheckThreshold = facetFilterThresholds.get(index).containsKey(field);
+                // Only estimated counts need to be checked against the recount thresholds
+                boolean shouldCheckThreshold = countStrategies.get(field) == CountStrategy.HLL
+                    && facetFilterThresholds.get(index).containsKey(field);
                 List<Map<String, Object>> filterCounts = filterSubjectCountBy(field, params, endpoint, cardinalityAggName, index);
                 Map<String, Integer> thresholds;
                 List<Map<String, Object>> newFilterCounts;
 
-                if (RANGE_PARAMS.contains(field)) {
-                    data.put(filterCountQueryName, filterCounts.get(0));
-                } else {
-                    data.put(filterCountQueryName, filterCounts);
-                }
-
                 if (TypeChecker.isOfType(valuesRaw, new TypeToken<List<String>>() {})) {
                     @SuppressWarnings("unchecked")
                     List<String> castedValues = (List<String>) valuesRaw;
                     values = castedValues;
                 }
 
+                if (RANGE_PARAMS.contains(field)) {
+                    data.put(filterCountQueryName, filterCounts.get(0));
+                } else {
+                    filterCounts = addSelectedValueCounts(field, params, endpoint, cardinalityAggName, index, filterCounts, values);
+                    data.put(filterCountQueryName, filterCounts);
+                }
+
                 // Get widget counts
                 if (widgetQueryName != null) {
                     // Fetch data for widgets
@@ -590,19 +913,115 @@ public class PrivateESDataFetcher extends AbstractPrivateESDataFetcher {
         return data;
     }
 
+    /**
+     * Returns the same counts as getParticipants, computed from the in-memory facet index
+     * Counts are exact, so none of them need to be recounted
+     * @param selection The facet index, filtered by the GraphQL variables
+     * @param params GraphQL variables
+     * @return
+     */
+    private Map<String, Object> getFacetIndexCounts(FacetIndex.Selection selection, Map<String, Object> params) {
+        Map<String, Object> data = new HashMap<>();
+
+        data.put("numberOfStudies", selection.countValues("study_id"));
+        data.put("numberOfDiagnoses", selection.count("diagnoses"));
+        data.put("numberOfDiseases", selection.countValues("diagnosis"));
+        data.put("numberOfGeneticAnalyses", selection.count("genetic_analyses"));
+        data.put("numberOfParticipants", selection.count("participants"));
+        data.put("numberOfSurvivals", selection.count("survivals"));
+        data.put("numberOfTreatments", selection.count("treatments"));
+        data.put("numberOfTreatmentResponses", selection.count("treatment_responses"));
+
+        for (Map.Entry<String, List<Map<String, String>>> entry : facetFilters.entrySet()) {
+            String index = entry.getKey();
+
+            for (Map<String, String> filter : entry.getValue()) {
+                String field = filter.get("agg_name");
+                String filterCountQueryName = filter.get("filter_count_name");
+                String widgetQueryName = filter.get("widget_count_name");
+                CountStrategy strategy = isExactlyCounted(field, index) ? CountStrategy.EXACT : countStrategies.get(field);
+                List<String> values = null;
+                List<Map<String, Object>> filterCounts;
+
+                if (RANGE_PARAMS.contains(field)) {
+                    data.put(filterCountQueryName, selection.rangeStats(field));
+
+                    if (widgetQueryName != null) {
+                        data.put(widgetQueryName, selection.rangeCounts(field, InventoryESService.AGE_RANGES, strategy));
+                    }
+
+                    continue;
+                }
+
+                if (TypeChecker.isOfType(params.get(field), new TypeToken<List<String>>() {})) {
+                    @SuppressWarnings("unchecked")
+                    List<String> castedValues = (List<String>) params.get(field);
+                    values = castedValues;
+                }
+
+                filterCounts = topGroupCounts(field, selection.groupCounts(field, Set.of(field), strategy), values);
+                data.put(filterCountQueryName, filterCounts);
+
+                if (widgetQueryName == null) {
+                    continue;
+                }
+
+                // Widgets of selected values only show those values
+                if (values != null && values.size() > 0) {
+                    List<String> includes = values;
+                    List<Map<String, Object>> widgetCounts = selection.groupCounts(field, Set.of(), strategy);
+
+                    if (INCLUDE_PARAMS.contains(field) && !(values.size() == 1 && values.get(0).equals(""))) {
+                        widgetCounts = widgetCounts.stream()
+                            .filter(count -> includes.contains((String) count.get("group")))
+                            .collect(Collectors.toList());
+                    }
+
+                    data.put(widgetQueryName, topGroupCounts(field, widgetCounts, null));
+                } else {
+                    data.put(widgetQueryName, filterCounts);
+                }
+            }
+        }
+
+        return data;
+    }
+
+    // A facet filter's top values, like a terms aggregation limited to max_buckets, followed by any other selected values
+    private List<Map<String, Object>> topGroupCounts(String field, List<Map<String, Object>> groupCounts, List<String> values) {
+        int limit = inventoryESService.bucketLimit(field);
+        List<Map<String, Object>> counts;
+
+        if (groupCounts.size() <= limit) {
+            return groupCounts;
+        }
+
+        counts = new ArrayList<>(groupCounts.subList(0, limit));
+
+        if (values != null) {
+            groupCounts.subList(limit, groupCounts.size()).stream()
+                .filter(count -> values.contains((String) count.get("group")))
+                .forEach(counts::add);
+        }
+
+        return counts;
+    }
+
     private List<Map<String, Object>> cohortCharts(Map<String, Object> params) throws IOException {
         List<Map<String, Object>> chartConfigs = null;
         Object chartConfigsRaw;
+        Object cohortListRaw;
         List<Map<String, Object>> charts = new ArrayList<Map<String, Object>>();
-        Map<String, Object> cohorts = new HashMap<String, Object>();
+        Map<String, List<String>> cohorts = new LinkedHashMap<String, List<String>>();
         List<String> cohortsCombined = new ArrayList<String>();
         List<Map<String, Object>> result = new ArrayList<Map<String, Object>>();
+        CohortChartCounts counts;
 
         if (params == null || !params.containsKey("charts")) {
             return List.of(); // No charts specified
         }
 
-        if (!(params.containsKey("c1") || params.containsKey("c2") || params.containsKey("c3"))) {
+        if (!(params.containsKey("c1") || params.containsKey("c2") || params.containsKey("c3") || params.containsKey("cohorts"))) {
             return List.of(); // No cohorts specified
         }
 
@@ -618,7 +1037,7 @@ public class PrivateESDataFetcher extends AbstractPrivateESDataFetcher {
             if (TypeChecker.isOfType(cohortRaw, new TypeToken<List<String>>() {})) {
                 @SuppressWarnings("unchecked")
                 List<String> castedCohort = (List<String>) cohortRaw;
-                cohort = castedCohort;
+                cohort = cohortStore.resolve(castedCohort);
 
                 if (!cohort.isEmpty()) {
                     // Add cohort to combined list
@@ -628,6 +1047,40 @@ public class PrivateESDataFetcher extends AbstractPrivateESDataFetcher {
             }
         }
 
+        // Add the cohorts of the list, named by their position if they have no name
+        cohortListRaw = params.get("cohorts");
+        if (TypeChecker.isOfType(cohortListRaw, new TypeToken<List<Map<String, Object>>>() {})) {
+            @SuppressWarnings("unchecked")
+            List<Map<String, Object>> castedCohortList = (List<Map<String, Object>>) cohortListRaw;
+
+            for (int i = 0; i < castedCohortList.size(); i++) {
+                Map<String, Object> cohortInput = castedCohortList.get(i);
+                String name = cohortInput.get("name") == null ? "c" + (i + 1) : (String) cohortInput.get("name");
+                List<String> cohort = List.of();
+
+                if (TypeChecker.isOfType(cohortInput.get("participant_pk"), new TypeToken<List<String>>() {})) {
+                    @SuppressWarnings("unchecked")
+                    List<String> castedCohort = (List<String>) cohortInput.get("participant_pk");
+                    cohort = cohortStore.resolve(castedCohort);
+                }
+
+                if (cohort.isEmpty()) {
+                    continue;
+                }
+
+                if (cohorts.containsKey(name)) {
+                    throw new IOException("Duplicate cohort name: " + name);
+                }
+
+                cohortsCombined.addAll(cohort);
+                cohorts.put(name, cohort);
+            }
+        }
+
+        if (cohorts.size() > COHORT_CHART_COHORT_LIMIT) {
+            throw new IOException("At most " + COHORT_CHART_COHORT_LIMIT + " cohorts can be compared");
+        }
+
         if (cohortsCombined.isEmpty()) {
             return result;
         }
@@ -663,6 +1116,10 @@ public class PrivateESDataFetcher extends AbstractPrivateESDataFetcher {
             }
         }
 
+        // Count every chart for every cohort at once
+        counts = collectCohortChartCounts(groupConfigs, cohorts, cohortsCombined,
+            chartConfigs.stream().anyMatch(chartConfig -> "percentage".equals(chartConfig.get("type"))));
+
         // Generate charts for each configuration
         for (Map<String, Object> chartConfig : chartConfigs) {
             // Prepare map that represents the entire chart
@@ -670,20 +1127,13 @@ public class PrivateESDataFetcher extends AbstractPrivateESDataFetcher {
             String type = (String) chartConfig.get("type");
             Map<String, Object> chartData = new HashMap<String, Object>();
             chartData.put("property", property);
-            int totalNumberOfParticipants = 0;
+            int totalNumberOfParticipants = counts.participantCount();
             List<String> bucketNames;
             List<String> bucketNamesTopFew;
             List<String> bucketNamesTopMany;
 
-            // Obtain details for querying Opensearch
-            Map<String, String> groupConfig = groupConfigs.get(property);
-            String cardinalityAggName = groupConfig.get("cardinality_agg_name");
-            String endpoint = ENDPOINTS.get(groupConfig.get("index"));
-            String indexName = groupConfig.get("index");
-
             // Determine most populous buckets
-            Map<String, Object> combinedCohortParams = Map.of("participant_pk", cohortsCombined);
-            bucketNames = inventoryESService.getBucketNames(property, combinedCohortParams, RANGE_PARAMS, cardinalityAggName, indexName, endpoint);
+            bucketNames = counts.bucketNames().get(property);
 
             if (bucketNames.size() > COHORT_CHART_BUCKET_LIMIT_LOW) {
                 bucketNamesTopFew = new ArrayList<>(bucketNames.subList(0, COHORT_CHART_BUCKET_LIMIT_LOW));
@@ -697,13 +1147,6 @@ public class PrivateESDataFetcher extends AbstractPrivateESDataFetcher {
                 bucketNamesTopMany = new ArrayList<>(bucketNames);
             }
 
-            // If chart type is percentage, then count the total number of participants
-            if (type.equals("percentage")) {
-                Map<String, Object> combinedCohortsQuery = inventoryESService.buildFacetFilterQuery(combinedCohortParams, RANGE_PARAMS, Set.of(), "participants");
-
-                totalNumberOfParticipants = inventoryESService.getCount(combinedCohortsQuery, "participants");
-            }
-
             // Prepare list of data for each cohort
             List<Map<String, Object>> cohortsData = new ArrayList<Map<String, Object>>();
 
@@ -711,11 +1154,10 @@ public class PrivateESDataFetcher extends AbstractPrivateESDataFetcher {
             for (String cohortName : cohorts.keySet()) {
                 // Prepare map of data for the cohort
                 Map<String, Object> cohortData = new HashMap<String, Object>();
-                Map<String, Object> cohortParams = Map.of("participant_pk", cohorts.get(cohortName));
                 cohortData.put("cohort", cohortName);
 
                 // Retrieve data for the cohort
-                List<Map<String, Object>> cohortGroupCounts = filterSubjectCountBy(property, cohortParams, endpoint, cardinalityAggName, indexName);
+                List<Map<String, Object>> cohortGroupCounts = counts.groupCounts().get(property).get(cohortName);
                 List<Map<String, Object>> cohortGroupCountsTruncated = new ArrayList<Map<String, Object>>();
                 int otherMany = 0;
                 int otherFew = 0;
@@ -783,205 +1225,191 @@ public class PrivateESDataFetcher extends AbstractPrivateESDataFetcher {
         return charts;
     }
 
-    private Map<String, String> getGroupConfig(String propertyName) {
-        for (String index : facetFilters.keySet()) {
-            List<Map<String, String>> groupConfigs = facetFilters.get(index);
-
-            for (Map<String, String> groupConfig : groupConfigs) {
-                String aggName = groupConfig.get("agg_name");
+    /**
+     * Counts the buckets of every cohort chart
+     * Charts are grouped by the index they're counted from, and each index is searched once, in parallel:
+     * the buckets of the combined cohorts, and a filters aggregation with each cohort's counts under it
+     * @param groupConfigs Chart property -> its facet filter's configuration and index
+     * @param cohorts Cohort name -> participant IDs
+     * @param cohortsCombined Participant IDs of every cohort
+     * @param isCountingParticipants Whether to count the participants of the combined cohorts
+     * @return
+     * @throws IOException
+     */
+    private CohortChartCounts collectCohortChartCounts(Map<String, HashMap<String, String>> groupConfigs, Map<String, List<String>> cohorts, List<String> cohortsCombined, boolean isCountingParticipants) throws IOException {
+        Map<String, List<Map<String, String>>> chartsByIndex = new LinkedHashMap<>();
+        List<Callable<JsonObject>> tasks = new ArrayList<>();
+        List<JsonObject> responses;
+        List<String> indices;
+        Map<String, List<String>> bucketNames = new HashMap<>();
+        Map<String, Map<String, List<Map<String, Object>>>> groupCounts = new HashMap<>();
+        int participantCount = 0;
+
+        for (Map.Entry<String, HashMap<String, String>> groupConfig : groupConfigs.entrySet()) {
+            String index = groupConfig.getValue().get("index");
+
+            if (index == null) {
+                throw new IOException("Unknown cohort chart property: " + groupConfig.getKey());
+            }
 
-                if (aggName != null && aggName.equals(propertyName)) {
-                    Map<String, String> modifiedGroupConfig = new HashMap<>(groupConfig);
-                    modifiedGroupConfig.put("index", index);
-                    return modifiedGroupConfig;
-                }
+            // Exact counts come from the participants index
+            if (isExactlyCounted(groupConfig.getKey(), index)) {
+                index = "participants";
             }
+
+            chartsByIndex.computeIfAbsent(index, key -> new ArrayList<>()).add(groupConfig.getValue());
         }
 
-        return null;
-    }
+        if (isCountingParticipants) {
+            chartsByIndex.computeIfAbsent("participants", key -> new ArrayList<>());
+        }
 
-    private List<Map<String, Object>> cohortMetadata(Map<String, Object> params) throws IOException {
-        List<Map<String, Object>> participants;
-        Map<String, Map<String, Map<String, Object>>> consentGroupsByStudy = new HashMap<String, Map<String, Map<String, Object>>>();
-        List<Map<String, Object>> listOfStudies = new ArrayList<Map<String, Object>>();
+        for (Map.Entry<String, List<Map<String, String>>> charts : chartsByIndex.entrySet()) {
+            tasks.add(() -> searchCohortCharts(charts.getKey(), charts.getValue(), cohorts, cohortsCombined));
+        }
 
-        final List<Map<String, Object>> PROPERTIES = List.of(
-            // Studies
-            Map.ofEntries(
-                Map.entry("gqlName", "dbgap_accession"),
-                Map.entry("osName", "dbgap_accession")
-            ),
+        responses = inventoryESService.inParallel(tasks);
+        indices = new ArrayList<>(chartsByIndex.keySet());
 
-            // Consent Groups
-            Map.ofEntries(
-                Map.entry("gqlName", "consent_group_name"),
-                Map.entry("osName", "consent_group_name")
-            ),
-            Map.ofEntries(
-                Map.entry("gqlName", "consent_group_number"),
-                Map.entry("osName", "consent_group_number")
-            ),
+        for (int i = 0; i < indices.size(); i++) {
+            String index = indices.get(i);
+            JsonObject aggs = responses.get(i).getAsJsonObject("aggregations");
+            JsonObject cohortBuckets = aggs.getAsJsonObject(InventoryESService.COHORTS_AGG_NAME).getAsJsonObject("buckets");
 
-            // Demographics
-            Map.ofEntries(
-                Map.entry("gqlName", "id"),
-                Map.entry("osName", "id")
-            ),
-            Map.ofEntries(
-                Map.entry("gqlName", "participant_id"),
-                Map.entry("osName", "participant_id")
-            ),
-            Map.ofEntries(
-                Map.entry("gqlName", "race"),
-                Map.entry("osName", "race")
-            ),
-            Map.ofEntries(
-                Map.entry("gqlName", "sex_at_birth"),
-                Map.entry("osName", "sex_at_birth")
-            ),
+            if (aggs.has(PARTICIPANT_COUNT_AGG_NAME)) {
+                participantCount = aggs.getAsJsonObject(PARTICIPANT_COUNT_AGG_NAME).get("doc_count").getAsInt();
+            }
 
-            // Diagnoses
-            Map.ofEntries(
-                Map.entry("gqlName", "diagnoses"),
-                Map.entry("osName", "diagnoses")
-            ),
+            for (Map<String, String> groupConfig : chartsByIndex.get(index)) {
+                String property = groupConfig.get("agg_name");
+                boolean isExact = !index.equals(groupConfig.get("index"));
+                JsonArray buckets = isExact
+                    ? aggs.getAsJsonObject(property).getAsJsonObject("agg_buckets").getAsJsonArray("buckets")
+                    : aggs.getAsJsonObject(property).getAsJsonArray("buckets");
+                Map<String, List<Map<String, Object>>> cohortCounts = new HashMap<>();
 
-            // Genetic Analyses
-            Map.ofEntries(
-                Map.entry("gqlName", "genetic_analyses"),
-                Map.entry("osName", "genetic_analyses")
-            ),
+                bucketNames.put(property, StreamSupport.stream(buckets.spliterator(), false)
+                    .map(bucket -> bucket.getAsJsonObject().get("key").getAsString())
+                    .collect(Collectors.toList()));
 
-            // Survivals
-            Map.ofEntries(
-                Map.entry("gqlName", "survivals"),
-                Map.entry("osName", "survivals")
-            ),
+                for (String cohortName : cohorts.keySet()) {
+                    JsonObject cohortAggs = cohortBuckets.getAsJsonObject(cohortName).getAsJsonObject(property);
 
-            // CPI data
-            Map.ofEntries(
-                Map.entry("gqlName", "synonyms"),
-                Map.entry("osName", "synonyms"),
-                Map.entry("nested", List.of(
-                    Map.ofEntries(
-                        Map.entry("gqlName", "id"),
-                        Map.entry("osName", "id")
-                    ),
-                    Map.ofEntries(
-                        Map.entry("gqlName", "associated_id"),
-                        Map.entry("osName", "associated_id")
-                    ),
-                    Map.ofEntries(
-                        Map.entry("gqlName", "data_location"),
-                        Map.entry("osName", "data_location")
-                    ),
-                    Map.ofEntries(
-                        Map.entry("gqlName", "domain_category"),
-                        Map.entry("osName", "domain_category")
-                    ),
-                    Map.ofEntries(
-                        Map.entry("gqlName", "domain_description"),
-                        Map.entry("osName", "domain_description")
-                    ),
-                    Map.ofEntries(
-                        Map.entry("gqlName", "repository_of_synonym_id"),
-                        Map.entry("osName", "repository_of_synonym_id")
-                    )
-                ))
-            ),
+                    cohortCounts.put(cohortName, isExact
+                        ? inventoryESService.collectExactCountBuckets(cohortAggs)
+                        : getGroupCountHelper(cohortAggs.getAsJsonArray("buckets"), cohortChartCardinalityAggName(groupConfig)));
+                }
 
-            // Treatments
-            Map.ofEntries(
-                Map.entry("gqlName", "treatments"),
-                Map.entry("osName", "treatments")
-            ),
+                groupCounts.put(property, cohortCounts);
+            }
+        }
 
-            // Treatment Responses
-            Map.ofEntries(
-                Map.entry("gqlName", "treatment_responses"),
-                Map.entry("osName", "treatment_responses")
-            )
-        );
+        return new CohortChartCounts(bucketNames, groupCounts, participantCount);
+    }
 
-        String defaultSort = "dbgap_accession"; // Default sort order
-
-        Map<String, Map<String, Object>> mapping = Map.ofEntries(
-            // Studies
-            Map.entry("dbgap_accession", Map.ofEntries(
-                Map.entry("osName", "dbgap_accession"),
-                Map.entry("isNested", false)
-            )),
-
-            // Consent Groups
-            Map.entry("consent_group_name", Map.ofEntries(
-                Map.entry("osName", "consent_group_name"),
-                Map.entry("isNested", false)
-            )),
-            Map.entry("consent_group_number", Map.ofEntries(
-                Map.entry("osName", "consent_group_number"),
-                Map.entry("isNested", false)
-            )),
-
-            // Demographics
-            Map.entry("participant_pk", Map.ofEntries(
-                Map.entry("osName", "id"),
-                Map.entry("isNested", false)
-            )),
-            Map.entry("participant_id", Map.ofEntries(
-                Map.entry("osName", "participant_id"),
-                Map.entry("isNested", false)
-            )),
-            Map.entry("race", Map.ofEntries(
-                Map.entry("osName", "race"),
-                Map.entry("isNested", false)
-            )),
-            Map.entry("sex_at_birth", Map.ofEntries(
-                Map.entry("osName", "sex_at_birth"),
-                Map.entry("isNested", false)
-            )),
-
-            // CPI Data
-            Map.entry("synonyms.id", Map.ofEntries(
-                Map.entry("osName", "id"),
-                Map.entry("isNested", true),
-                Map.entry("path", "synonyms")
-            )),
-            Map.entry("synonyms.associated_id", Map.ofEntries(
-                Map.entry("osName", "associated_id"),
-                Map.entry("isNested", true),
-                Map.entry("path", "synonyms")
-            )),
-            Map.entry("synonyms.data_location", Map.ofEntries(
-                Map.entry("osName", "data_location"),
-                Map.entry("isNested", true),
-                Map.entry("path", "synonyms")
-            )),
-            Map.entry("synonyms.domain_category", Map.ofEntries(
-                Map.entry("osName", "domain_category"),
-                Map.entry("isNested", true),
-                Map.entry("path", "synonyms")
-            )),
-            Map.entry("synonyms.domain_description", Map.ofEntries(
-                Map.entry("osName", "domain_description"),
-                Map.entry("isNested", true),
-                Map.entry("path", "synonyms")
-            )),
-            Map.entry("synonyms.repository_of_synonym_id", Map.ofEntries(
-                Map.entry("osName", "repository_of_synonym_id"),
-                Map.entry("isNested", true),
-                Map.entry("path", "synonyms")
-            ))
-        );
+    // One search for the cohort charts counted from an index
+    private JsonObject searchCohortCharts(String index, List<Map<String, String>> groupConfigs, Map<String, List<String>> cohorts, List<String> cohortsCombined) throws IOException {
+        Map<String, Object> query = inventoryESService.buildFacetFilterQuery(Map.of("participant_pk", cohortsCombined), RANGE_PARAMS, Set.of(), index);
+        Map<String, Object> aggs = new HashMap<>();
+        Map<String, Object> cohortFilters = new HashMap<>();
+        Map<String, Object> cohortAggs = new HashMap<>();
+        Request request = new Request("GET", ENDPOINTS.get(index));
+
+        for (Map.Entry<String, List<String>> cohort : cohorts.entrySet()) {
+            Map<String, Object> cohortQuery = inventoryESService.buildFacetFilterQuery(Map.of("participant_pk", cohort.getValue()), RANGE_PARAMS, Set.of(), index);
+
+            cohortFilters.put(cohort.getKey(), cohortQuery.get("query"));
+        }
+
+        for (Map<String, String> groupConfig : groupConfigs) {
+            String property = groupConfig.get("agg_name");
+            String propertyIndex = groupConfig.get("index");
+
+            if (index.equals(propertyIndex)) {
+                aggs.put(property, inventoryESService.termsAggregation(property, null, CountStrategy.DEFAULT_PRECISION_THRESHOLD));
+                cohortAggs.put(property, inventoryESService.termsAggregation(property, cohortChartCardinalityAggName(groupConfig),
+                    precisionThresholds.getOrDefault(property, CountStrategy.DEFAULT_PRECISION_THRESHOLD)));
+            } else {
+                aggs.put(property, inventoryESService.exactCountAggregation(property, propertyIndex, false));
+                cohortAggs.put(property, inventoryESService.exactCountAggregation(property, propertyIndex, true));
+            }
+        }
+
+        if (index.equals("participants")) {
+            aggs.put(PARTICIPANT_COUNT_AGG_NAME, Map.of("filter", Map.of("match_all", Map.of())));
+        }
+
+        query = inventoryESService.addCohortAggregations(query, aggs, cohortFilters, cohortAggs);
+        request.setJsonEntity(inventoryESService.serializeForAggregations(query));
+
+        return inventoryESService.send(request, InventoryESService.ResponseUse.AGGREGATIONS);
+    }
+
+    private String cohortChartCardinalityAggName(Map<String, String> groupConfig) {
+        if (countStrategies.get(groupConfig.get("agg_name")) == CountStrategy.DOC_COUNT) {
+            return null;
+        }
+
+        return groupConfig.get("cardinality_agg_name");
+    }
+
+    private Map<String, String> getGroupConfig(String propertyName) {
+        for (String index : facetFilters.keySet()) {
+            List<Map<String, String>> groupConfigs = facetFilters.get(index);
+
+            for (Map<String, String> groupConfig : groupConfigs) {
+                String aggName = groupConfig.get("agg_name");
 
-        participants = overview(COHORTS_END_POINT, params, PROPERTIES, defaultSort, mapping, "participants");
+                if (aggName != null && aggName.equals(propertyName)) {
+                    Map<String, String> modifiedGroupConfig = new HashMap<>(groupConfig);
+                    modifiedGroupConfig.put("index", index);
+                    return modifiedGroupConfig;
+                }
+            }
+        }
+
+        return null;
+    }
 
-        // Group participants by consent group and then by study
-        participants.forEach((Map<String, Object> participant) -> {
+    private List<Map<String, Object>> cohortMetadata(Map<String, Object> params, Set<String> selectedFields) throws IOException {
+        List<List<Map<String, Object>>> entityPages = collectCohortEntities(params, selectedFields);
+        List<Map<String, Object>> participants = entityPages.get(0);
+        List<Map<String, Map<String, Object>>> entitiesByParticipant = new ArrayList<>();
+        int unplacedCount = 0;
+        Map<String, Map<String, Map<String, Object>>> consentGroupsByStudy = new HashMap<String, Map<String, Map<String, Object>>>();
+        List<Map<String, Object>> listOfStudies = new ArrayList<Map<String, Object>>();
+
+        // Look up each entity type's rows by participant
+        for (List<Map<String, Object>> entityPage : entityPages.subList(1, entityPages.size())) {
+            Map<String, Map<String, Object>> entities = new HashMap<>();
+
+            for (Map<String, Object> entityRow : entityPage) {
+                entities.put((String) entityRow.get("id"), entityRow);
+            }
+
+            entitiesByParticipant.add(entities);
+        }
+
+        // Group participants by consent group and then by study, adding their entities in the same pass
+        participants.forEach((Map<String, Object> participantFields) -> {
+            Map<String, Object> participant = new HashMap<>(participantFields);
             String dbgapAccession = (String) participant.get("dbgap_accession");
             String consentGroupName = (String) participant.get("consent_group_name");
             String consentGroupNumber = (String) participant.get("consent_group_number");
 
+            // Entities are dropped from the lookups once they're placed
+            for (Map<String, Map<String, Object>> entities : entitiesByParticipant) {
+                Map<String, Object> entityRow = entities.remove((String) participantFields.get("id"));
+
+                if (entityRow != null) {
+                    entityRow.forEach((field, value) -> {
+                        if (!field.equals("id")) {
+                            participant.put(field, value);
+                        }
+                    });
+                }
+            }
+
             // Make sure a mapping exists for the study
             if (!consentGroupsByStudy.containsKey(dbgapAccession)) {
                 consentGroupsByStudy.put(dbgapAccession, new HashMap<String, Map<String, Object>>());
@@ -1003,6 +1431,16 @@ public class PrivateESDataFetcher extends AbstractPrivateESDataFetcher {
             participantsList.add(participant);
         });
 
+        // Entities left over belong to participants outside this page, which happens if the index changed between requests
+        for (Map<String, Map<String, Object>> entities : entitiesByParticipant) {
+            unplacedCount += entities.size();
+        }
+
+        if (unplacedCount > 0) {
+            logger.warn("Dropped " + unplacedCount + " cohortMetadata entity rows whose participants weren't in the page of "
+                + participants.size() + " participants");
+        }
+
         // Structure a list of studies to return
         // Study->Consent Group->Participant
         consentGroupsByStudy.forEach((accession, consentGroups) -> {
@@ -1015,1070 +1453,511 @@ public class PrivateESDataFetcher extends AbstractPrivateESDataFetcher {
         return listOfStudies;
     }
 
-    private List<Map<String, Object>> participantOverview(Map<String, Object> params) throws IOException {
-        final List<Map<String, Object>> PROPERTIES = List.of(
-            // Demographics
-            Map.ofEntries(
-                Map.entry("gqlName", "id"),
-                Map.entry("osName", "id")
-            ),
-            Map.ofEntries(
-                Map.entry("gqlName", "participant_id"),
-                Map.entry("osName", "participant_id")
-            ),
-            Map.ofEntries(
-                Map.entry("gqlName", "race"),
-                Map.entry("osName", "race")
-            ),
-            Map.ofEntries(
-                Map.entry("gqlName", "sex_at_birth"),
-                Map.entry("osName", "sex_at_birth")
-            ),
+    /**
+     * Retrieves a page of the cohort manifest, with one request per entity type made at the same time
+     * Each request only retrieves the participant ID and its entity type, instead of the whole document.
+     * At most COHORT_ENTITY_THREADS of these requests run at once, across every cohortMetadata call
+     * @param params GraphQL variables
+     * @param selectedFields Fields requested in the GraphQL query, or null for every entity type
+     * @return The participants' own fields, followed by a page for each entity type
+     * @throws IOException
+     */
+    private List<List<Map<String, Object>>> collectCohortEntities(Map<String, Object> params, Set<String> selectedFields) throws IOException {
+        OverviewTable table = overviewTables.get("cohorts");
+        Map<String, Object> query = inventoryESService.buildFacetFilterQuery(params, RANGE_PARAMS, Set.of(PAGE_SIZE, OFFSET, ORDER_BY, SORT_DIRECTION), table.index());
+        String order_by = (String) params.get(ORDER_BY);
+        String direction = (String) params.get(SORT_DIRECTION);
+        Map<String, Object> sort = table.sortClause(order_by, direction);
+        int pageSize = (int) params.get(PAGE_SIZE);
+        int offset = (int) params.get(OFFSET);
+        List<List<Map<String, Object>>> propertyGroups = new ArrayList<>();
+        List<Callable<List<Map<String, Object>>>> tasks = new ArrayList<>();
 
-            // CPI Data
-            Map.ofEntries(
-                Map.entry("gqlName", "cpi_data"),
-                Map.entry("osName", "cpi_data"),
-                Map.entry("nested", List.of(
-                    Map.ofEntries(
-                        Map.entry("gqlName", "associated_id"),
-                        Map.entry("osName", "associated_id")
-                    ),
-                    Map.ofEntries(
-                        Map.entry("gqlName", "data_location"),
-                        Map.entry("osName", "data_location")
-                    ),
-                    Map.ofEntries(
-                        Map.entry("gqlName", "data_type"),
-                        Map.entry("osName", "data_type")
-                    ),
-                    Map.ofEntries(
-                        Map.entry("gqlName", "domain_category"),
-                        Map.entry("osName", "domain_category")
-                    ),
-                    Map.ofEntries(
-                        Map.entry("gqlName", "domain_description"),
-                        Map.entry("osName", "domain_description")
-                    ),
-                    Map.ofEntries(
-                        Map.entry("gqlName", "repository_of_synonym_id"),
-                        Map.entry("osName", "repository_of_synonym_id")
-                    )
-                ))
-            ),
+        // Every request has to see the same page, so break ties by ID
+        query.put("sort", sort.containsKey("id") ? List.of(sort) : List.of(sort, Map.of("id", "asc")));
 
-            // Studies
-            Map.ofEntries(
-                Map.entry("gqlName", "dbgap_accession"),
-                Map.entry("osName", "dbgap_accession")
-            ),
+        propertyGroups.add(table.properties().stream()
+            .filter(property -> COHORT_BASE_FIELDS.contains((String) property.get("gqlName")))
+            .collect(Collectors.toList()));
 
-            // Additional fields for download
-            Map.ofEntries(
-                Map.entry("gqlName", "study_id"),
-                Map.entry("osName", "study_id")
-            )
-        );
+        for (String entity : COHORT_ENTITIES) {
+            if (selectedFields != null && !selectedFields.contains("consent_groups/participants/" + entity)) {
+                continue;
+            }
 
-        String defaultSort = "participant_id"; // Default sort order
-
-        Map<String, Map<String, Object>> mapping = Map.ofEntries(// field -> sort field
-            // Demographics
-            Map.entry("id", Map.ofEntries(
-                Map.entry("osName", "id"),
-                Map.entry("isNested", false)
-            )),
-            Map.entry("participant_id", Map.ofEntries(
-                Map.entry("osName", "participant_id"),
-                Map.entry("isNested", false)
-            )),
-            Map.entry("race", Map.ofEntries(
-                Map.entry("osName", "race_str"),
-                Map.entry("isNested", false)
-            )),
-            Map.entry("sex_at_birth", Map.ofEntries(
-                Map.entry("osName", "sex_at_birth"),
-                Map.entry("isNested", false)
-            )),
-
-            // CPI Data
-            Map.entry("cpi_data", Map.ofEntries(
-                Map.entry("osName", "cpi_data"),
-                Map.entry("isNested", false)
-            )),
-
-            // Studies
-            Map.entry("dbgap_accession", Map.ofEntries(
-                Map.entry("osName", "dbgap_accession"),
-                Map.entry("isNested", false)
-            )),
-
-            // Additional fields for download
-            Map.entry("study_id", Map.ofEntries(
-                Map.entry("osName", "study_id"),
-                Map.entry("isNested", false)
-            ))
-        );
+            propertyGroups.add(table.properties().stream()
+                .filter(property -> property.get("gqlName").equals("id") || property.get("gqlName").equals(entity))
+                .collect(Collectors.toList()));
+        }
+
+        for (List<Map<String, Object>> properties : propertyGroups) {
+            tasks.add(() -> {
+                Map<String, Object> entityQuery = new HashMap<>(query);
+                Request request = new Request("GET", table.endpoint());
+
+                entityQuery.put("_source", sourceIncludes(properties, ""));
+                return inventoryESService.collectPage(request, entityQuery, properties, pageSize, offset);
+            });
+        }
 
-        return overview(PARTICIPANTS_END_POINT, params, PROPERTIES, defaultSort, mapping, "participants");
+        return inventoryESService.inParallel(tasks, cohortEntityExecutor);
     }
 
-    private List<Map<String, Object>> diagnosisOverview(Map<String, Object> params) throws IOException {
-        final List<Map<String, Object>> PROPERTIES = List.of(
-            // Demographics
-            Map.ofEntries(
-                Map.entry("gqlName", "participant"),
-                Map.entry("osName", "participant"),
-                Map.entry("nested", List.of(
-                    Map.ofEntries(
-                        Map.entry("gqlName", "id"),
-                        Map.entry("osName", "id")
-                    ),
-                    Map.ofEntries(
-                        Map.entry("gqlName", "participant_id"),
-                        Map.entry("osName", "participant_id")
-                    ),
-
-                    // Additional fields for Cohort manifest download
-                    Map.ofEntries(
-                        Map.entry("gqlName", "race"),
-                        Map.entry("osName", "race")
-                    ),
-                    Map.ofEntries(
-                        Map.entry("gqlName", "sex_at_birth"),
-                        Map.entry("osName", "sex_at_birth")
-                    )
-                ))
-            ),
+    private List<Map<String, Object>> studyOverview(Map<String, Object> params) throws IOException {
+        Set<String> excludedParams = Set.of(PAGE_SIZE, OFFSET, ORDER_BY, SORT_DIRECTION);
+        FacetIndex.Selection selection = facetEngine.select(params, excludedParams);
+        List<String> data = new ArrayList<>();
 
-            // Diagnoses
-            Map.ofEntries(
-                Map.entry("gqlName", "id"),
-                Map.entry("osName", "id")
-            ),
-            Map.ofEntries(
-                Map.entry("gqlName", "age_at_diagnosis"),
-                Map.entry("osName", "age_at_diagnosis_str")
-            ),
-            Map.ofEntries(
-                Map.entry("gqlName", "anatomic_site"),
-                Map.entry("osName", "anatomic_site")
-            ),
-            Map.ofEntries(
-                Map.entry("gqlName", "diagnosis_basis"),
-                Map.entry("osName", "diagnosis_basis")
-            ),
-            Map.ofEntries(
-                Map.entry("gqlName", "diagnosis"),
-                Map.entry("osName", "diagnosis")
-            ),
-            Map.ofEntries(
-                Map.entry("gqlName", "diagnosis_classification_system"),
-                Map.entry("osName", "diagnosis_classification_system")
-            ),
-            Map.ofEntries(
-                Map.entry("gqlName", "disease_phase"),
-                Map.entry("osName", "disease_phase")
-            ),
-            Map.ofEntries(
-                Map.entry("gqlName", "tumor_classification"),
-                Map.entry("osName", "tumor_classification")
-            ),
+        // The studies with any matching participants, from the facet index if it can tell
+        if (selection != null) {
+            for (Map<String, Object> group : selection.groupCounts("study_id", Set.of(), CountStrategy.DOC_COUNT)) {
+                data.add((String) group.get("group"));
+            }
+        } else {
+            Request request = new Request("GET", PARTICIPANTS_END_POINT);
+            Map<String, Object> query = inventoryESService.buildFacetFilterQuery(params, RANGE_PARAMS, excludedParams, "participants");
+            String[] AGG_NAMES = new String[] {"study_id"};
+            query = inventoryESService.addAggregations(query, AGG_NAMES);
+            String queryJson = inventoryESService.serializeForAggregations(query);
+            request.setJsonEntity(queryJson);
+            JsonObject jsonObject = inventoryESService.send(request, InventoryESService.ResponseUse.AGGREGATIONS);
+            Map<String, JsonArray> aggs = inventoryESService.collectTermAggs(jsonObject, AGG_NAMES);
+            JsonArray buckets = aggs.get("study_id");
+            for (var bucket: buckets) {
+                data.add(bucket.getAsJsonObject().get("key").getAsString());
+            }
+        }
 
-            // Studies
-            Map.ofEntries(
-                Map.entry("gqlName", "dbgap_accession"),
-                Map.entry("osName", "dbgap_accession")
-            ),
+        String order_by = (String)params.get(ORDER_BY);
+        String direction = ((String)params.get(SORT_DIRECTION));
+        int pageSize = (int) params.get(PAGE_SIZE);
+        int offset = (int) params.get(OFFSET);
+        OverviewTable table = overviewTables.get("studies");
+        Map.Entry<String, Object> sort = table.sortClause(order_by, direction).entrySet().iterator().next();
+        List<Map<String, Object>> page = studyCatalog.page("study_id", new HashSet<>(data), sort.getKey(), "desc".equals(sort.getValue()), pageSize, offset);
 
+        if (page != null) {
+            return catalogRows(page, table.properties());
+        }
 
-            // Additional fields for download
-            Map.ofEntries(
-                Map.entry("gqlName", "diagnosis_id"),
-                Map.entry("osName", "diagnosis_id")
-            ),
-            Map.ofEntries(
-                Map.entry("gqlName", "diagnosis_comment"),
-                Map.entry("osName", "diagnosis_comment")
-            ),
-            Map.ofEntries(
-                Map.entry("gqlName", "study_id"),
-                Map.entry("osName", "study_id")
-            ),
-            Map.ofEntries(
-                Map.entry("gqlName", "toronto_childhood_cancer_staging"),
-                Map.entry("osName", "toronto_childhood_cancer_staging")
-            ),
-            Map.ofEntries(
-                Map.entry("gqlName", "tumor_grade"),
-                Map.entry("osName", "tumor_grade")
-            ),
-            Map.ofEntries(
-                Map.entry("gqlName", "tumor_stage_clinical_m"),
-                Map.entry("osName", "tumor_stage_clinical_m")
-            ),
-            Map.ofEntries(
-                Map.entry("gqlName", "tumor_stage_clinical_n"),
-                Map.entry("osName", "tumor_stage_clinical_n")
-            ),
-            Map.ofEntries(
-                Map.entry("gqlName", "tumor_stage_clinical_t"),
-                Map.entry("osName", "tumor_stage_clinical_t")
-            )
-        );
+        Map<String, Object> study_params = new HashMap<>();
+        if (data.size() == 0) {
+            data.add("-1");
+        }
+        study_params.put("study_id", data);
+        study_params.put(ORDER_BY, order_by);
+        study_params.put(SORT_DIRECTION, direction);
+        study_params.put(PAGE_SIZE, pageSize);
+        study_params.put(OFFSET, offset);
 
-        String defaultSort = "diagnosis_id"; // Default sort order
-
-        Map<String, Map<String, Object>> mapping = Map.ofEntries(
-            // Diagnoses
-            Map.entry("id", Map.ofEntries(
-                Map.entry("osName", "id"),
-                Map.entry("isNested", false)
-            )),
-            Map.entry("age_at_diagnosis", Map.ofEntries(
-                Map.entry("osName", "age_at_diagnosis"),
-                Map.entry("isNested", false)
-            )),
-            Map.entry("anatomic_site", Map.ofEntries(
-                Map.entry("osName", "anatomic_site"),
-                Map.entry("isNested", false)
-            )),
-            Map.entry("diagnosis_basis", Map.ofEntries(
-                Map.entry("osName", "diagnosis_basis"),
-                Map.entry("isNested", false)
-            )),
-            Map.entry("diagnosis", Map.ofEntries(
-                Map.entry("osName", "diagnosis"),
-                Map.entry("isNested", false)
-            )),
-            Map.entry("diagnosis_classification_system", Map.ofEntries(
-                Map.entry("osName", "diagnosis_classification_system"),
-                Map.entry("isNested", false)
-            )),
-            Map.entry("disease_phase", Map.ofEntries(
-                Map.entry("osName", "disease_phase"),
-                Map.entry("isNested", false)
-            )),
-            Map.entry("tumor_classification", Map.ofEntries(
-                Map.entry("osName", "tumor_classification"),
-                Map.entry("isNested", false)
-            )),
-
-            // Demographics
-            Map.entry("participant.participant_id", Map.ofEntries(
-                Map.entry("osName", "participant_id"),
-                Map.entry("isNested", true),
-                Map.entry("path", "participant")
-            )),
-
-            // Studies
-            Map.entry("dbgap_accession", Map.ofEntries(
-                Map.entry("osName", "dbgap_accession"),
-                Map.entry("isNested", false)
-            )),
-
-            // Additional fields for download
-            Map.entry("diagnosis_id", Map.ofEntries(
-                Map.entry("osName", "diagnosis_id"),
-                Map.entry("isNested", false)
-            )),
-            Map.entry("diagnosis_comment", Map.ofEntries(
-                Map.entry("osName", "diagnosis_comment"),
-                Map.entry("isNested", false)
-            )),
-            Map.entry("study_id", Map.ofEntries(
-                Map.entry("osName", "study_id"),
-                Map.entry("isNested", false)
-            )),
-            Map.entry("toronto_childhood_cancer_staging", Map.ofEntries(
-                Map.entry("osName", "toronto_childhood_cancer_staging"),
-                Map.entry("isNested", false)
-            )),
-            Map.entry("tumor_grade", Map.ofEntries(
-                Map.entry("osName", "tumor_grade"),
-                Map.entry("isNested", false)
-            )),
-            Map.entry("tumor_stage_clinical_m", Map.ofEntries(
-                Map.entry("osName", "tumor_stage_clinical_m"),
-                Map.entry("isNested", false)
-            )),
-            Map.entry("tumor_stage_clinical_n", Map.ofEntries(
-                Map.entry("osName", "tumor_stage_clinical_n"),
-                Map.entry("isNested", false)
-            )),
-            Map.entry("tumor_stage_clinical_t", Map.ofEntries(
-                Map.entry("osName", "tumor_stage_clinical_t"),
-                Map.entry("isNested", false)
-            ))
-        );
+        return overview(study_params, overviewTables.get("studies"), null);
+    }
+
+    /**
+     * Retrieves a page of an overview table
+     * @param params GraphQL variables
+     * @param table The overview table
+     * @param selectedFields Fields requested in the GraphQL query, or null for all of the table's fields
+     * @return
+     * @throws IOException
+     */
+    private List<Map<String, Object>> overview(Map<String, Object> params, OverviewTable table, Set<String> selectedFields) throws IOException {
+        String endpoint = table.endpoint();
+        Map<String, Object> query = inventoryESService.buildFacetFilterQuery(params, RANGE_PARAMS, Set.of(PAGE_SIZE, OFFSET, ORDER_BY, SORT_DIRECTION, CURSOR_MODE, AFTER), table.index());
+        String order_by = (String)params.get(ORDER_BY);
+        String direction = (String)params.get(SORT_DIRECTION);
+        Map<String, Object> sort = table.sortClause(order_by, direction);
+        String after = (String) params.get(AFTER);
+        boolean isCursorMode = Boolean.TRUE.equals(params.get(CURSOR_MODE)) || after != null;
+        List<Map<String, Object>> properties = table.properties();
+        List<String> includes;
+        query.put("sort", sort);
+
+        // Only retrieve the fields that were asked for, plus the sort field
+        if (selectedFields != null) {
+            properties = selectProperties(properties, selectedFields, "");
+            includes = sourceIncludes(properties, "");
+        } else {
+            includes = new ArrayList<>(table.sourceIncludes());
+        }
+
+        includes.addAll(sort.keySet());
+        query.put("_source", includes);
+
+        int pageSize = (int) params.get(PAGE_SIZE);
+        int offset = (int) params.get(OFFSET);
 
-        return overview(DIAGNOSES_END_POINT, params, PROPERTIES, defaultSort, mapping, "diagnoses");
+        // Cursors need a unique sort order, so break ties by ID
+        if (isCursorMode) {
+            query.put("sort", sort.containsKey("id") ? List.of(sort) : List.of(sort, Map.of("id", "asc")));
+            return inventoryESService.collectCursorPage(OverviewTable.searchedIndex(endpoint), query, properties, pageSize, after);
+        }
+
+        List<Map<String, Object>> page = snapshotPage(table, params, sort, pageSize, offset);
+
+        if (page != null) {
+            return page;
+        }
+
+        String cacheKeyPrefix = overviewCacheKeyPrefix(endpoint, params, sort, selectedFields, pageSize);
+        Object pageRaw = caffeineCache.asMap().get(cacheKeyPrefix + offset);
+
+        if (TypeChecker.isOfType(pageRaw, new TypeToken<List<Map<String, Object>>>() {})) {
+            @SuppressWarnings("unchecked")
+            List<Map<String, Object>> castedPage = (List<Map<String, Object>>) pageRaw;
+            page = castedPage;
+        }
+
+        if (page == null) {
+            page = collectOverviewPage(table, query, properties, pageSize, offset);
+            caffeineCache.put(cacheKeyPrefix + offset, page);
+        } else {
+            logger.info("hit cache!");
+        }
+
+        // Users usually page through tables in order, so get the next page ready
+        if (page.size() == pageSize) {
+            prefetchPage(table, query, properties, pageSize, offset + pageSize, cacheKeyPrefix + (offset + pageSize));
+        }
+
+        return page;
     }
 
-    private List<Map<String, Object>> geneticAnalysisOverview(Map<String, Object> params) throws IOException {
-        final List<Map<String, Object>> PROPERTIES = List.of(
-            // Study
-            Map.ofEntries(
-                Map.entry("gqlName", "dbgap_accession"),
-                Map.entry("osName", "dbgap_accession")
-            ),
+    /**
+     * Retrieves a page of an overview table from its local snapshot
+     * @param table The overview table
+     * @param params GraphQL variables
+     * @param sort Sort clause of the table
+     * @param pageSize Number of rows in the page
+     * @param offset Offset of the page
+     * @return The page, or null if the snapshot isn't loaded or doesn't support the filters
+     */
+    private List<Map<String, Object>> snapshotPage(OverviewTable table, Map<String, Object> params, Map<String, Object> sort, int pageSize, int offset) {
+        Set<String> tableParams = Set.of(PAGE_SIZE, OFFSET, ORDER_BY, SORT_DIRECTION, CURSOR_MODE, AFTER);
+        Map<String, Set<String>> terms = new HashMap<>();
+        Map<String, Double[]> ranges = new HashMap<>();
+        Map.Entry<String, Object> sortClause = sort.entrySet().iterator().next();
+        Object direction = sortClause.getValue() instanceof Map ? ((Map<?, ?>) sortClause.getValue()).get("order") : sortClause.getValue();
+
+        if (!snapshotStore.isEnabled() || !table.hasSnapshot()) {
+            return null;
+        }
 
-            // Genetic Analysis
-            Map.ofEntries(
-                Map.entry("gqlName", "id"),
-                Map.entry("osName", "id")
-            ),
-            Map.ofEntries(
-                Map.entry("gqlName", "genetic_analysis_id"),
-                Map.entry("osName", "genetic_analysis_id")
-            ),
-            Map.ofEntries(
-                Map.entry("gqlName", "alteration"),
-                Map.entry("osName", "alteration")
-            ),
-            Map.ofEntries(
-                Map.entry("gqlName", "cytoband"),
-                Map.entry("osName", "cytoband")
-            ),
-            Map.ofEntries(
-                Map.entry("gqlName", "gene_symbol"),
-                Map.entry("osName", "gene_symbol")
-            ),
-            Map.ofEntries(
-                Map.entry("gqlName", "genomic_source_category"),
-                Map.entry("osName", "genomic_source_category")
-            ),
-            Map.ofEntries(
-                Map.entry("gqlName", "hgvs_coding"),
-                Map.entry("osName", "hgvs_coding")
-            ),
-            Map.ofEntries(
-                Map.entry("gqlName", "hgvs_genome"),
-                Map.entry("osName", "hgvs_genome")
-            ),
-            Map.ofEntries(
-                Map.entry("gqlName", "hgvs_protein"),
-                Map.entry("osName", "hgvs_protein")
-            ),
-            Map.ofEntries(
-                Map.entry("gqlName", "status"),
-                Map.entry("osName", "status")
-            ),
-            Map.ofEntries(
-                Map.entry("gqlName", "test"),
-                Map.entry("osName", "test")
-            ),
-            Map.ofEntries(
-                Map.entry("gqlName", "reported_significance"),
-                Map.entry("osName", "reported_significance")
-            ),
-            Map.ofEntries(
-                Map.entry("gqlName", "reported_significance_system"),
-                Map.entry("osName", "reported_significance_system")
-            ),
+        for (Map.Entry<String, Object> param : params.entrySet()) {
+            String column = table.snapshotFilters().get(param.getKey());
+            Object value = param.getValue();
 
-            // Demographics
-            Map.ofEntries(
-                Map.entry("gqlName", "participant"),
-                Map.entry("osName", "participant"),
-                Map.entry("nested", List.of(
-                    Map.ofEntries(
-                        Map.entry("gqlName", "id"),
-                        Map.entry("osName", "id")
-                    ),
-                    Map.ofEntries(
-                        Map.entry("gqlName", "participant_id"),
-                        Map.entry("osName", "participant_id")
-                    ),
-
-                    // Additional fields for Cohort manifest download
-                    Map.ofEntries(
-                        Map.entry("gqlName", "race"),
-                        Map.entry("osName", "race")
-                    ),
-                    Map.ofEntries(
-                        Map.entry("gqlName", "sex_at_birth"),
-                        Map.entry("osName", "sex_at_birth")
-                    )
-                ))
-            ),
+            if (tableParams.contains(param.getKey()) || value == null) {
+                continue;
+            }
 
-            // Additional fields for download
-            Map.ofEntries(
-                Map.entry("gqlName", "alteration_effect"),
-                Map.entry("osName", "alteration_effect")
-            ),
-            Map.ofEntries(
-                Map.entry("gqlName", "alteration_type"),
-                Map.entry("osName", "alteration_type")
-            ),
-            Map.ofEntries(
-                Map.entry("gqlName", "chromosome"),
-                Map.entry("osName", "chromosome")
-            ),
-            Map.ofEntries(
-                Map.entry("gqlName", "exon"),
-                Map.entry("osName", "exon")
-            ),
-            Map.ofEntries(
-                Map.entry("gqlName", "fusion_partner_exon"),
-                Map.entry("osName", "fusion_partner_exon")
-            ),
-            Map.ofEntries(
-                Map.entry("gqlName", "fusion_partner_gene"),
-                Map.entry("osName", "fusion_partner_gene")
-            ),
-            Map.ofEntries(
-                Map.entry("gqlName", "reference_genome"),
-                Map.entry("osName", "reference_genome")
-            )
-        );
+            if (!(value instanceof List)) {
+                return null;
+            }
 
-        String defaultSort = "genetic_analysis_id"; // Default sort order
-
-        Map<String, Map<String, Object>> mapping = Map.ofEntries(
-            // Study
-            Map.entry("dbgap_accession", Map.ofEntries(
-                Map.entry("osName", "dbgap_accession"),
-                Map.entry("isNested", false)
-            )),
-
-            // Genetic Analysis
-            Map.entry("id", Map.ofEntries(
-                Map.entry("osName", "id"),
-                Map.entry("isNested", false)
-            )),
-            Map.entry("genetic_analysis_id", Map.ofEntries(
-                Map.entry("osName", "genetic_analysis_id"),
-                Map.entry("isNested", false)
-            )),
-            Map.entry("alteration", Map.ofEntries(
-                Map.entry("osName", "alteration"),
-                Map.entry("isNested", false)
-            )),
-            Map.entry("cytoband", Map.ofEntries(
-                Map.entry("osName", "cytoband"),
-                Map.entry("isNested", false)
-            )),
-            Map.entry("gene_symbol", Map.ofEntries(
-                Map.entry("osName", "gene_symbol_str"),
-                Map.entry("isNested", false)
-            )),
-            Map.entry("genomic_source_category", Map.ofEntries(
-                Map.entry("osName", "genomic_source_category"),
-                Map.entry("isNested", false)
-            )),
-            Map.entry("hgvs_coding", Map.ofEntries(
-                Map.entry("osName", "hgvs_coding"),
-                Map.entry("isNested", false)
-            )),
-            Map.entry("hgvs_genome", Map.ofEntries(
-                Map.entry("osName", "hgvs_genome"),
-                Map.entry("isNested", false)
-            )),
-            Map.entry("hgvs_protein", Map.ofEntries(
-                Map.entry("osName", "hgvs_protein"),
-                Map.entry("isNested", false)
-            )),
-            Map.entry("status", Map.ofEntries(
-                Map.entry("osName", "status"),
-                Map.entry("isNested", false)
-            )),
-            Map.entry("test", Map.ofEntries(
-                Map.entry("osName", "test"),
-                Map.entry("isNested", false)
-            )),
-            Map.entry("reported_significance", Map.ofEntries(
-                Map.entry("osName", "reported_significance"),
-                Map.entry("isNested", false)
-            )),
-            Map.entry("reported_significance_system", Map.ofEntries(
-                Map.entry("osName", "reported_significance_system"),
-                Map.entry("isNested", false)
-            )),
-
-            // Demographics
-            Map.entry("participant.participant_id", Map.ofEntries(
-                Map.entry("osName", "participant_id"),
-                Map.entry("isNested", true),
-                Map.entry("path", "participant")
-            )),
-
-            // Additional fields for download
-            Map.entry("alteration_effect", Map.ofEntries(
-                Map.entry("osName", "alteration_effect"),
-                Map.entry("isNested", false)
-            )),
-            Map.entry("alteration_type", Map.ofEntries(
-                Map.entry("osName", "alteration_type"),
-                Map.entry("isNested", false)
-            )),
-            Map.entry("chromosome", Map.ofEntries(
-                Map.entry("osName", "chromosome"),
-                Map.entry("isNested", false)
-            )),
-            Map.entry("exon", Map.ofEntries(
-                Map.entry("osName", "exon"),
-                Map.entry("isNested", false)
-            )),
-            Map.entry("fusion_partner_exon", Map.ofEntries(
-                Map.entry("osName", "fusion_partner_exon"),
-                Map.entry("isNested", false)
-            )),
-            Map.entry("fusion_partner_gene", Map.ofEntries(
-                Map.entry("osName", "fusion_partner_gene"),
-                Map.entry("isNested", false)
-            )),
-            Map.entry("reference_genome", Map.ofEntries(
-                Map.entry("osName", "reference_genome"),
-                Map.entry("isNested", false)
-            ))
-        );
+            List<?> values = (List<?>) value;
 
-        return overview(GENETIC_ANALYSES_END_POINT, params, PROPERTIES, defaultSort, mapping, "genetic_analyses");
+            // A list with only one empty string [""] means there's no filter
+            if (values.isEmpty() || (values.size() == 1 && "".equals(values.get(0)))) {
+                continue;
+            }
+
+            if (column == null) {
+                return null;
+            }
+
+            if (RANGE_PARAMS.contains(param.getKey())) {
+                if (values.size() < 2 || (values.get(0) == null && values.get(1) == null)) {
+                    return null;
+                }
+
+                ranges.put(column, new Double[] {
+                    values.get(0) == null ? null : ((Number) values.get(0)).doubleValue(),
+                    values.get(1) == null ? null : ((Number) values.get(1)).doubleValue()
+                });
+            } else if (param.getKey().equals("participant_pk")) {
+                // Leave unknown cohort handles to Opensearch's error handling
+                try {
+                    terms.put(column, new HashSet<>(cohortStore.resolve(values.stream().map(String::valueOf).collect(Collectors.toList()))));
+                } catch (IOException e) {
+                    return null;
+                }
+            } else {
+                terms.put(column, values.stream().map(String::valueOf).collect(Collectors.toSet()));
+            }
+        }
+
+        return snapshotStore.page(table.name(), terms, ranges, sortClause.getKey(), "desc".equals(direction), pageSize, offset);
     }
 
-    private List<Map<String, Object>> studyOverview(Map<String, Object> params) throws IOException {
-        final List<Map<String, Object>> PROPERTIES = List.of(
-            // Studies
-            Map.ofEntries(
-                Map.entry("gqlName", "id"),
-                Map.entry("osName", "id")
-            ),
-            Map.ofEntries(
-                Map.entry("gqlName", "dbgap_accession"),
-                Map.entry("osName", "dbgap_accession")
-            ),
-            Map.ofEntries(
-                Map.entry("gqlName", "study_name"),
-                Map.entry("osName", "study_name")
-            ),
+    /**
+     * Identifies the pages of an overview table with a given set of filters, sort order and page size
+     * Filters are put in a canonical order, so the same filters in a different order share pages
+     * @param endpoint Opensearch endpoint of the table
+     * @param params GraphQL variables
+     * @param sort Sort clause of the table
+     * @param selectedFields Fields requested in the GraphQL query, or null for all of the table's fields
+     * @param pageSize Number of rows in a page
+     * @return The cache key of the pages, without the page's offset
+     */
+    private String overviewCacheKeyPrefix(String endpoint, Map<String, Object> params, Map<String, Object> sort, Set<String> selectedFields, int pageSize) {
+        Map<String, Object> filters = new TreeMap<>();
+        Set<String> tableParams = Set.of(PAGE_SIZE, OFFSET, ORDER_BY, SORT_DIRECTION, CURSOR_MODE, AFTER);
 
-            // Additional fields for download
-            Map.ofEntries(
-                Map.entry("gqlName", "external_url"),
-                Map.entry("osName", "external_url")
-            ),
-            Map.ofEntries(
-                Map.entry("gqlName", "study_description"),
-                Map.entry("osName", "study_description")
-            ),
-            Map.ofEntries(
-                Map.entry("gqlName", "study_id"),
-                Map.entry("osName", "study_id")
-            )
-        );
+        for (Map.Entry<String, Object> param : params.entrySet()) {
+            Object value = param.getValue();
+
+            if (tableParams.contains(param.getKey()) || value == null) {
+                continue;
+            }
+
+            // A list with only one empty string [""] means there's no filter
+            if (value instanceof List) {
+                List<String> values = ((List<?>) value).stream()
+                    .map(String::valueOf)
+                    .collect(Collectors.toList());
+
+                if (values.isEmpty() || (values.size() == 1 && values.get(0).isEmpty())) {
+                    continue;
+                }
+
+                // Range bounds are ordered, but selected values aren't
+                if (!RANGE_PARAMS.contains(param.getKey())) {
+                    Collections.sort(values);
+                }
+
+                value = values;
+            }
+
+            filters.put(param.getKey(), value);
+        }
 
-        String defaultSort = "dbgap_accession"; // Default sort order
-
-        Map<String, Map<String, Object>> mapping = Map.ofEntries(
-            // Studies
-            Map.entry("id", Map.ofEntries(
-                Map.entry("osName", "id"),
-                Map.entry("isNested", false)
-            )),
-            Map.entry("dbgap_accession", Map.ofEntries(
-                Map.entry("osName", "dbgap_accession"),
-                Map.entry("isNested", false)
-            )),
-            Map.entry("study_name", Map.ofEntries(
-                Map.entry("osName", "study_name"),
-                Map.entry("isNested", false)
-            )),
-
-            // Additional fields for download
-            Map.entry("external_url", Map.ofEntries(
-                Map.entry("osName", "external_url"),
-                Map.entry("isNested", false)
-            )),
-            Map.entry("study_description", Map.ofEntries(
-                Map.entry("osName", "study_description"),
-                Map.entry("isNested", false)
-            )),
-            Map.entry("study_id", Map.ofEntries(
-                Map.entry("osName", "study_id"),
-                Map.entry("isNested", false)
-            ))
+        return String.join("|",
+            "overview",
+            endpoint,
+            filters.toString(),
+            sort.toString(),
+            selectedFields == null ? "*" : new TreeSet<>(selectedFields).toString(),
+            String.valueOf(pageSize),
+            ""
         );
-        
-        Request request = new Request("GET", PARTICIPANTS_END_POINT);
-        Map<String, Object> query = inventoryESService.buildFacetFilterQuery(params, RANGE_PARAMS, Set.of(PAGE_SIZE, OFFSET, ORDER_BY, SORT_DIRECTION), "participants");
-        String[] AGG_NAMES = new String[] {"study_id"};
-        query = inventoryESService.addAggregations(query, AGG_NAMES);
-        String queryJson = gson.toJson(query);
-        request.setJsonEntity(queryJson);
-        JsonObject jsonObject = inventoryESService.send(request);
-        Map<String, JsonArray> aggs = inventoryESService.collectTermAggs(jsonObject, AGG_NAMES);
-        JsonArray buckets = aggs.get("study_id");
-        List<String> data = new ArrayList<>();
-        for (var bucket: buckets) {
-            data.add(bucket.getAsJsonObject().get("key").getAsString());
-        }
+    }
 
-        String order_by = (String)params.get(ORDER_BY);
-        String direction = ((String)params.get(SORT_DIRECTION));
-        int pageSize = (int) params.get(PAGE_SIZE);
-        int offset = (int) params.get(OFFSET);
-        
-        Map<String, Object> study_params = new HashMap<>();
-        if (data.size() == 0) {
-            data.add("-1");
+    /**
+     * Retrieves an overview page in the background and caches it
+     * Skipped if the page is already cached, if the prefetch budget is used up, or while the cluster is rejecting
+     * requests or slow to respond, so that prefetching never adds load to a struggling cluster
+     * @param table The overview table
+     * @param query Opensearch query of the table
+     * @param properties GraphQL field -> Opensearch field mappings of the rows
+     * @param pageSize Number of rows in the page
+     * @param offset Offset of the page
+     * @param cacheKey Cache key of the page
+     */
+    private void prefetchPage(OverviewTable table, Map<String, Object> query, List<Map<String, Object>> properties, int pageSize, int offset, String cacheKey) {
+        if (caffeineCache.asMap().containsKey(cacheKey) || inventoryESService.isBusy() || !prefetchBudget.tryAcquire()) {
+            return;
         }
-        study_params.put("study_id", data);
-        study_params.put(ORDER_BY, order_by);
-        study_params.put(SORT_DIRECTION, direction);
-        study_params.put(PAGE_SIZE, pageSize);
-        study_params.put(OFFSET, offset);
 
-        return overview(STUDIES_END_POINT, study_params, PROPERTIES, defaultSort, mapping, "studies");
-    }
+        Map<String, Object> prefetchQuery = new HashMap<>(query);
 
-    private List<Map<String, Object>> survivalOverview(Map<String, Object> params) throws IOException {
-        final List<Map<String, Object>> PROPERTIES = List.of(
-            // Participants
-            Map.ofEntries(
-                Map.entry("gqlName", "participant"),
-                Map.entry("osName", "participant"),
-                Map.entry("nested", List.of(
-                    Map.ofEntries(
-                        Map.entry("gqlName", "id"),
-                        Map.entry("osName", "id")
-                    ),
-                    Map.ofEntries(
-                        Map.entry("gqlName", "participant_id"),
-                        Map.entry("osName", "participant_id")
-                    ),
-
-                    // Additional fields for Cohort manifest download
-                    Map.ofEntries(
-                        Map.entry("gqlName", "race"),
-                        Map.entry("osName", "race")
-                    ),
-                    Map.ofEntries(
-                        Map.entry("gqlName", "sex_at_birth"),
-                        Map.entry("osName", "sex_at_birth")
-                    )
-                ))
-            ),
+        try {
+            prefetchExecutor.execute(() -> {
+                try {
+                    caffeineCache.put(cacheKey, collectOverviewPage(table, prefetchQuery, properties, pageSize, offset));
+                } catch (IOException | RuntimeException e) {
+                    logger.warn("Unable to prefetch overview page: " + e.toString());
+                } finally {
+                    prefetchBudget.release();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            prefetchBudget.release();
+        }
+    }
 
-            // Survivals
-            Map.ofEntries(
-                Map.entry("gqlName", "dbgap_accession"),
-                Map.entry("osName", "dbgap_accession")
-            ),
+    /**
+     * Retrieves a page of an overview table with from/size
+     * Tables whose fields keep their Opensearch names are served straight from each document's _source
+     * @param table The overview table
+     * @param query Opensearch query of the table
+     * @param properties GraphQL field -> Opensearch field mappings of the rows
+     * @param pageSize Number of rows in the page
+     * @param offset Offset of the page
+     * @return
+     * @throws IOException
+     */
+    private List<Map<String, Object>> collectOverviewPage(OverviewTable table, Map<String, Object> query, List<Map<String, Object>> properties, int pageSize, int offset) throws IOException {
+        Request request = new Request("GET", table.endpoint());
 
-            // Studies
-            Map.ofEntries(
-                Map.entry("gqlName", "id"),
-                Map.entry("osName", "id")
-            ),
-            Map.ofEntries(
-                Map.entry("gqlName", "age_at_last_known_survival_status"),
-                Map.entry("osName", "age_at_last_known_survival_status_str")
-            ),
-            Map.ofEntries(
-                Map.entry("gqlName", "cause_of_death"),
-                Map.entry("osName", "cause_of_death")
-            ),
-            Map.ofEntries(
-                Map.entry("gqlName", "first_event"),
-                Map.entry("osName", "first_event")
-            ),
-            Map.ofEntries(
-                Map.entry("gqlName", "last_known_survival_status"),
-                Map.entry("osName", "last_known_survival_status")
-            ),
+        if (table.isPassThrough() && pageSize + offset <= InventoryESService.SCROLL_THRESHOLD) {
+            return inventoryESService.collectSourcePage(request, query, table.renames(), pageSize, offset);
+        }
 
-            // Additional fields for download
-            Map.ofEntries(
-                Map.entry("gqlName", "age_at_event_free_survival_status"),
-                Map.entry("osName", "age_at_event_free_survival_status_str")
-            ),
-            Map.ofEntries(
-                Map.entry("gqlName", "event_free_survival_status"),
-                Map.entry("osName", "event_free_survival_status")
-            ),
-            Map.ofEntries(
-                Map.entry("gqlName", "study_id"),
-                Map.entry("osName", "study_id")
-            ),
-            Map.ofEntries(
-                Map.entry("gqlName", "survival_id"),
-                Map.entry("osName", "survival_id")
-            )
-        );
+        return inventoryESService.collectPage(request, new HashMap<>(query), properties, pageSize, offset);
+    }
 
-        String defaultSort = "survival_id"; // Default sort order
-
-        Map<String, Map<String, Object>> mapping = Map.ofEntries(
-            // Participants
-            Map.entry("participant.participant_id", Map.ofEntries(
-                Map.entry("osName", "participant_id"),
-                Map.entry("isNested", true),
-                Map.entry("path", "participant")
-            )),
-
-            // Studies
-            Map.entry("dbgap_accession", Map.ofEntries(
-                Map.entry("osName", "dbgap_accession"),
-                Map.entry("isNested", false)
-            )),
-
-            // Survivals
-            Map.entry("id", Map.ofEntries(
-                Map.entry("osName", "id"),
-                Map.entry("isNested", false)
-            )),
-            Map.entry("age_at_last_known_survival_status", Map.ofEntries(
-                Map.entry("osName", "age_at_last_known_survival_status"),
-                Map.entry("isNested", false)
-            )),
-            Map.entry("cause_of_death", Map.ofEntries(
-                Map.entry("osName", "cause_of_death"),
-                Map.entry("isNested", false)
-            )),
-            Map.entry("first_event", Map.ofEntries(
-                Map.entry("osName", "first_event"),
-                Map.entry("isNested", false)
-            )),
-            Map.entry("last_known_survival_status", Map.ofEntries(
-                Map.entry("osName", "last_known_survival_status"),
-                Map.entry("isNested", false)
-            )),
-
-            // Additional fields for download
-            Map.entry("age_at_event_free_survival_status", Map.ofEntries(
-                Map.entry("osName", "age_at_event_free_survival_status"),
-                Map.entry("isNested", false)
-            )),
-            Map.entry("event_free_survival_status", Map.ofEntries(
-                Map.entry("osName", "event_free_survival_status"),
-                Map.entry("isNested", false)
-            )),
-            Map.entry("study_id", Map.ofEntries(
-                Map.entry("osName", "study_id"),
-                Map.entry("isNested", false)
-            )),
-            Map.entry("survival_id", Map.ofEntries(
-                Map.entry("osName", "survival_id"),
-                Map.entry("isNested", false)
-            ))
-        );
+    /**
+     * Overview tables that can be exported as manifests
+     * @param overviewType The table's index, or "cohorts" for the cohort manifest with every entity of each participant
+     * @return The table, or null if it can't be exported
+     */
+    public OverviewTable exportableTable(String overviewType) {
+        OverviewTable table = overviewTables.get(overviewType);
 
-        return overview(SURVIVALS_END_POINT, params, PROPERTIES, defaultSort, mapping, "survivals");
+        return table != null && table.isExportable() ? table : null;
     }
 
-    private List<Map<String, Object>> treatmentOverview(Map<String, Object> params) throws IOException {
-        final List<Map<String, Object>> PROPERTIES = List.of(
-            // Participants
-            Map.ofEntries(
-                Map.entry("gqlName", "participant"),
-                Map.entry("osName", "participant"),
-                Map.entry("nested", List.of(
-                    Map.ofEntries(
-                        Map.entry("gqlName", "id"),
-                        Map.entry("osName", "id")
-                    ),
-                    Map.ofEntries(
-                        Map.entry("gqlName", "participant_id"),
-                        Map.entry("osName", "participant_id")
-                    ),
-
-                    // Additional fields for Cohort manifest download
-                    Map.ofEntries(
-                        Map.entry("gqlName", "race"),
-                        Map.entry("osName", "race")
-                    ),
-                    Map.ofEntries(
-                        Map.entry("gqlName", "sex_at_birth"),
-                        Map.entry("osName", "sex_at_birth")
-                    )
-                ))
-            ),
+    /**
+     * Checks the shape of the filters sent to an export endpoint, which unlike GraphQL variables aren't checked against a schema
+     * @param params Facet filters, plus optional order_by and sort_direction
+     * @throws IllegalArgumentException If a filter isn't a list of the right type of values
+     */
+    public void checkExportParams(Map<String, Object> params) {
+        for (Map.Entry<String, Object> param : params.entrySet()) {
+            String name = param.getKey();
+            Object value = param.getValue();
+
+            if (name.equals(ORDER_BY) || name.equals(SORT_DIRECTION)) {
+                if (value != null && !(value instanceof String)) {
+                    throw new IllegalArgumentException(name + " must be a string");
+                }
 
-            // Studies
-            Map.ofEntries(
-                Map.entry("gqlName", "dbgap_accession"),
-                Map.entry("osName", "dbgap_accession")
-            ),
-            Map.ofEntries(
-                Map.entry("gqlName", "study_id"),
-                Map.entry("osName", "study_id")
-            ),
+                continue;
+            }
 
-            // Treatments
-            Map.ofEntries(
-                Map.entry("gqlName", "id"),
-                Map.entry("osName", "id")
-            ),
-            Map.ofEntries(
-                Map.entry("gqlName", "treatment_id"),
-                Map.entry("osName", "treatment_id")
-            ),
-            Map.ofEntries(
-                Map.entry("gqlName", "age_at_treatment_start"),
-                Map.entry("osName", "age_at_treatment_start_str")
-            ),
-            Map.ofEntries(
-                Map.entry("gqlName", "age_at_treatment_end"),
-                Map.entry("osName", "age_at_treatment_end_str")
-            ),
-            Map.ofEntries(
-                Map.entry("gqlName", "treatment_type"),
-                Map.entry("osName", "treatment_type")
-            ),
-            Map.ofEntries(
-                Map.entry("gqlName", "treatment_agent"),
-                Map.entry("osName", "treatment_agent")
-            )
-        );
+            if (Set.of(PAGE_SIZE, OFFSET, CURSOR_MODE, AFTER).contains(name)) {
+                continue;
+            }
 
-        String defaultSort = "treatment_type"; // Default sort order
-
-        Map<String, Map<String, Object>> mapping = Map.ofEntries(
-            // Participants
-            Map.entry("participant.participant_id", Map.ofEntries(
-                Map.entry("osName", "participant_id"),
-                Map.entry("isNested", true),
-                Map.entry("path", "participant")
-            )),
-
-            // Studies
-            Map.entry("dbgap_accession", Map.ofEntries(
-                Map.entry("osName", "dbgap_accession"),
-                Map.entry("isNested", false)
-            )),
-            Map.entry("study_id", Map.ofEntries(
-                Map.entry("osName", "study_id"),
-                Map.entry("isNested", false)
-            )),
-
-            // Treatments
-            Map.entry("id", Map.ofEntries(
-                Map.entry("osName", "id"),
-                Map.entry("isNested", false)
-            )),
-            Map.entry("treatment_id", Map.ofEntries(
-                Map.entry("osName", "treatment_id"),
-                Map.entry("isNested", false)
-            )),
-            Map.entry("age_at_treatment_start", Map.ofEntries(
-                Map.entry("osName", "age_at_treatment_start"),
-                Map.entry("isNested", false)
-            )),
-            Map.entry("age_at_treatment_end", Map.ofEntries(
-                Map.entry("osName", "age_at_treatment_end"),
-                Map.entry("isNested", false)
-            )),
-            Map.entry("treatment_type", Map.ofEntries(
-                Map.entry("osName", "treatment_type"),
-                Map.entry("isNested", false)
-            )),
-            Map.entry("treatment_agent", Map.ofEntries(
-                Map.entry("osName", "treatment_agent_str"),
-                Map.entry("isNested", false)
-            ))
-        );
+            if (!(value instanceof List<?> values)) {
+                throw new IllegalArgumentException(name + " must be a list");
+            }
 
-        return overview(TREATMENTS_END_POINT, params, PROPERTIES, defaultSort, mapping, "treatments");
+            for (Object element : values) {
+                if (RANGE_PARAMS.contains(name) ? element != null && !(element instanceof Integer) : !(element instanceof String)) {
+                    throw new IllegalArgumentException(name + " must be a list of " + (RANGE_PARAMS.contains(name) ? "whole numbers" : "strings"));
+                }
+            }
+        }
     }
 
-    private List<Map<String, Object>> treatmentResponseOverview(Map<String, Object> params) throws IOException {
-        final List<Map<String, Object>> PROPERTIES = List.of(
-            // Participants
-            Map.ofEntries(
-                Map.entry("gqlName", "participant"),
-                Map.entry("osName", "participant"),
-                Map.entry("nested", List.of(
-                    Map.ofEntries(
-                        Map.entry("gqlName", "id"),
-                        Map.entry("osName", "id")
-                    ),
-                    Map.ofEntries(
-                        Map.entry("gqlName", "participant_id"),
-                        Map.entry("osName", "participant_id")
-                    ),
-
-                    // Additional fields for Cohort manifest download
-                    Map.ofEntries(
-                        Map.entry("gqlName", "race"),
-                        Map.entry("osName", "race")
-                    ),
-                    Map.ofEntries(
-                        Map.entry("gqlName", "sex_at_birth"),
-                        Map.entry("osName", "sex_at_birth")
-                    )
-                ))
-            ),
+    /**
+     * Writes every row of an overview table that matches the filters, one page at a time
+     * Pages are read with search_after on a point in time, so memory use doesn't grow with the result set
+     * @param table The overview table, from exportableTable()
+     * @param params Facet filters, plus optional order_by and sort_direction
+     * @param writer Where to write the rows
+     * @throws IOException
+     */
+    public void exportOverview(OverviewTable table, Map<String, Object> params, ManifestWriter writer) throws IOException {
+        Map<String, Object> query = inventoryESService.buildFacetFilterQuery(params, RANGE_PARAMS, Set.of(PAGE_SIZE, OFFSET, ORDER_BY, SORT_DIRECTION, CURSOR_MODE, AFTER), table.index());
+        String order_by = (String) params.getOrDefault(ORDER_BY, "");
+        String direction = (String) params.get(SORT_DIRECTION);
+        Map<String, Object> sort = table.sortClause(order_by, direction);
+        List<Map<String, Object>> page;
+        String after = null;
 
-            // Studies
-            Map.ofEntries(
-                Map.entry("gqlName", "dbgap_accession"),
-                Map.entry("osName", "dbgap_accession")
-            ),
-            Map.ofEntries(
-                Map.entry("gqlName", "study_id"),
-                Map.entry("osName", "study_id")
-            ),
+        query.put("sort", sort.containsKey("id") ? List.of(sort) : List.of(sort, Map.of("id", "asc")));
+        writer.writeHeader(table.properties());
 
-            // Treatment Responses
-            Map.ofEntries(
-                Map.entry("gqlName", "id"),
-                Map.entry("osName", "id")
-            ),
-            Map.ofEntries(
-                Map.entry("gqlName", "treatment_response_id"),
-                Map.entry("osName", "treatment_response_id")
-            ),
-            Map.ofEntries(
-                Map.entry("gqlName", "response"),
-                Map.entry("osName", "response")
-            ),
-            Map.ofEntries(
-                Map.entry("gqlName", "age_at_response"),
-                Map.entry("osName", "age_at_response_str")
-            ),
-            Map.ofEntries(
-                Map.entry("gqlName", "response_category"),
-                Map.entry("osName", "response_category")
-            ),
-            Map.ofEntries(
-                Map.entry("gqlName", "response_system"),
-                Map.entry("osName", "response_system")
-            )
-        );
+        try {
+            do {
+                page = inventoryESService.collectCursorPage(OverviewTable.searchedIndex(table.endpoint()), query, table.properties(),
+                    EXPORT_PAGE_SIZE, after, CursorRegistry.Pool.EXPORT);
 
-        String defaultSort = "response"; // Default sort order
-
-        Map<String, Map<String, Object>> mapping = Map.ofEntries(
-            // Participants
-            Map.entry("participant.participant_id", Map.ofEntries(
-                Map.entry("osName", "participant_id"),
-                Map.entry("isNested", true),
-                Map.entry("path", "participant")
-            )),
-
-            // Studies
-            Map.entry("dbgap_accession", Map.ofEntries(
-                Map.entry("osName", "dbgap_accession"),
-                Map.entry("isNested", false)
-            )),
-            Map.entry("study_id", Map.ofEntries(
-                Map.entry("osName", "study_id"),
-                Map.entry("isNested", false)
-            )),
-
-            // Treatment Responses
-            Map.entry("id", Map.ofEntries(
-                Map.entry("osName", "id"),
-                Map.entry("isNested", false)
-            )),
-            Map.entry("treatment_response_id", Map.ofEntries(
-                Map.entry("osName", "treatment_response_id"),
-                Map.entry("isNested", false)
-            )),
-            Map.entry("response", Map.ofEntries(
-                Map.entry("osName", "response"),
-                Map.entry("isNested", false)
-            )),
-            Map.entry("age_at_response", Map.ofEntries(
-                Map.entry("osName", "age_at_response"),
-                Map.entry("isNested", false)
-            )),
-            Map.entry("response_category", Map.ofEntries(
-                Map.entry("osName", "response_category"),
-                Map.entry("isNested", false)
-            )),
-            Map.entry("response_system", Map.ofEntries(
-                Map.entry("osName", "response_system"),
-                Map.entry("isNested", false)
-            ))
-        );
+                for (Map<String, Object> row : page) {
+                    writer.writeRow(row);
+                    after = (String) row.get(InventoryESService.CURSOR);
+                }
+            } while (page.size() == EXPORT_PAGE_SIZE);
+        } finally {
+            // The point in time expires on its own if it can't be closed
+            if (after != null) {
+                try {
+                    inventoryESService.closeCursor(after);
+                } catch (IOException e) {
+                    logger.warn("Unable to close point in time: " + e.toString());
+                }
+            }
+        }
 
-        return overview(TREATMENT_RESPONSES_END_POINT, params, PROPERTIES, defaultSort, mapping, "treatment_responses");
+        writer.flush();
+    }
+
+    // Qualified names of the fields requested in a GraphQL query, such as "participant/participant_id"
+    private Set<String> selectedFields(DataFetchingEnvironment env) {
+        return env.getSelectionSet().getFields().stream()
+            .map(SelectedField::getQualifiedName)
+            .collect(Collectors.toSet());
     }
 
     /**
-     * Returns a list of records that match the given filters
-     * @param endpoint The Opensearch endpoint to query
-     * @param params The GraphQL variables to filter by
-     * @param properties The properties to retrieve
-     * @param defaultSort The default sort
-     * @param mapping Map of how to sort each field
-     * @param overviewType The type of records retrieved
+     * Narrows an overview table's fields to the ones requested in a GraphQL query
+     * @param properties The table's fields
+     * @param selectedFields Qualified names of the requested fields
+     * @param prefix Qualified name of the parent field, for nested fields
      * @return
-     * @throws IOException
      */
-    private List<Map<String, Object>> overview(String endpoint, Map<String, Object> params, List<Map<String, Object>> properties, String defaultSort, Map<String, Map<String, Object>> mapping, String overviewType) throws IOException {
-        Request request = new Request("GET", endpoint);
-        Map<String, Object> query = inventoryESService.buildFacetFilterQuery(params, RANGE_PARAMS, Set.of(PAGE_SIZE, OFFSET, ORDER_BY, SORT_DIRECTION), overviewType);
-        String order_by = (String)params.get(ORDER_BY);
-        String direction = ((String)params.get(SORT_DIRECTION)).toLowerCase();
-        query.put("sort", mapSortOrder(order_by, direction, defaultSort, mapping));
-        int pageSize = (int) params.get(PAGE_SIZE);
-        int offset = (int) params.get(OFFSET);
-        List<Map<String, Object>> page = inventoryESService.collectPage(request, query, properties, pageSize, offset);
-        return page;
+    private List<Map<String, Object>> selectProperties(List<Map<String, Object>> properties, Set<String> selectedFields, String prefix) {
+        List<Map<String, Object>> selected = new ArrayList<>();
+
+        for (Map<String, Object> property : properties) {
+            String name = prefix + property.get("gqlName");
+            Object nestedRaw = property.get("nested");
+
+            if (!selectedFields.contains(name)) {
+                continue;
+            }
+
+            if (TypeChecker.isOfType(nestedRaw, new TypeToken<List<Map<String, Object>>>() {})) {
+                @SuppressWarnings("unchecked")
+                List<Map<String, Object>> nested = (List<Map<String, Object>>) nestedRaw;
+                List<Map<String, Object>> selectedNested = selectProperties(nested, selectedFields, name + "/");
+
+                // Keep all nested fields if none of them were named, such as for __typename
+                if (!selectedNested.isEmpty()) {
+                    Map<String, Object> narrowed = new HashMap<>(property);
+                    narrowed.put("nested", selectedNested);
+                    property = narrowed;
+                }
+            }
+
+            selected.add(property);
+        }
+
+        return selected;
+    }
+
+    // Opensearch _source includes for an overview table's fields
+    private List<String> sourceIncludes(List<Map<String, Object>> properties, String prefix) {
+        List<String> includes = new ArrayList<>();
+
+        for (Map<String, Object> property : properties) {
+            String osName = prefix + property.get("osName");
+            Object nestedRaw = property.get("nested");
+
+            if (TypeChecker.isOfType(nestedRaw, new TypeToken<List<Map<String, Object>>>() {})) {
+                @SuppressWarnings("unchecked")
+                List<Map<String, Object>> nested = (List<Map<String, Object>>) nestedRaw;
+                includes.addAll(sourceIncludes(nested, osName + "."));
+            } else {
+                includes.add(osName);
+            }
+        }
+
+        return includes;
     }
 
     private Map<String, Object> studyDetails(Map<String, Object> params) throws IOException {
         Map<String, Object> study;
         String studyId = (String) params.get("study_id");
         List<Map<String, Object>> studies;
+        Map<String, Object> catalogStudy = studyCatalog.find(studyId);
 
-        final List<Map<String, Object>> PROPERTIES = List.of(
-            Map.ofEntries(
-                Map.entry("gqlName", "dbgap_accession"),
-                Map.entry("osName", "dbgap_accession")
-            ),
-            Map.ofEntries(
-                Map.entry("gqlName", "study_description"),
-                Map.entry("osName", "study_description")
-            ),
-            Map.ofEntries(
-                Map.entry("gqlName", "num_participants"),
-                Map.entry("osName", "num_participants")
-            ),
-            Map.ofEntries(
-                Map.entry("gqlName", "num_diseases"),
-                Map.entry("osName", "num_diseases")
-            ),
-            Map.ofEntries(
-                Map.entry("gqlName", "num_anatomic_sites"),
-                Map.entry("osName", "num_anatomic_sites")
-            ),
-            Map.ofEntries(
-                Map.entry("gqlName", "num_survivals"),
-                Map.entry("osName", "num_survivals")
-            )
-        );
-
-        Map<String, Map<String, Object>> mapping = Map.ofEntries(
-            Map.entry("dbgap_accession", Map.ofEntries(
-                Map.entry("osName", "dbgap_accession"),
-                Map.entry("isNested", false)
-            )),
-            Map.entry("study_description", Map.ofEntries(
-                Map.entry("osName", "study_description"),
-                Map.entry("isNested", false)
-            )),
-            Map.entry("num_participants", Map.ofEntries(
-                Map.entry("osName", "num_participants"),
-                Map.entry("isNested", false)
-            )),
-            Map.entry("num_diseases", Map.ofEntries(
-                Map.entry("osName", "num_diseases"),
-                Map.entry("isNested", false)
-            )),
-            Map.entry("num_anatomic_sites", Map.ofEntries(
-                Map.entry("osName", "num_anatomic_sites"),
-                Map.entry("isNested", false)
-            )),
-            Map.entry("num_survivals", Map.ofEntries(
-                Map.entry("osName", "num_survivals"),
-                Map.entry("isNested", false)
-            ))
-        );
+        if (catalogStudy != null) {
+            return catalogStudy.isEmpty() ? null : catalogRows(List.of(catalogStudy), overviewTables.get("study_details").properties()).get(0);
+        }
 
         Map<String, Object> study_params = Map.ofEntries(
             Map.entry("dbgap_accession", List.of(studyId)),
@@ -2088,7 +1967,7 @@ public class PrivateESDataFetcher extends AbstractPrivateESDataFetcher {
             Map.entry(OFFSET, 0)
         );
 
-        studies = overview(STUDIES_END_POINT, study_params, PROPERTIES, "dbgap_accession", mapping, "studies");
+        studies = overview(study_params, overviewTables.get("study_details"), null);
 
         try {
             study = studies.get(0);
@@ -2100,153 +1979,225 @@ public class PrivateESDataFetcher extends AbstractPrivateESDataFetcher {
     }
 
     private List<Map<String, Object>> studiesListing() throws IOException {
-        List<Map<String, Object>> properties = List.of(
-            Map.ofEntries(
-                Map.entry("gqlName", "dbgap_accession"),
-                Map.entry("osName", "dbgap_accession")
-            ),
-            Map.ofEntries(
-                Map.entry("gqlName", "study_name"),
-                Map.entry("osName", "study_name")
-            ),
-            Map.ofEntries(
-                Map.entry("gqlName", "num_participants"),
-                Map.entry("osName", "num_participants")
-            ),
-            Map.ofEntries(
-                Map.entry("gqlName", "num_diseases"),
-                Map.entry("osName", "num_diseases")
-            )
-        );
+        List<Map<String, Object>> properties = STUDIES_LISTING_FIELDS.stream()
+            .map(field -> Map.<String, Object>of("gqlName", field, "osName", field))
+            .toList();
+        List<Map<String, Object>> studies = studyCatalog.studies();
+
+        if (studies != null) {
+            return catalogRows(studies, properties);
+        }
 
         Map<String, Object> query = esService.buildListQuery();
-        Request request = new Request("GET", STUDIES_END_POINT);
-        return esService.collectPage(request, query, properties, ESService.MAX_ES_SIZE, 0);
+        return inventoryESService.collectAll("studies", query, properties);
     }
 
-    private List<Map<String, Object>> findParticipantIdsInList(Map<String, Object> params) throws IOException {
-        final List<Map<String, Object>> properties = List.of(
-            Map.ofEntries(
-                Map.entry("gqlName", "participant_id"),
-                Map.entry("osName", "participant_id")
-            ),
-            Map.ofEntries(
-                Map.entry("gqlName", "study_id"),
-                Map.entry("osName", "study_id")
-            )
-        );
-
-        Map<String, Object> query = esService.buildListQuery(params, Set.of(), false);
-        Request request = new Request("GET",PARTICIPANTS_END_POINT);
+    /**
+     * Maps studies of the study catalog to GraphQL fields
+     * @param studies Opensearch fields of the studies
+     * @param properties GraphQL field -> Opensearch field mappings, none of them nested
+     * @return
+     */
+    private List<Map<String, Object>> catalogRows(List<Map<String, Object>> studies, List<Map<String, Object>> properties) {
+        List<Map<String, Object>> rows = new ArrayList<Map<String, Object>>();
 
-        return esService.collectPage(request, query, properties, ESService.MAX_ES_SIZE, 0);
-    }
+        for (Map<String, Object> study : studies) {
+            Map<String, Object> row = new HashMap<String, Object>();
 
-    private Map<String, Object> mapSortOrder(String order_by, String direction, String defaultSort, Map<String, Map<String, Object>> mapping) {
-        String sortDirection = "asc";
-        Object sortPredicate;
+            for (Map<String, Object> property : properties) {
+                row.put((String) property.get("gqlName"), study.get((String) property.get("osName")));
+            }
 
-        // Handle invalid sort parameters
-        if (!mapping.containsKey(order_by)) {
-            logger.info("Order: \"" + order_by + "\" not recognized, use default order");
-            return Map.of(defaultSort, sortDirection);
+            rows.add(row);
         }
 
-        // Only two valid sort directions
-        if (sortDirection.equalsIgnoreCase("asc") || sortDirection.equalsIgnoreCase("desc")) {
-            sortDirection = direction;
-        }
+        return rows;
+    }
 
-        Map<String, Object> mappingDetails = mapping.get(order_by);
-        boolean isNested = (Boolean) mappingDetails.get("isNested");
-        String propName = (String) mappingDetails.get("osName");
+    /**
+     * Registers a cohort, so that filters can refer to it by its handle instead of its participant IDs
+     * @param params GraphQL variables
+     * @return The cohort's "handle", and its number of "participants"
+     * @throws IOException
+     */
+    private Map<String, Object> registerCohort(Map<String, Object> params) throws IOException {
+        List<String> ids = List.of();
+        String handle;
 
-        if (isNested) {
-            String nestedPath = (String) mappingDetails.get("path");
-            propName = String.join(".", nestedPath, propName);
-            sortPredicate = Map.ofEntries(
-                Map.entry("nested_path", nestedPath),
-                Map.entry("order", sortDirection)
-            );
-        } else {
-            sortPredicate = sortDirection;
+        if (TypeChecker.isOfType(params.get("participant_pk"), new TypeToken<List<String>>() {})) {
+            @SuppressWarnings("unchecked")
+            List<String> castedIds = (List<String>) params.get("participant_pk");
+            ids = cohortStore.resolve(castedIds);
         }
 
-        return Map.of(propName, sortPredicate);
+        handle = cohortStore.register(ids);
+
+        return Map.of(
+            "handle", handle,
+            "participants", cohortStore.get(handle).length
+        );
     }
 
-    private Integer numberOfDiseases(Map<String, Object> params) throws Exception {
-        // String cacheKey = generateCacheKey(params);
-        // Integer data = (Integer)caffeineCache.asMap().get(cacheKey);
+    /**
+     * Compares cohorts, in memory for registered cohorts, and after one lookup of any other participant IDs
+     * @param params GraphQL variables
+     * @return How many participants are in each region of the cohorts' Venn diagram, and the cohorts' "intersection",
+     *         "union" and "difference", registered as new cohorts if "save" is set
+     * @throws IOException
+     */
+    private Map<String, Object> cohortSetOperations(Map<String, Object> params) throws IOException {
+        List<String> names = new ArrayList<String>();
+        List<String[]> cohorts = new ArrayList<String[]>();
+        Map<Integer, List<String>> unregisteredCohorts = new HashMap<Integer, List<String>>();
+        Set<String> unregisteredIds = new HashSet<String>();
+        List<Map<String, Object>> overlaps = new ArrayList<Map<String, Object>>();
+        Map<String, Object> result = new HashMap<String, Object>();
+        boolean isSaving = Boolean.TRUE.equals(params.get("save"));
+        CohortSets.Comparison comparison;
+
+        if (TypeChecker.isOfType(params.get("cohorts"), new TypeToken<List<Map<String, Object>>>() {})) {
+            @SuppressWarnings("unchecked")
+            List<Map<String, Object>> castedCohortList = (List<Map<String, Object>>) params.get("cohorts");
+
+            for (int i = 0; i < castedCohortList.size(); i++) {
+                Map<String, Object> cohortInput = castedCohortList.get(i);
+                String name = cohortInput.get("name") == null ? "c" + (i + 1) : (String) cohortInput.get("name");
+                List<String> values = List.of();
+
+                if (TypeChecker.isOfType(cohortInput.get("participant_pk"), new TypeToken<List<String>>() {})) {
+                    @SuppressWarnings("unchecked")
+                    List<String> castedValues = (List<String>) cohortInput.get("participant_pk");
+                    values = castedValues;
+                }
+
+                if (names.contains(name)) {
+                    throw new IOException("Duplicate cohort name: " + name);
+                }
 
-        // if (data != null) {
-        //     logger.info("hit cache!");
-        //     return data;
-        // }
+                names.add(name);
+
+                // A single registered cohort is already sorted
+                if (values.size() == 1 && CohortStore.isHandle(values.get(0))) {
+                    cohorts.add(cohortStore.get(values.get(0)));
+                } else if (values.stream().allMatch(CohortStore::isHandle)) {
+                    cohorts.add(cohortStore.resolve(values).stream().sorted().toArray(String[]::new));
+                } else {
+                    List<String> ids = cohortStore.resolve(values);
+
+                    cohorts.add(null);
+                    unregisteredCohorts.put(i, ids);
+                    unregisteredIds.addAll(ids);
+                }
+            }
+        }
 
-        Request homeStatsRequest = new Request("GET", HOME_STATS_END_POINT);
-        JsonObject homeStatsResult = inventoryESService.send(homeStatsRequest);
-        JsonArray hits = homeStatsResult.getAsJsonObject("hits").getAsJsonArray("hits");
-        Iterator<JsonElement> hitsIter = hits.iterator();
+        if (names.size() < 2) {
+            throw new IOException("At least 2 cohorts are needed to compare them");
+        }
 
-        if (!hitsIter.hasNext()) {
-            throw new Exception("Error: no results for homepage stats!");
+        if (names.size() > COHORT_CHART_COHORT_LIMIT) {
+            throw new IOException("At most " + COHORT_CHART_COHORT_LIMIT + " cohorts can be compared");
         }
 
-        JsonObject counts = hitsIter.next().getAsJsonObject().getAsJsonObject("_source");
-        int count = counts.get("num_diseases").getAsInt();
+        // Participant IDs that weren't registered may not exist, so keep only those that do
+        // The lookup is split like any participant_pk filter, so it stays under index.max_terms_count
+        if (!unregisteredIds.isEmpty()) {
+            Map<String, Object> idsClause = cohortStore.filterClause("id", new ArrayList<String>(unregisteredIds));
+            List<Map<String, Object>> properties = List.of(Map.of("gqlName", "id", "osName", "id"));
+            Set<String> existingIds = idsClause == null ? Set.of() : inventoryESService.collectAll("participants", Map.of("query", idsClause), properties).stream()
+                .map(participant -> (String) participant.get("id"))
+                .collect(Collectors.toSet());
+
+            for (Map.Entry<Integer, List<String>> entry : unregisteredCohorts.entrySet()) {
+                cohorts.set(entry.getKey(), entry.getValue().stream()
+                    .filter(existingIds::contains)
+                    .distinct()
+                    .sorted()
+                    .toArray(String[]::new));
+            }
+        }
 
-        // caffeineCache.put(cacheKey, data);
+        comparison = CohortSets.compare(cohorts);
 
-        return count;
-    }
+        for (Map.Entry<Integer, Integer> region : comparison.regions().entrySet()) {
+            List<String> regionCohorts = new ArrayList<String>();
 
-    private Integer numberOfParticipants(Map<String, Object> params) throws Exception {
-        Request homeStatsRequest = new Request("GET", HOME_STATS_END_POINT);
-        JsonObject homeStatsResult = inventoryESService.send(homeStatsRequest);
-        JsonArray hits = homeStatsResult.getAsJsonObject("hits").getAsJsonArray("hits");
-        Iterator<JsonElement> hitsIter = hits.iterator();
+            for (int i = 0; i < names.size(); i++) {
+                if ((region.getKey() & (1 << i)) != 0) {
+                    regionCohorts.add(names.get(i));
+                }
+            }
 
-        if (!hitsIter.hasNext()) {
-            throw new Exception("Error: no results for homepage stats!");
+            overlaps.add(Map.of(
+                "cohorts", regionCohorts,
+                "participants", region.getValue()
+            ));
         }
 
-        JsonObject counts = hitsIter.next().getAsJsonObject().getAsJsonObject("_source");
-        int count = counts.get("num_participants").getAsInt();
+        result.put("overlaps", overlaps);
+        result.put("intersection", cohortSetResult(comparison.intersection(), isSaving));
+        result.put("union", cohortSetResult(comparison.union(), isSaving));
+        result.put("difference", cohortSetResult(comparison.difference(), isSaving));
 
-        return count;
+        return result;
     }
 
-    private Integer numberOfStudies(Map<String, Object> params) throws Exception {
-        Request homeStatsRequest = new Request("GET", HOME_STATS_END_POINT);
-        JsonObject homeStatsResult = inventoryESService.send(homeStatsRequest);
-        JsonArray hits = homeStatsResult.getAsJsonObject("hits").getAsJsonArray("hits");
-        Iterator<JsonElement> hitsIter = hits.iterator();
+    // The handle is null unless the set is saved, and empty sets are never saved
+    private Map<String, Object> cohortSetResult(String[] ids, boolean isSaving) throws IOException {
+        Map<String, Object> result = new HashMap<String, Object>();
 
-        if (!hitsIter.hasNext()) {
-            throw new Exception("Error: no results for homepage stats!");
-        }
+        result.put("handle", isSaving && ids.length > 0 ? cohortStore.register(Arrays.asList(ids)) : null);
+        result.put("participants", ids.length);
+
+        return result;
+    }
+
+    /**
+     * Autocompletes participant IDs and associated IDs
+     * @param params GraphQL variables
+     * @return The first "first" IDs starting with "prefix", each with its "participant_id", or none until the index
+     *         of the current release is built
+     */
+    private List<Map<String, Object>> participantIdSuggestions(Map<String, Object> params) {
+        String prefix = params.get("prefix") == null ? "" : (String) params.get("prefix");
+        int first = params.get("first") == null ? 10 : (Integer) params.get("first");
+        List<ParticipantIdIndex.Match> matches = participantIdLookup.suggest(prefix, Math.min(first, PARTICIPANT_ID_SUGGESTION_LIMIT));
 
-        JsonObject counts = hitsIter.next().getAsJsonObject().getAsJsonObject("_source");
-        int count = counts.get("num_studies").getAsInt();
+        if (matches == null) {
+            return List.of();
+        }
 
-        return count;
+        return matches.stream()
+            .map(match -> Map.<String, Object>of("id", match.id(), "participant_id", match.participantId()))
+            .toList();
     }
 
-    private Integer numberOfSurvivals(Map<String, Object> params) throws Exception {
-        Request homeStatsRequest = new Request("GET", HOME_STATS_END_POINT);
-        JsonObject homeStatsResult = inventoryESService.send(homeStatsRequest);
-        JsonArray hits = homeStatsResult.getAsJsonObject("hits").getAsJsonArray("hits");
-        Iterator<JsonElement> hitsIter = hits.iterator();
+    private List<Map<String, Object>> findParticipantIdsInList(Map<String, Object> params) throws IOException {
+        // Answered from the participant ID index once it's built, unless there are no IDs to filter by
+        if (TypeChecker.isOfType(params.get("participant_id"), new TypeToken<List<String>>() {})) {
+            @SuppressWarnings("unchecked")
+            List<String> ids = (List<String>) params.get("participant_id");
+            List<Map<String, Object>> participants = ids.isEmpty() ? null : participantIdLookup.findParticipants(ids);
 
-        if (!hitsIter.hasNext()) {
-            throw new Exception("Error: no results for homepage stats!");
+            if (participants != null) {
+                return participants;
+            }
         }
 
-        JsonObject counts = hitsIter.next().getAsJsonObject().getAsJsonObject("_source");
-        int count = counts.get("num_survivals").getAsInt();
+        final List<Map<String, Object>> properties = List.of(
+            Map.ofEntries(
+                Map.entry("gqlName", "participant_id"),
+                Map.entry("osName", "participant_id")
+            ),
+            Map.ofEntries(
+                Map.entry("gqlName", "study_id"),
+                Map.entry("osName", "study_id")
+            )
+        );
+
+        Map<String, Object> query = esService.buildListQuery(params, Set.of(), false);
 
-        return count;
+        return inventoryESService.collectAll("participants", query, properties);
     }
 
     private String generateCacheKey(Map<String, Object> params) throws IOException {
@@ -0,0 +1,92 @@
+package gov.nih.nci.bento_ri.service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Set operations over cohorts, kept as sorted arrays of distinct participant IDs
+ * All of the cohorts are merged in one pass, so comparing them takes time linear in their total size
+ */
+public final class CohortSets {
+    private CohortSets() {}
+
+    /**
+     * How a set of cohorts overlap
+     * @param regions Bitmask of the cohorts that have a participant -> number of such participants,
+     *                for every region of the Venn diagram with any participants
+     * @param intersection Participants in every cohort
+     * @param union Participants in any cohort
+     * @param difference Participants in the first cohort and none of the others
+     */
+    public record Comparison(Map<Integer, Integer> regions, String[] intersection, String[] union, String[] difference) {}
+
+    /**
+     * Compares cohorts
+     * @param cohorts Each cohort's participant IDs, sorted and without duplicates
+     * @return
+     */
+    public static Comparison compare(List<String[]> cohorts) {
+        int count = cohorts.size();
+        int everyCohort = (1 << count) - 1;
+        int[] positions = new int[count];
+        Map<Integer, Integer> regions = new TreeMap<>();
+        List<String> intersection = new ArrayList<>();
+        List<String> union = new ArrayList<>();
+        List<String> difference = new ArrayList<>();
+
+        if (count > 30) {
+            throw new IllegalArgumentException("Too many cohorts to compare: " + count);
+        }
+
+        while (true) {
+            String smallest = null;
+            int mask = 0;
+
+            // The smallest ID at the head of any cohort, and every cohort it heads
+            for (int i = 0; i < count; i++) {
+                String[] cohort = cohorts.get(i);
+
+                if (positions[i] < cohort.length) {
+                    int order = smallest == null ? -1 : cohort[positions[i]].compareTo(smallest);
+
+                    if (order < 0) {
+                        smallest = cohort[positions[i]];
+                        mask = 1 << i;
+                    } else if (order == 0) {
+                        mask |= 1 << i;
+                    }
+                }
+            }
+
+            if (smallest == null) {
+                break;
+            }
+
+            for (int i = 0; i < count; i++) {
+                if ((mask & (1 << i)) != 0) {
+                    positions[i]++;
+                }
+            }
+
+            regions.merge(mask, 1, Integer::sum);
+            union.add(smallest);
+
+            if (mask == everyCohort) {
+                intersection.add(smallest);
+            }
+
+            if (mask == 1) {
+                difference.add(smallest);
+            }
+        }
+
+        return new Comparison(
+            regions,
+            intersection.toArray(String[]::new),
+            union.toArray(String[]::new),
+            difference.toArray(String[]::new)
+        );
+    }
+}
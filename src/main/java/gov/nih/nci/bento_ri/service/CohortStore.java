@@ -0,0 +1,295 @@
+package gov.nih.nci.bento_ri.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HexFormat;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Cohorts registered once and referred to by a handle, instead of sending their participant IDs with every request
+ * A cohort is kept as its sorted, de-duplicated IDs, and its handle is a hash of them, so registering the same IDs
+ * twice returns the same handle. The store holds at most cohort.store.max_ids IDs, evicting the least recently
+ * used cohorts, and if cohort.store.directory is set, cohorts are also saved there and survive eviction and restarts
+ * Opensearch filters of participant IDs are built here too, and cached in the same cache, so cohorts and filters
+ * together hold at most cohort.store.max_ids IDs
+ */
+@Service
+public class CohortStore {
+    private static final Logger logger = LogManager.getLogger(CohortStore.class);
+    public static final String HANDLE_PREFIX = "cohort:";
+    static final String FILTER_PREFIX = "filter:";
+
+    // Handle -> sorted IDs of a cohort, and FILTER_PREFIX + key -> FilterClause, weighed by their number of IDs
+    private final Cache<String, Object> entries;
+    private final Path directory;
+    private final int maxTerms;
+
+    // A filter clause, weighed by its number of IDs
+    private record FilterClause(Map<String, Object> clause, int weight) {}
+
+    public CohortStore(
+            @Value("${cohort.store.max_ids:10000000}") long maxIds,
+            @Value("${cohort.store.directory:}") String directory,
+            @Value("${cohort.filter.max_terms:65536}") int maxTerms) {
+        this.entries = Caffeine.newBuilder()
+            .maximumWeight(maxIds)
+            .weigher((String key, Object entry) -> entry instanceof FilterClause filterClause
+                ? filterClause.weight()
+                : ((String[]) entry).length)
+            .build();
+        this.directory = directory.isEmpty() ? null : Path.of(directory);
+        this.maxTerms = maxTerms;
+    }
+
+    public static boolean isHandle(String value) {
+        return value != null && value.startsWith(HANDLE_PREFIX);
+    }
+
+    /**
+     * Registers a cohort
+     * @param ids The cohort's participant IDs, in any order and with any duplicates
+     * @return The cohort's handle
+     * @throws IOException
+     */
+    public String register(Collection<String> ids) throws IOException {
+        String[] sortedIds = ids.stream().filter(id -> id != null && !id.isEmpty()).distinct().sorted().toArray(String[]::new);
+        String handle;
+
+        // An empty filter matches everything, so an empty cohort couldn't be told apart from no cohort
+        if (sortedIds.length == 0) {
+            throw new IOException("A cohort needs at least one participant");
+        }
+
+        handle = HANDLE_PREFIX + fingerprint(Arrays.asList(sortedIds));
+
+        if (entries.getIfPresent(handle) == null) {
+            entries.put(handle, sortedIds);
+            save(handle, sortedIds);
+        }
+
+        return handle;
+    }
+
+    /**
+     * Retrieves a registered cohort
+     * @param handle The cohort's handle
+     * @return The cohort's sorted participant IDs, or null if the handle is unknown
+     */
+    public String[] find(String handle) {
+        String[] ids;
+
+        if (!isHandle(handle)) {
+            return null;
+        }
+
+        ids = (String[]) entries.getIfPresent(handle);
+
+        if (ids == null && directory != null) {
+            ids = load(handle);
+
+            if (ids != null) {
+                entries.put(handle, ids);
+            }
+        }
+
+        return ids;
+    }
+
+    /**
+     * Retrieves a registered cohort
+     * @param handle The cohort's handle
+     * @return The cohort's sorted participant IDs
+     * @throws IOException If the handle is unknown
+     */
+    public String[] get(String handle) throws IOException {
+        String[] ids = find(handle);
+
+        if (ids == null) {
+            throw new IOException("Unknown cohort: " + handle);
+        }
+
+        return ids;
+    }
+
+    /**
+     * Replaces the cohort handles in a filter's values with the cohorts' participant IDs
+     * @param values Participant IDs and cohort handles
+     * @return The values, unchanged if they have no handles
+     * @throws IOException If a handle is unknown
+     */
+    public List<String> resolve(List<String> values) throws IOException {
+        Set<String> ids;
+
+        if (values.stream().noneMatch(CohortStore::isHandle)) {
+            return values;
+        }
+
+        ids = new LinkedHashSet<>();
+
+        for (String value : values) {
+            if (isHandle(value)) {
+                ids.addAll(Arrays.asList(get(value)));
+            } else if (!value.isEmpty()) {
+                ids.add(value);
+            }
+        }
+
+        return new ArrayList<>(ids);
+    }
+
+    /**
+     * Builds the Opensearch filter of a participant_pk filter's values
+     * The IDs are de-duplicated and sorted, then split into terms clauses of at most cohort.filter.max_terms IDs each,
+     * below Opensearch's index.max_terms_count, of which any can match. Clauses are cached by a hash of the values,
+     * so the frontend sending the same cohort for every widget only has it sorted once. Cached clauses count towards
+     * cohort.store.max_ids, like registered cohorts
+     * @param field The participant ID field of the index being filtered
+     * @param values Participant IDs and cohort handles
+     * @return The filter clause, or null if there are no IDs
+     * @throws IOException If a handle is unknown
+     */
+    public Map<String, Object> filterClause(String field, List<String> values) throws IOException {
+        String key = FILTER_PREFIX + field + "\n" + fingerprint(values);
+        FilterClause filterClause = (FilterClause) entries.getIfPresent(key);
+        String[] ids;
+        List<Map<String, Object>> termsClauses = new ArrayList<>();
+
+        if (filterClause != null) {
+            return filterClause.clause();
+        }
+
+        // A registered cohort is already sorted
+        if (values.size() == 1 && isHandle(values.get(0))) {
+            ids = get(values.get(0));
+        } else {
+            ids = resolve(values).stream().filter(id -> id != null && !id.isEmpty()).distinct().sorted().toArray(String[]::new);
+        }
+
+        if (ids.length == 0) {
+            return null;
+        }
+
+        for (int start = 0; start < ids.length; start += maxTerms) {
+            termsClauses.add(Map.of(
+                "terms", Map.of(field, Arrays.asList(Arrays.copyOfRange(ids, start, Math.min(start + maxTerms, ids.length))))
+            ));
+        }
+
+        filterClause = new FilterClause(
+            termsClauses.size() == 1
+                ? termsClauses.get(0)
+                : Map.of("bool", Map.of("should", termsClauses, "minimum_should_match", 1)),
+            ids.length
+        );
+        entries.put(key, filterClause);
+
+        return filterClause.clause();
+    }
+
+    // Hash of the values, one per line
+    private static String fingerprint(List<String> values) throws IOException {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+
+            for (String value : values) {
+                digest.update(String.valueOf(value).getBytes(StandardCharsets.UTF_8));
+                digest.update((byte) '\n');
+            }
+
+            return HexFormat.of().formatHex(digest.digest(), 0, 16);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException(e.toString());
+        }
+    }
+
+    private Path pathOf(String handle) {
+        return directory.resolve(handle.substring(HANDLE_PREFIX.length()) + ".ids.gz");
+    }
+
+    private void save(String handle, String[] sortedIds) {
+        Path path;
+        Path partialPath;
+
+        if (directory == null) {
+            return;
+        }
+
+        path = pathOf(handle);
+        partialPath = path.resolveSibling(path.getFileName() + ".partial");
+
+        if (Files.exists(path)) {
+            return;
+        }
+
+        try {
+            Files.createDirectories(directory);
+
+            try (BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(
+                    new GZIPOutputStream(Files.newOutputStream(partialPath)), StandardCharsets.UTF_8))) {
+                for (String id : sortedIds) {
+                    writer.write(id);
+                    writer.newLine();
+                }
+            }
+
+            Files.move(partialPath, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            logger.warn("Unable to save cohort " + handle + ", it's only kept in memory: " + e.toString());
+        }
+    }
+
+    // Handles are only ever read back as file names made of their hex digits
+    private String[] load(String handle) {
+        List<String> ids = new ArrayList<>();
+        Path path;
+
+        if (!handle.substring(HANDLE_PREFIX.length()).matches("[0-9a-f]{32}")) {
+            return null;
+        }
+
+        path = pathOf(handle);
+
+        if (!Files.exists(path)) {
+            return null;
+        }
+
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                new GZIPInputStream(Files.newInputStream(path)), StandardCharsets.UTF_8))) {
+            String line;
+
+            while ((line = reader.readLine()) != null) {
+                ids.add(line);
+            }
+        } catch (IOException e) {
+            logger.warn("Unable to read cohort " + handle + ": " + e.toString());
+            return null;
+        }
+
+        return ids.toArray(String[]::new);
+    }
+}
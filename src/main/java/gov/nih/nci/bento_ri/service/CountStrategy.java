@@ -0,0 +1,44 @@
+package gov.nih.nci.bento_ri.service;
+
+import java.util.Map;
+
+/**
+ * How the participant counts of a facet filter are computed
+ * EXACT - reverse_nested doc counts, aggregated from the participants index
+ * HLL - cardinality aggregation, approximate above its precision threshold
+ * DOC_COUNT - bucket doc_count, for indices with one document per participant
+ */
+public enum CountStrategy {
+    EXACT,
+    HLL,
+    DOC_COUNT;
+
+    public static final String COUNT_STRATEGY = "count_strategy";
+    public static final String PRECISION_THRESHOLD = "precision_threshold";
+    public static final int DEFAULT_PRECISION_THRESHOLD = 40000;
+
+    /**
+     * Reads the count strategy of a facet filter from its configuration
+     * Facet filters without a count strategy use HLL, or DOC_COUNT if they have no cardinality field
+     * @param facetFilter The facet filter's entry in facet_filters.yaml
+     * @return
+     */
+    public static CountStrategy fromConfig(Map<String, ?> facetFilter) {
+        Object strategy = facetFilter.get(COUNT_STRATEGY);
+
+        if (strategy == null) {
+            return facetFilter.get("cardinality_agg_name") == null ? DOC_COUNT : HLL;
+        }
+
+        switch (strategy.toString()) {
+            case "exact":
+                return EXACT;
+            case "hll":
+                return HLL;
+            case "doc_count":
+                return DOC_COUNT;
+            default:
+                throw new IllegalArgumentException("Unknown count strategy \"" + strategy + "\" for " + facetFilter.get("agg_name"));
+        }
+    }
+}
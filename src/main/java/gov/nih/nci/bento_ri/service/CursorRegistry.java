@@ -0,0 +1,102 @@
+package gov.nih.nci.bento_ri.service;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The points in time behind open cursors, and when each was last read
+ * Cursors are counted per pool, and a pool that's full refuses new cursors instead of closing ones that may still be
+ * read. A cursor that isn't read within the keep_alive of its point in time has expired in Opensearch, and stops
+ * counting towards its pool
+ */
+public class CursorRegistry {
+    /**
+     * Who reads a cursor, so that exports can't crowd out interactive paging or the other way around
+     * Together the pools stay below Opensearch's default search.max_open_pit_context of 300
+     */
+    public enum Pool {
+        INTERACTIVE(256),
+        EXPORT(32);
+
+        public final int maxOpen;
+
+        Pool(int maxOpen) {
+            this.maxOpen = maxOpen;
+        }
+    }
+
+    // A point in time's pool, and when it was last read
+    private record Entry(Pool pool, long lastRead) {}
+
+    private final long keepAliveMillis;
+    private final Map<String, Entry> entries = new HashMap<>();
+
+    /**
+     * @param keepAliveMillis How long a point in time is kept alive after each read
+     */
+    public CursorRegistry(long keepAliveMillis) {
+        this.keepAliveMillis = keepAliveMillis;
+    }
+
+    /**
+     * Registers a new point in time, unless its pool is full
+     * @param pitId The point in time ID
+     * @param pool The pool of the cursor
+     * @param now Current time, in milliseconds
+     * @return Whether the point in time was registered, if not the caller should close it
+     */
+    public synchronized boolean add(String pitId, Pool pool, long now) {
+        long openCount;
+
+        entries.values().removeIf(entry -> entry.lastRead() <= now - keepAliveMillis);
+        openCount = entries.values().stream().filter(entry -> entry.pool() == pool).count();
+
+        if (openCount >= pool.maxOpen) {
+            return false;
+        }
+
+        entries.put(pitId, new Entry(pool, now));
+
+        return true;
+    }
+
+    /**
+     * Records a read of a point in time, which extends its keep_alive
+     * @param pitId The point in time ID
+     * @param now Current time, in milliseconds
+     */
+    public synchronized void touch(String pitId, long now) {
+        entries.computeIfPresent(pitId, (id, entry) -> new Entry(entry.pool(), now));
+    }
+
+    /**
+     * Follows a point in time whose ID Opensearch changed
+     * @param pitId The old point in time ID
+     * @param newPitId The new point in time ID
+     */
+    public synchronized void rename(String pitId, String newPitId) {
+        Entry entry = entries.remove(pitId);
+
+        if (entry != null) {
+            entries.put(newPitId, entry);
+        }
+    }
+
+    /**
+     * Unregisters a point in time
+     * @param pitId The point in time ID
+     * @return Whether it was registered, and so still needs closing
+     */
+    public synchronized boolean remove(String pitId) {
+        return entries.remove(pitId) != null;
+    }
+
+    /**
+     * The number of registered points in time in a pool, including any that have expired since they were last pruned
+     * @param pool The pool
+     * @return
+     */
+    public synchronized int size(Pool pool) {
+        return (int) entries.values().stream().filter(entry -> entry.pool() == pool).count();
+    }
+}
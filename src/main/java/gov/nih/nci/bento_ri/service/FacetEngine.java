@@ -0,0 +1,194 @@
+package gov.nih.nci.bento_ri.service;
+
+import gov.nih.nci.bento.utility.TypeChecker;
+
+import com.google.common.reflect.TypeToken;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Answers Explore page counts from a FacetIndex instead of Opensearch, when facet.engine.enabled is set
+ * The index is rebuilt from Opensearch whenever a new release is detected
+ * Until it's built, and for any filter it doesn't have, counts still come from Opensearch
+ */
+@Service
+public class FacetEngine {
+    private static final Logger logger = LogManager.getLogger(FacetEngine.class);
+
+    private final boolean enabled;
+    private final InventoryESService esService;
+    private final ReleaseMonitor releaseMonitor;
+    private final CohortStore cohortStore;
+    private final Map<String, FacetIndex.Field> fields = new HashMap<>();
+    private Set<String> rangeParams = Set.of();
+    private volatile FacetIndex facetIndex;
+
+    public FacetEngine(
+            @Value("${facet.engine.enabled:false}") boolean enabled,
+            InventoryESService esService,
+            ReleaseMonitor releaseMonitor,
+            CohortStore cohortStore) {
+        this.enabled = enabled;
+        this.esService = esService;
+        this.releaseMonitor = releaseMonitor;
+        this.cohortStore = cohortStore;
+
+        // The same routing as InventoryESService.buildFacetFilterQuery()
+        addFields("diagnoses", esService.DIAGNOSIS_PARAMS);
+        addFields("genetic_analyses", esService.GENETIC_ANALYSIS_PARAMS);
+        addFields("survivals", esService.SURVIVAL_PARAMS);
+        addFields("treatments", esService.TREATMENT_PARAMS);
+        addFields("treatment_responses", esService.TREATMENT_RESPONSE_PARAMS);
+        addFields(FacetIndex.PARTICIPANTS, esService.PARTICIPANT_PARAMS);
+        addFields(FacetIndex.PARTICIPANTS, esService.STUDY_PARAMS);
+        fields.put("participant_pk", new FacetIndex.Field(FacetIndex.PARTICIPANTS, "id"));
+        fields.put("study_id", new FacetIndex.Field(FacetIndex.PARTICIPANTS, "study_id"));
+    }
+
+    private void addFields(String index, Set<String> params) {
+        for (String param : params) {
+            fields.put(param, new FacetIndex.Field(index, param));
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Keeps a facet index of every release, starting with the current one
+     * Does nothing unless facet.engine.enabled is set
+     * @param newRangeParams Filters with numeric values
+     */
+    public void track(Set<String> newRangeParams) {
+        if (!enabled) {
+            return;
+        }
+
+        rangeParams = Set.copyOf(newRangeParams);
+        releaseMonitor.addListener(this::load);
+    }
+
+    /**
+     * Applies GraphQL variables to the current facet index
+     * @param params GraphQL variables
+     * @param excludedParams GraphQL variables to skip
+     * @return The selection, or null if its counts have to come from Opensearch
+     */
+    public FacetIndex.Selection select(Map<String, Object> params, Set<String> excludedParams) {
+        FacetIndex currentIndex = facetIndex;
+        Map<String, Set<String>> terms = new HashMap<>();
+        Map<String, Double[]> ranges = new HashMap<>();
+
+        if (currentIndex == null) {
+            return null;
+        }
+
+        for (Map.Entry<String, Object> param : params.entrySet()) {
+            String key = param.getKey();
+
+            if (excludedParams.contains(key)) {
+                continue;
+            }
+
+            if (!fields.containsKey(key)) {
+                return null;
+            }
+
+            if (rangeParams.contains(key)) {
+                List<Integer> bounds;
+
+                if (!TypeChecker.isOfType(param.getValue(), new TypeToken<List<Integer>>() {})) {
+                    return null;
+                }
+
+                @SuppressWarnings("unchecked")
+                List<Integer> castedBounds = (List<Integer>) param.getValue();
+                bounds = castedBounds;
+
+                // Opensearch rejects ranges without bounds, so leave the error to it
+                if (bounds.size() >= 2) {
+                    if (bounds.get(0) == null && bounds.get(1) == null) {
+                        return null;
+                    }
+
+                    ranges.put(key, new Double[] {
+                        bounds.get(0) == null ? null : bounds.get(0).doubleValue(),
+                        bounds.get(1) == null ? null : bounds.get(1).doubleValue()
+                    });
+                }
+            } else {
+                List<String> values;
+
+                if (!TypeChecker.isOfType(param.getValue(), new TypeToken<List<String>>() {})) {
+                    return null;
+                }
+
+                @SuppressWarnings("unchecked")
+                List<String> castedValues = (List<String>) param.getValue();
+                values = castedValues;
+
+                // Leave unknown cohort handles to Opensearch's error handling
+                if (key.equals("participant_pk")) {
+                    try {
+                        values = cohortStore.resolve(values);
+                    } catch (IOException e) {
+                        return null;
+                    }
+                }
+
+                // list with only one empty string [""] means return all records
+                if (values.size() > 0 && !(values.size() == 1 && values.get(0).equals(""))) {
+                    terms.put(key, new HashSet<>(values));
+                }
+            }
+        }
+
+        return currentIndex.select(terms, ranges);
+    }
+
+    // Builds the facet index of a release, serving the previous release's index meanwhile
+    private void load(String newRelease) throws IOException {
+        Map<String, List<Map<String, Object>>> sources = new HashMap<>();
+        Map<String, Set<String>> indexFields = new HashMap<>();
+        FacetIndex newIndex;
+
+        for (FacetIndex.Field field : fields.values()) {
+            indexFields.computeIfAbsent(field.index(), index -> new HashSet<>()).add(field.osName());
+        }
+
+        for (Map.Entry<String, Set<String>> entry : indexFields.entrySet()) {
+            String index = entry.getKey();
+            List<Map<String, Object>> properties = new ArrayList<>();
+
+            entry.getValue().add(index.equals(FacetIndex.PARTICIPANTS) ? "id" : "participant");
+
+            for (String osName : entry.getValue()) {
+                properties.add(Map.of("gqlName", osName, "osName", osName));
+            }
+
+            sources.put(index, esService.collectAll(index, Map.of("query", Map.of("match_all", Map.of())), properties));
+        }
+
+        try {
+            newIndex = FacetIndex.build(sources, fields, rangeParams);
+        } catch (IllegalArgumentException e) {
+            throw new IOException(e.toString());
+        }
+
+        facetIndex = newIndex;
+        logger.info("Loaded the facet index of release " + newRelease + ", with "
+            + newIndex.participantCount() + " participants");
+    }
+}
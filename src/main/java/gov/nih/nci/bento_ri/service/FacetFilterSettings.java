@@ -0,0 +1,69 @@
+package gov.nih.nci.bento_ri.service;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The settings of a facet filter that aren't text, parsed once from its entry in facet_filters.yaml
+ * @param countStrategy How the facet filter's participant counts are computed
+ * @param precisionThreshold Cardinality precision for the HLL strategy
+ * @param maxBuckets How many of the top values are counted, or null for every value up to InventoryESService.MAX_BUCKETS
+ */
+public record FacetFilterSettings(CountStrategy countStrategy, int precisionThreshold, Integer maxBuckets) {
+    public static final String MAX_BUCKETS = "max_buckets";
+
+    /**
+     * Parses a facet filter's settings
+     * Numbers may be written with or without quotes
+     * @param facetFilter The facet filter's entry in facet_filters.yaml
+     * @return The facet filter's settings, with defaults for any that are missing
+     */
+    public static FacetFilterSettings fromConfig(Map<String, ?> facetFilter) {
+        return new FacetFilterSettings(
+            CountStrategy.fromConfig(facetFilter),
+            intSetting(facetFilter, CountStrategy.PRECISION_THRESHOLD, CountStrategy.DEFAULT_PRECISION_THRESHOLD),
+            intSetting(facetFilter, MAX_BUCKETS, null)
+        );
+    }
+
+    /**
+     * Copies a facet filter's entry in facet_filters.yaml, with every value as text
+     * so that the copy can be read as a Map<String, String>
+     * @param facetFilter The facet filter's entry in facet_filters.yaml
+     * @return The copy, with null values kept as null
+     */
+    public static Map<String, String> textSettings(Map<String, ?> facetFilter) {
+        Map<String, String> settings = new HashMap<>();
+
+        for (Map.Entry<String, ?> setting : facetFilter.entrySet()) {
+            Object value = setting.getValue();
+
+            if (value instanceof Map || value instanceof Iterable) {
+                throw new IllegalArgumentException(setting.getKey() + " of " + facetFilter.get("agg_name") + " must be a single value");
+            }
+
+            settings.put(setting.getKey(), value == null ? null : value.toString());
+        }
+
+        return settings;
+    }
+
+    // Reads a whole number, whether YAML parsed it as a number or it was quoted
+    static Integer intSetting(Map<String, ?> facetFilter, String name, Integer defaultValue) {
+        Object value = facetFilter.get(name);
+
+        if (value == null) {
+            return defaultValue;
+        }
+
+        if (value instanceof Number number) {
+            return number.intValue();
+        }
+
+        try {
+            return Integer.parseInt(value.toString().strip());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(name + " of " + facetFilter.get("agg_name") + " must be a whole number, not \"" + value + "\"");
+        }
+    }
+}
@@ -0,0 +1,546 @@
+package gov.nih.nci.bento_ri.service;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * An in-memory copy of the Explore page's facet filters, answering filter and widget counts without Opensearch
+ * Every index is a list of records, each belonging to one participant. Each value of a string field keeps
+ * the sorted record numbers that have it, and each numeric field keeps its records sorted by value, so a set
+ * of filters is a handful of bitmap intersections and a count is the cardinality of what's left
+ *
+ * Filters follow InventoryESService.buildFacetFilterQuery(): the filters of the counted index apply to each
+ * record, and the filters of every other index only require the record's participant to have one record there
+ * that matches all of them
+ */
+public final class FacetIndex {
+    public static final String PARTICIPANTS = "participants";
+
+    /**
+     * Where a filter's values are kept
+     * @param index The index whose records have the values
+     * @param osName The Opensearch field of the values
+     */
+    public record Field(String index, String osName) {}
+
+    // The records of one index
+    private static final class Table {
+        final int[] participants;
+        final Map<String, Map<String, int[]>> terms = new HashMap<>();
+        final Map<String, NumberColumn> numbers = new HashMap<>();
+
+        Table(int[] participants) {
+            this.participants = participants;
+        }
+
+        int size() {
+            return participants.length;
+        }
+    }
+
+    // A numeric field: every value of every record, in ascending order
+    private static final class NumberColumn {
+        final double[] values;
+        final int[] records;
+
+        NumberColumn(double[] values, int[] records) {
+            this.values = values;
+            this.records = records;
+        }
+
+        // Position of the first value >= bound, or > bound if isExclusive
+        int search(double bound, boolean isExclusive) {
+            int low = 0;
+            int high = values.length;
+
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+
+                if (values[middle] < bound || (isExclusive && values[middle] == bound)) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+
+            return low;
+        }
+    }
+
+    private final Map<String, Field> fields;
+    private final Map<String, Table> tables;
+    private final int participantCount;
+
+    private FacetIndex(Map<String, Field> fields, Map<String, Table> tables, int participantCount) {
+        this.fields = fields;
+        this.tables = tables;
+        this.participantCount = participantCount;
+    }
+
+    /**
+     * Builds a facet index from the documents of each index
+     * Participants are identified by the id of the participants index, and records of other indices by participant.id
+     * @param sources Index -> the _source of each of its documents
+     * @param fields Filter -> where its values are kept
+     * @param rangeFilters Filters with numeric values
+     * @return The facet index
+     */
+    public static FacetIndex build(Map<String, List<Map<String, Object>>> sources, Map<String, Field> fields, Set<String> rangeFilters) {
+        List<Map<String, Object>> participantSources = sources.getOrDefault(PARTICIPANTS, List.of());
+        Map<String, Integer> participantNumbers = new HashMap<>();
+        Map<String, Table> tables = new HashMap<>();
+        Map<String, List<Map<String, Object>>> kept = new HashMap<>();
+
+        for (int i = 0; i < participantSources.size(); i++) {
+            participantNumbers.put(String.valueOf(participantSources.get(i).get("id")), i);
+        }
+
+        // Records without a known participant can't be counted
+        for (Map.Entry<String, List<Map<String, Object>>> entry : sources.entrySet()) {
+            List<Map<String, Object>> records = new ArrayList<>();
+            List<Integer> participants = new ArrayList<>();
+
+            for (Map<String, Object> source : entry.getValue()) {
+                List<Object> ids = entry.getKey().equals(PARTICIPANTS)
+                    ? OverviewSnapshot.valuesOf(source, "id")
+                    : OverviewSnapshot.valuesOf(source, "participant.id");
+                Integer participant = ids.isEmpty() ? null : participantNumbers.get(String.valueOf(ids.get(0)));
+
+                if (participant != null) {
+                    records.add(source);
+                    participants.add(participant);
+                }
+            }
+
+            kept.put(entry.getKey(), records);
+            tables.put(entry.getKey(), new Table(participants.stream().mapToInt(Integer::intValue).toArray()));
+        }
+
+        for (Map.Entry<String, Field> entry : fields.entrySet()) {
+            Field field = entry.getValue();
+            Table table = tables.get(field.index());
+
+            if (table == null) {
+                throw new IllegalArgumentException("No documents of index " + field.index() + " for filter " + entry.getKey());
+            }
+
+            if (rangeFilters.contains(entry.getKey())) {
+                table.numbers.put(field.osName(), numberColumn(kept.get(field.index()), field.osName()));
+            } else {
+                table.terms.put(field.osName(), termColumn(kept.get(field.index()), field.osName()));
+            }
+        }
+
+        return new FacetIndex(Map.copyOf(fields), tables, participantSources.size());
+    }
+
+    private static Map<String, int[]> termColumn(List<Map<String, Object>> records, String osName) {
+        Map<String, List<Integer>> postings = new HashMap<>();
+        Map<String, int[]> column = new HashMap<>();
+
+        for (int record = 0; record < records.size(); record++) {
+            for (Object value : OverviewSnapshot.valuesOf(records.get(record), osName)) {
+                List<Integer> recordsWithValue = postings.computeIfAbsent(String.valueOf(value), key -> new ArrayList<>());
+
+                // Records are visited in order, so repeated values of one record are adjacent
+                if (recordsWithValue.isEmpty() || recordsWithValue.get(recordsWithValue.size() - 1) != record) {
+                    recordsWithValue.add(record);
+                }
+            }
+        }
+
+        postings.forEach((value, recordsWithValue) ->
+            column.put(value, recordsWithValue.stream().mapToInt(Integer::intValue).toArray())
+        );
+
+        return column;
+    }
+
+    private static NumberColumn numberColumn(List<Map<String, Object>> records, String osName) {
+        List<double[]> entries = new ArrayList<>();
+
+        for (int record = 0; record < records.size(); record++) {
+            for (Object value : OverviewSnapshot.valuesOf(records.get(record), osName)) {
+                if (value instanceof Number) {
+                    entries.add(new double[] {((Number) value).doubleValue(), record});
+                }
+            }
+        }
+
+        entries.sort(Comparator.comparingDouble((double[] entry) -> entry[0]).thenComparingDouble(entry -> entry[1]));
+
+        return new NumberColumn(
+            entries.stream().mapToDouble(entry -> entry[0]).toArray(),
+            entries.stream().mapToInt(entry -> (int) entry[1]).toArray()
+        );
+    }
+
+    public int participantCount() {
+        return participantCount;
+    }
+
+    /**
+     * Starts counting the records that match a set of filters
+     * @param terms Filter -> values to match
+     * @param ranges Filter -> lower and upper bounds, either of which can be null
+     * @return The selection, or null if a filter isn't in the index
+     */
+    public Selection select(Map<String, Set<String>> terms, Map<String, Double[]> ranges) {
+        for (String filter : terms.keySet()) {
+            Field field = fields.get(filter);
+
+            if (field == null || !tables.get(field.index()).terms.containsKey(field.osName())) {
+                return null;
+            }
+        }
+
+        for (String filter : ranges.keySet()) {
+            Field field = fields.get(filter);
+
+            if (field == null || !tables.get(field.index()).numbers.containsKey(field.osName())) {
+                return null;
+            }
+        }
+
+        return new Selection(terms, ranges);
+    }
+
+    /**
+     * Records matching a set of filters, and counts of their values
+     * Filters can be left out of each count, the way facet filters leave out their own selection
+     */
+    public final class Selection {
+        private final Map<String, Set<String>> terms;
+        private final Map<String, Double[]> ranges;
+        private final Map<String, BitSet> matches = new HashMap<>();
+
+        private Selection(Map<String, Set<String>> terms, Map<String, Double[]> ranges) {
+            this.terms = terms;
+            this.ranges = ranges;
+        }
+
+        /**
+         * Number of records of an index that match every filter
+         * @param index The index
+         * @return
+         */
+        public int count(String index) {
+            return records(index, Set.of()).cardinality();
+        }
+
+        /**
+         * Number of distinct values of a field among the records of its index that match every filter
+         * @param filter The field's filter
+         * @return
+         */
+        public int countValues(String filter) {
+            Field field = fields.get(filter);
+            BitSet records = records(field.index(), Set.of());
+            int count = 0;
+
+            for (int[] recordsWithValue : tables.get(field.index()).terms.get(field.osName()).values()) {
+                for (int record : recordsWithValue) {
+                    if (records.get(record)) {
+                        count++;
+                        break;
+                    }
+                }
+            }
+
+            return count;
+        }
+
+        /**
+         * Counts the records of each value of a field, like a terms aggregation
+         * Values are in descending order of their counts: participants for EXACT, records otherwise
+         * @param filter The field's filter
+         * @param excludedFilters Filters to leave out
+         * @param strategy EXACT to only apply filters per participant, like a reverse_nested count;
+         *                 DOC_COUNT to count records instead of participants
+         * @return The values with any matching records, as "group" and "subjects"
+         */
+        public List<Map<String, Object>> groupCounts(String filter, Set<String> excludedFilters, CountStrategy strategy) {
+            Field field = fields.get(filter);
+            Table table = tables.get(field.index());
+            BitSet records = strategy == CountStrategy.EXACT
+                ? recordsOf(table, participants(null, excludedFilters))
+                : records(field.index(), excludedFilters);
+            int[] stamps = new int[participantCount];
+            int stamp = 0;
+            List<Object[]> groups = new ArrayList<>();
+            List<Map<String, Object>> counts = new ArrayList<>();
+
+            for (Map.Entry<String, int[]> value : table.terms.get(field.osName()).entrySet()) {
+                int docCount = 0;
+                int subjects = 0;
+
+                stamp++;
+
+                for (int record : value.getValue()) {
+                    if (records.get(record)) {
+                        int participant = table.participants[record];
+
+                        docCount++;
+
+                        if (stamps[participant] != stamp) {
+                            stamps[participant] = stamp;
+                            subjects++;
+                        }
+                    }
+                }
+
+                if (docCount > 0) {
+                    groups.add(new Object[] {
+                        value.getKey(),
+                        strategy == CountStrategy.DOC_COUNT ? docCount : subjects,
+                        strategy == CountStrategy.EXACT ? subjects : docCount
+                    });
+                }
+            }
+
+            // Opensearch breaks ties by value
+            groups.sort(Comparator.comparingInt((Object[] group) -> -(int) group[2])
+                .thenComparing(group -> (String) group[0]));
+
+            for (Object[] group : groups) {
+                counts.add(Map.ofEntries(
+                    Map.entry("group", group[0]),
+                    Map.entry("subjects", group[1])
+                ));
+            }
+
+            return counts;
+        }
+
+        /**
+         * Smallest value, largest value, and number of values of a numeric field, like a stats aggregation
+         * Leaves out the field's own filter, and negative values
+         * @param filter The field's filter
+         * @return "lowerBound", "subjects" and "upperBound", all 0 if there are no values
+         */
+        public Map<String, Object> rangeStats(String filter) {
+            Field field = fields.get(filter);
+            NumberColumn column = tables.get(field.index()).numbers.get(field.osName());
+            BitSet records = records(field.index(), Set.of(filter));
+            Double lowest = null;
+            double highest = 0;
+            int count = 0;
+
+            for (int i = column.search(-1, true); i < column.values.length; i++) {
+                if (records.get(column.records[i])) {
+                    if (lowest == null) {
+                        lowest = column.values[i];
+                    }
+
+                    highest = column.values[i];
+                    count++;
+                }
+            }
+
+            return Map.of(
+                "lowerBound", lowest == null ? 0 : (int) lowest.doubleValue(),
+                "subjects", count,
+                "upperBound", (int) highest
+            );
+        }
+
+        /**
+         * Counts the records in each of a numeric field's ranges, like a range aggregation
+         * @param filter The field's filter
+         * @param buckets Ranges with a "key", and an inclusive "from" and exclusive "to" that can be left out
+         * @param strategy DOC_COUNT to count records instead of participants
+         * @return Every range as "group" and "subjects", in the order of the buckets
+         */
+        public List<Map<String, Object>> rangeCounts(String filter, List<Map<String, Object>> buckets, CountStrategy strategy) {
+            Field field = fields.get(filter);
+            Table table = tables.get(field.index());
+            NumberColumn column = table.numbers.get(field.osName());
+            BitSet records = records(field.index(), Set.of());
+            List<Map<String, Object>> counts = new ArrayList<>();
+
+            for (Map<String, Object> bucket : buckets) {
+                Object from = bucket.get("from");
+                Object to = bucket.get("to");
+                int end = to == null ? column.values.length : column.search(((Number) to).doubleValue(), false);
+                BitSet bucketRecords = new BitSet(table.size());
+                BitSet bucketParticipants = new BitSet(participantCount);
+
+                for (int i = from == null ? 0 : column.search(((Number) from).doubleValue(), false); i < end; i++) {
+                    int record = column.records[i];
+
+                    if (records.get(record)) {
+                        bucketRecords.set(record);
+                        bucketParticipants.set(table.participants[record]);
+                    }
+                }
+
+                counts.add(Map.ofEntries(
+                    Map.entry("group", bucket.get("key")),
+                    Map.entry("subjects", strategy == CountStrategy.DOC_COUNT ? bucketRecords.cardinality() : bucketParticipants.cardinality())
+                ));
+            }
+
+            return counts;
+        }
+
+        // Records of an index matching its own filters, whose participants match every other index's filters
+        private BitSet records(String index, Set<String> excludedFilters) {
+            Table table = tables.get(index);
+            BitSet own = matches(index, excludedFilters);
+            BitSet participants = participants(index, excludedFilters);
+            BitSet records = own == null ? all(table.size()) : (BitSet) own.clone();
+
+            if (participants != null) {
+                for (int record = records.nextSetBit(0); record >= 0; record = records.nextSetBit(record + 1)) {
+                    if (!participants.get(table.participants[record])) {
+                        records.clear(record);
+                    }
+                }
+            }
+
+            return records;
+        }
+
+        // Records of a table whose participants are in a set, or all of them if it's null
+        private BitSet recordsOf(Table table, BitSet participants) {
+            BitSet records = all(table.size());
+
+            if (participants != null) {
+                for (int record = 0; record < table.size(); record++) {
+                    if (!participants.get(table.participants[record])) {
+                        records.clear(record);
+                    }
+                }
+            }
+
+            return records;
+        }
+
+        // Participants with a matching record in every filtered index but one, or null if none are filtered
+        private BitSet participants(String skippedIndex, Set<String> excludedFilters) {
+            BitSet participants = null;
+
+            for (Map.Entry<String, Table> entry : tables.entrySet()) {
+                BitSet own;
+                BitSet matchingParticipants;
+
+                if (entry.getKey().equals(skippedIndex)) {
+                    continue;
+                }
+
+                own = matches(entry.getKey(), excludedFilters);
+
+                if (own == null) {
+                    continue;
+                }
+
+                if (entry.getKey().equals(PARTICIPANTS)) {
+                    matchingParticipants = (BitSet) own.clone();
+                } else {
+                    matchingParticipants = new BitSet(participantCount);
+
+                    for (int record = own.nextSetBit(0); record >= 0; record = own.nextSetBit(record + 1)) {
+                        matchingParticipants.set(entry.getValue().participants[record]);
+                    }
+                }
+
+                if (participants == null) {
+                    participants = matchingParticipants;
+                } else {
+                    participants.and(matchingParticipants);
+                }
+            }
+
+            return participants;
+        }
+
+        // Records of an index matching all of its own filters, or null if it has none
+        private BitSet matches(String index, Set<String> excludedFilters) {
+            String key = index + ":" + String.join(",", excludedFilters.stream().filter(this::isFilter).sorted().toList());
+
+            if (!matches.containsKey(key)) {
+                matches.put(key, computeMatches(index, excludedFilters));
+            }
+
+            return matches.get(key);
+        }
+
+        private BitSet computeMatches(String index, Set<String> excludedFilters) {
+            Table table = tables.get(index);
+            BitSet result = null;
+
+            for (Map.Entry<String, Set<String>> filter : terms.entrySet()) {
+                Field field = fields.get(filter.getKey());
+                Map<String, int[]> column;
+                BitSet filterMatches;
+
+                if (excludedFilters.contains(filter.getKey()) || !field.index().equals(index)) {
+                    continue;
+                }
+
+                column = table.terms.get(field.osName());
+                filterMatches = new BitSet(table.size());
+
+                for (String value : filter.getValue()) {
+                    for (int record : column.getOrDefault(value, new int[0])) {
+                        filterMatches.set(record);
+                    }
+                }
+
+                result = and(result, filterMatches);
+            }
+
+            for (Map.Entry<String, Double[]> filter : ranges.entrySet()) {
+                Field field = fields.get(filter.getKey());
+                NumberColumn column;
+                BitSet filterMatches;
+                Double lower = filter.getValue()[0];
+                Double upper = filter.getValue()[1];
+                int end;
+
+                if (excludedFilters.contains(filter.getKey()) || !field.index().equals(index)) {
+                    continue;
+                }
+
+                column = table.numbers.get(field.osName());
+                filterMatches = new BitSet(table.size());
+                end = upper == null ? column.values.length : column.search(upper, true);
+
+                for (int i = lower == null ? 0 : column.search(lower, false); i < end; i++) {
+                    filterMatches.set(column.records[i]);
+                }
+
+                result = and(result, filterMatches);
+            }
+
+            return result;
+        }
+
+        private boolean isFilter(String filter) {
+            return terms.containsKey(filter) || ranges.containsKey(filter);
+        }
+    }
+
+    private static BitSet and(BitSet result, BitSet matches) {
+        if (result == null) {
+            return matches;
+        }
+
+        result.and(matches);
+
+        return result;
+    }
+
+    private static BitSet all(int size) {
+        BitSet bits = new BitSet(size);
+
+        bits.set(0, size);
+
+        return bits;
+    }
+}
@@ -0,0 +1,132 @@
+package gov.nih.nci.bento_ri.service;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.opensearch.client.Request;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * The landing page's numberOf* counts, read once per release from the home_stats document
+ * A new release's counts are loaded in the background, and the previous release's are served until they're ready
+ * Unless home.stats.snapshot.enabled is set, each request reads only its own count from Opensearch instead
+ */
+@Service
+public class HomeStatsSnapshot {
+    private static final Logger logger = LogManager.getLogger(HomeStatsSnapshot.class);
+    public static final String HOME_STATS_END_POINT = "/home_stats/_search";
+
+    /**
+     * Where a count comes from
+     * @param field Field of the home_stats document
+     * @param index Index to count instead, if the document has no such field, or null
+     */
+    private record Stat(String field, String index) {}
+
+    // GraphQL field -> where its count comes from
+    private static final Map<String, Stat> STATS = Map.of(
+        "numberOfDiseases", new Stat("num_diseases", null),
+        "numberOfParticipants", new Stat("num_participants", null),
+        "numberOfStudies", new Stat("num_studies", null),
+        "numberOfSurvivals", new Stat("num_survivals", null),
+        "numberOfTreatments", new Stat("num_treatments", "treatments"),
+        "numberOfTreatmentResponses", new Stat("num_treatment_responses", "treatment_responses")
+    );
+    public static final Set<String> FIELDS = STATS.keySet();
+
+    private final boolean enabled;
+    private final InventoryESService esService;
+    private volatile Map<String, Integer> stats;
+
+    public HomeStatsSnapshot(
+            @Value("${home.stats.snapshot.enabled:false}") boolean enabled,
+            InventoryESService esService,
+            ReleaseMonitor releaseMonitor) {
+        this.enabled = enabled;
+        this.esService = esService;
+
+        if (enabled) {
+            releaseMonitor.addListener(this::load);
+        }
+    }
+
+    /**
+     * Retrieves a count, loading the counts first if no release's have been loaded yet
+     * Without the snapshot, only the requested count is read from Opensearch
+     * @param name The count's GraphQL field, one of FIELDS
+     * @return
+     * @throws IOException
+     */
+    public Integer get(String name) throws IOException {
+        Map<String, Integer> currentStats = stats;
+
+        if (!enabled) {
+            return fetch(Set.of(name)).get(name);
+        }
+
+        if (currentStats == null) {
+            currentStats = fetch(FIELDS);
+            stats = currentStats;
+        }
+
+        return currentStats.get(name);
+    }
+
+    private void load(String newRelease) throws IOException {
+        Map<String, Integer> newStats = fetch(FIELDS);
+
+        stats = newStats;
+        logger.info("Loaded the home stats of release " + newRelease + ": " + newStats);
+    }
+
+    /**
+     * Reads counts from one search of the home_stats document
+     * An index is only counted for a requested count that the document doesn't have
+     * @param names GraphQL fields of the counts, from FIELDS
+     * @return GraphQL field -> count
+     * @throws IOException
+     */
+    private Map<String, Integer> fetch(Collection<String> names) throws IOException {
+        Request homeStatsRequest = new Request("GET", HOME_STATS_END_POINT);
+        JsonObject homeStatsResult;
+        JsonArray hits;
+        Map<String, Integer> counts = new HashMap<>();
+        JsonObject source;
+
+        homeStatsRequest.addParameter("_source", names.stream()
+            .map(name -> STATS.get(name).field())
+            .collect(Collectors.joining(",")));
+        homeStatsResult = esService.send(homeStatsRequest);
+        hits = homeStatsResult.getAsJsonObject("hits").getAsJsonArray("hits");
+
+        if (hits.isEmpty()) {
+            throw new IOException("Error: no results for homepage stats!");
+        }
+
+        source = hits.get(0).getAsJsonObject().getAsJsonObject("_source");
+
+        for (String name : names) {
+            Stat stat = STATS.get(name);
+            JsonElement value = source == null ? null : source.get(stat.field());
+
+            if (value != null && !value.isJsonNull()) {
+                counts.put(name, value.getAsInt());
+            } else if (stat.index() != null) {
+                counts.put(name, esService.getCount(Map.of("query", Map.of("match_all", Map.of())), stat.index()));
+            }
+        }
+
+        return Map.copyOf(counts);
+    }
+}
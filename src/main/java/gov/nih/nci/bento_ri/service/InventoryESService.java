@@ -6,22 +6,59 @@ import gov.nih.nci.bento.model.ConfigurationDAO;
 import gov.nih.nci.bento.service.ESService;
 import gov.nih.nci.bento.utility.TypeChecker;
 
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
 import org.opensearch.client.*;
 import com.amazonaws.auth.AWSCredentialsProvider;
 import com.amazonaws.auth.DefaultAWSCredentialsProviderChain;
 import com.google.common.reflect.TypeToken;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 @Service("InventoryESService")
 public class InventoryESService extends ESService {
+    private static final Logger logger = LogManager.getLogger(InventoryESService.class);
     public static final String SCROLL_ENDPOINT = "/_search/scroll";
     public static final String JSON_OBJECT = "jsonObject";
     public static final String AGGS = "aggs";
     public static final int MAX_ES_SIZE = 60000;
     public static final int SCROLL_THRESHOLD = 10000;
+    public static final String QUERY_SLOT = "query";
+    public static final String INCLUDE_SLOT = "include";
+    public static final String EXACT_COUNT_AGG_NAME = "exact_count";
+    public static final String COHORTS_AGG_NAME = "cohorts";
+    public static final int MAX_BUCKETS = 100000;
+    // Long enough for a user to read a page before asking for the next, since every page extends it
+    public static final int PIT_KEEP_ALIVE_SECONDS = 600;
+    public static final String PIT_KEEP_ALIVE = PIT_KEEP_ALIVE_SECONDS + "s";
+    public static final String CURSOR = "cursor";
+    public static final String SCROLL_KEEP_ALIVE = "1m";
+    public static final int SLICES = 4;
+    public static final int SLICE_THRESHOLD = 100000;
+    private final LoadMonitor loadMonitor = new LoadMonitor();
+    final Map<String, String> TEMPLATE_MARKERS = Map.of(
+        QUERY_SLOT, "\"{{query}}\"",
+        INCLUDE_SLOT, "[\"{{include}}\"]"
+    );
+    // Buckets of the age widgets, in days, as Opensearch [from, to) ranges
+    public static final List<Map<String, Object>> AGE_RANGES = List.of(
+        Map.of("key", "0 - 4", "from", 0, "to", 5 * 365),
+        Map.of("key", "5 - 9", "from", 5 * 365, "to", 10 * 365),
+        Map.of("key", "10 - 14", "from", 10 * 365, "to", 15 * 365),
+        Map.of("key", "15 - 19", "from", 15 * 365, "to", 20 * 365),
+        Map.of("key", "20 - 29", "from", 20 * 365, "to", 30 * 365),
+        Map.of("key", "> 29", "from", 30 * 365)
+    );
     final Set<String> PARTICIPANT_PARAMS = Set.of(
         "id", "participant_id", "race", "sex_at_birth"
     );
@@ -51,10 +88,41 @@ public class InventoryESService extends ESService {
         "response_category", "response_system"
     );
 
+    /**
+     * What a caller reads from an Opensearch response, used to trim requests
+     * AGGREGATIONS - only the aggregations of a size 0 search
+     * COUNT - only the count returned by the /_count endpoint
+     * HITS - the documents themselves
+     */
+    public enum ResponseUse {
+        AGGREGATIONS,
+        COUNT,
+        HITS
+    }
+
     static final AWSCredentialsProvider credentialsProvider = new DefaultAWSCredentialsProviderChain();
 
     private Gson gson = new GsonBuilder().serializeNulls().create();
 
+    @Autowired
+    private CohortStore cohortStore;
+
+    // Request bodies for the fixed aggregation shapes, compiled once
+    private final Map<String, QueryTemplate> queryTemplates = new ConcurrentHashMap<>();
+
+    // Points in time of cursors that may still be read
+    private final CursorRegistry openCursors = new CursorRegistry(PIT_KEEP_ALIVE_SECONDS * 1000L);
+
+    // Top-K bucket limits for facet filters, from max_buckets in facet_filters.yaml
+    private final Map<String, Integer> bucketLimits = new ConcurrentHashMap<>();
+
+    // Fetches the slices of large result sets, and other parallel requests, shared by all requests
+    private final ExecutorService sliceExecutor = Executors.newFixedThreadPool(SLICES * 2, runnable -> {
+        Thread thread = new Thread(runnable, "opensearch-slice");
+        thread.setDaemon(true);
+        return thread;
+    });
+
     private InventoryESService(ConfigurationDAO config) {
         super(config);
         this.gson = new GsonBuilder().serializeNulls().create();
@@ -72,21 +140,24 @@ public class InventoryESService extends ESService {
      */
     public Integer recountFacetFilterValue(Map<String, Object> params, Set<String> rangeParams, String index, String field, String value) throws IOException {
         Map<String, Object> query_4_update = buildFacetFilterQuery(params, rangeParams, Set.of(field), "participants");
-        Map<String, Integer> updated_values;
+        List<Map<String, Object>> updated_values;
         Request request = new Request("GET", "/participants/_search");
         JsonObject jsonObject;
         String query_4_update_json;
 
-        // Create reverse_nested aggregation
-        query_4_update = addCustomAggregations(query_4_update, "facetAgg", field, index);
-        query_4_update_json = gson.toJson(query_4_update);
+        // Create reverse_nested aggregation, limited to the value being recounted
+        query_4_update_json = renderExactCountAggregations(query_4_update, field, index, List.of(value));
         request.setJsonEntity(query_4_update_json);
-        jsonObject = send(request);
+        jsonObject = send(request, ResponseUse.AGGREGATIONS);
 
         // Retrieve new counts
-        updated_values = collectCustomTerms(jsonObject, "facetAgg");
+        updated_values = collectExactCounts(jsonObject);
+
+        if (updated_values.isEmpty()) {
+            return 0;
+        }
 
-        return updated_values.get(value);
+        return (Integer) updated_values.get(0).get("subjects");
     }
 
     /**
@@ -172,9 +243,17 @@ public class InventoryESService extends ESService {
                     List<String> castedValueSet = (List<String>) valueSetRaw;
                     valueSet = castedValueSet;
                 }
-                
-                if (key.equals("participant_pk") && indexType.equals("participants")) {
-                    key = "id";
+
+                // Cohorts can be long, or passed by their handles, so their clauses are built and cached by the store
+                // participant_pk is a field of every index, so the clause never needs a nested query
+                if (key.equals("participant_pk")) {
+                    Map<String, Object> cohortClause = cohortStore.filterClause(indexType.equals("participants") ? "id" : key, valueSet);
+
+                    if (cohortClause != null) {
+                        filter.add(cohortClause);
+                    }
+
+                    continue;
                 }
 
                 // list with only one empty string [""] means return all records
@@ -246,37 +325,6 @@ public class InventoryESService extends ESService {
         return result;
     }
 
-    public List<String> getBucketNames(String property, Map<String, Object> params, Set<String> rangeParams, String cardinalityAggName, String index, String endpoint) throws IOException {
-        List<String> bucketNames = new ArrayList<String>();
-        Map<String, Object> query = buildFacetFilterQuery(params, rangeParams, Set.of(), index);
-
-        // TODO: buckets for numeric ranges, when such a feature is needed
-        // stub
-
-        // Add aggs clause to Opensearch query
-        String[] aggNames = new String[] {property};
-        query = addAggregations(query, aggNames, cardinalityAggName, List.of());
-
-        // Send Opensearch request and retrieve list of buckets
-        Request request = new Request("GET", endpoint);
-        String jsonizedRequest = gson.toJson(query);
-        request.setJsonEntity(jsonizedRequest);
-        JsonObject jsonObject = send(request);
-        Map<String, JsonArray> aggs = collectTermAggs(jsonObject, aggNames);
-        JsonArray buckets = aggs.get(property);
-
-        if (buckets != null) {
-            for (JsonElement bucket : buckets) {
-                JsonObject bucketObj = bucket.getAsJsonObject();
-                if (bucketObj.has("key")) {
-                    bucketNames.add(bucketObj.get("key").getAsString());
-                }
-            }
-        }
-
-        return bucketNames;
-    }
-
     /**
      * Queries the /_count Opensearch endpoint and returns the number of hits
      * @param query Opensearch query
@@ -286,12 +334,12 @@ public class InventoryESService extends ESService {
      */
     public int getCount(Map<String, Object> query, String index) throws IOException {
         Request request = new Request("GET", String.format("/%s/_count", index));
-        String queryJson = gson.toJson(query);
+        String queryJson = gson.toJson(Map.of("query", withoutInnerHits(query.get("query"))));
         JsonObject recountResult;
         int newCount;
 
         request.setJsonEntity(queryJson);
-        recountResult = send(request);
+        recountResult = send(request, ResponseUse.COUNT);
         newCount = recountResult.get("count").getAsInt();
 
         return newCount;
@@ -341,6 +389,10 @@ public class InventoryESService extends ESService {
     }
 
     public Map<String, Object> addRangeCountAggregations(Map<String, Object> query, String rangeAggName, String cardinalityAggName) {
+        return addRangeCountAggregations(query, rangeAggName, cardinalityAggName, CountStrategy.DEFAULT_PRECISION_THRESHOLD);
+    }
+
+    public Map<String, Object> addRangeCountAggregations(Map<String, Object> query, String rangeAggName, String cardinalityAggName, int precisionThreshold) {
         Map<String, Object> newQuery = new HashMap<>(query);
         Map<String, Object> fields = new HashMap<String, Object>();
         Map<String, Object> subField = new HashMap<String, Object>();
@@ -349,36 +401,11 @@ public class InventoryESService extends ESService {
         subField_ranges.put("field", rangeAggName);
 
         // Opensearch ranges are [from, to)
-        subField_ranges.put("ranges", Set.of(
-            Map.of(
-                "key", "0 - 4",
-                "from", 0,
-                "to", 5 * 365
-            ), Map.of(
-                "key", "5 - 9",
-                "from", 5 * 365,
-                "to", 10 * 365
-            ), Map.of(
-                "key", "10 - 14",
-                "from", 10 * 365,
-                "to", 15 * 365
-            ), Map.of(
-                "key", "15 - 19",
-                "from", 15 * 365,
-                "to", 20 * 365
-            ), Map.of(
-                "key", "20 - 29",
-                "from", 20 * 365,
-                "to", 30 * 365
-            ), Map.of(
-                "key", "> 29",
-                "from", 30 * 365
-            )
-        ));
+        subField_ranges.put("ranges", AGE_RANGES);
         subField.put("range", subField_ranges);
 
         if (cardinalityAggName != null) {
-            subField.put("aggs", addCardinalityHelper(cardinalityAggName));
+            subField.put("aggs", addCardinalityHelper(cardinalityAggName, precisionThreshold));
         }
 
         fields.put(rangeAggName, subField);
@@ -403,18 +430,26 @@ public class InventoryESService extends ESService {
     }
 
     public Map<String, Object> addAggregations(Map<String, Object> query, String[] termAggNames, String subCardinalityAggName, String[] rangeAggNames, List<String> only_includes) {
+        return addAggregations(query, termAggNames, subCardinalityAggName, CountStrategy.DEFAULT_PRECISION_THRESHOLD, only_includes);
+    }
+
+    public Map<String, Object> addAggregations(Map<String, Object> query, String[] termAggNames, String subCardinalityAggName, int precisionThreshold, List<String> only_includes) {
+        return addAggregations(query, termAggNames, subCardinalityAggName, precisionThreshold, MAX_BUCKETS, only_includes);
+    }
+
+    public Map<String, Object> addAggregations(Map<String, Object> query, String[] termAggNames, String subCardinalityAggName, int precisionThreshold, int size, List<String> only_includes) {
         Map<String, Object> newQuery = new HashMap<>(query);
         Map<String, Object> fields = new HashMap<String, Object>();
 
         for (String field: termAggNames) {
             Map<String, Object> subField = new HashMap<String, Object>();
             subField.put("field", field);
-            subField.put("size", 100000);
+            subField.put("size", size);
             if (only_includes.size() > 0) {
                 subField.put("include", only_includes);
             }
             if (! (subCardinalityAggName == null)) {
-                fields.put(field, Map.of("terms", subField, "aggs", addCardinalityHelper(subCardinalityAggName)));
+                fields.put(field, Map.of("terms", subField, "aggs", addCardinalityHelper(subCardinalityAggName, precisionThreshold)));
             } else {
                 fields.put(field, Map.of("terms", subField));
             }
@@ -440,13 +475,141 @@ public class InventoryESService extends ESService {
         return newQuery;
     }
 
+    // Builds a reverse_nested Opensearch query that counts participants exactly
+    // Buckets are ordered by their number of participants
+    public Map<String, Object> addExactCountAggregations(Map<String, Object> query, String aggName, String field, String nestedProperty, List<String> only_includes) {
+        return addExactCountAggregations(query, aggName, field, nestedProperty, MAX_BUCKETS, only_includes);
+    }
+
+    public Map<String, Object> addExactCountAggregations(Map<String, Object> query, String aggName, String field, String nestedProperty, int size, List<String> only_includes) {
+        Map<String, Object> newQuery = new HashMap<>(query);
+        Map<String, Object> aggSection = new HashMap<String, Object>();
+        Map<String, Object> aggSubSection = new HashMap<String, Object>();
+        Map<String, Object> terms = new HashMap<String, Object>();
+
+        terms.put("field", nestedProperty + "." + field);
+        terms.put("size", size);
+        terms.put("order", Map.of("top_reverse_nested>_count", "desc"));
+        if (only_includes.size() > 0) {
+            terms.put("include", only_includes);
+        }
+
+        aggSubSection.put("agg_buckets", Map.of("terms", terms, "aggs", Map.of("top_reverse_nested", Map.of("reverse_nested", Map.of()))));
+        aggSection.put(aggName, Map.of("nested", Map.of("path", nestedProperty), "aggs", aggSubSection));
+        newQuery.put("size", 0);
+        newQuery.put("aggs", aggSection);
+
+        return newQuery;
+    }
+
+    /**
+     * Builds a terms aggregation of a facet filter, limited to its max_buckets
+     * @param field The field to aggregate
+     * @param cardinalityAggName Opensearch field for identifying unique results, or null for doc counts
+     * @param precisionThreshold Cardinality precision threshold
+     * @return The aggregation
+     */
+    public Map<String, Object> termsAggregation(String field, String cardinalityAggName, int precisionThreshold) {
+        Map<String, Object> terms = Map.of("field", field, "size", bucketLimit(field));
+
+        if (cardinalityAggName == null) {
+            return Map.of("terms", terms);
+        }
+
+        return Map.of("terms", terms, "aggs", addCardinalityHelper(cardinalityAggName, precisionThreshold));
+    }
+
+    /**
+     * Builds a terms aggregation of a nested facet filter, from the participants index
+     * @param field The field to aggregate
+     * @param nestedProperty The nested path that contains the field
+     * @param isCountingParticipants Whether to count participants with reverse_nested, ordering buckets by them,
+     *                               or only the nested documents
+     * @return The aggregation
+     */
+    public Map<String, Object> exactCountAggregation(String field, String nestedProperty, boolean isCountingParticipants) {
+        Map<String, Object> terms = new HashMap<String, Object>();
+        Map<String, Object> buckets = new HashMap<String, Object>();
+
+        terms.put("field", nestedProperty + "." + field);
+        terms.put("size", bucketLimit(field));
+        buckets.put("terms", terms);
+
+        if (isCountingParticipants) {
+            terms.put("order", Map.of("top_reverse_nested>_count", "desc"));
+            buckets.put("aggs", Map.of("top_reverse_nested", Map.of("reverse_nested", Map.of())));
+        }
+
+        return Map.of("nested", Map.of("path", nestedProperty), "aggs", Map.of("agg_buckets", buckets));
+    }
+
+    /**
+     * Adds a filters aggregation with a bucket for each cohort, and the same aggregations in every bucket
+     * @param query The base Opensearch query map to modify, which should match every cohort
+     * @param aggs Aggregations of the whole query
+     * @param cohortFilters Cohort name -> Opensearch query of the cohort
+     * @param cohortAggs Aggregations of each cohort
+     * @return A modified Opensearch query map
+     */
+    public Map<String, Object> addCohortAggregations(Map<String, Object> query, Map<String, Object> aggs, Map<String, Object> cohortFilters, Map<String, Object> cohortAggs) {
+        Map<String, Object> newQuery = new HashMap<>(query);
+        Map<String, Object> allAggs = new HashMap<>(aggs);
+        Map<String, Object> filters = new HashMap<>();
+
+        for (Map.Entry<String, Object> cohortFilter : cohortFilters.entrySet()) {
+            filters.put(cohortFilter.getKey(), withoutInnerHits(cohortFilter.getValue()));
+        }
+
+        allAggs.put(COHORTS_AGG_NAME, Map.of("filters", Map.of("filters", filters), "aggs", cohortAggs));
+        newQuery.put("size", 0);
+        newQuery.put("aggs", allAggs);
+
+        return newQuery;
+    }
+
+    /**
+     * Adds a composite aggregation, for paging through all values of a field
+     * @param query The base Opensearch query map to modify
+     * @param field The field to aggregate
+     * @param cardinalityAggName Opensearch field for identifying unique results, or null for doc counts
+     * @param precisionThreshold Cardinality precision threshold
+     * @param size The number of values in a page
+     * @param after The last value of the previous page, or null for the first page
+     * @return A modified Opensearch query map
+     */
+    public Map<String, Object> addCompositeAggregations(Map<String, Object> query, String field, String cardinalityAggName, int precisionThreshold, int size, String after) {
+        Map<String, Object> newQuery = new HashMap<>(query);
+        Map<String, Object> composite = new HashMap<String, Object>();
+        Map<String, Object> aggSection = new HashMap<String, Object>();
+
+        composite.put("sources", List.of(Map.of("value", Map.of("terms", Map.of("field", field)))));
+        composite.put("size", size);
+        if (after != null) {
+            composite.put("after", Map.of("value", after));
+        }
+
+        aggSection.put("composite", composite);
+        if (cardinalityAggName != null) {
+            aggSection.put("aggs", addCardinalityHelper(cardinalityAggName, precisionThreshold));
+        }
+
+        newQuery.put("size", 0);
+        newQuery.put("aggs", Map.of(field, aggSection));
+
+        return newQuery;
+    }
+
     public Map<String, Object> addCardinalityHelper(String cardinalityAggName) {
+        return addCardinalityHelper(cardinalityAggName, CountStrategy.DEFAULT_PRECISION_THRESHOLD);
+    }
+
+    public Map<String, Object> addCardinalityHelper(String cardinalityAggName, int precisionThreshold) {
         int dotIndex = cardinalityAggName.indexOf("."); // Look for period (.) in cardinal property's name
         boolean isNested = (dotIndex != -1); // Determine whether the cardinal property is nested
         Map<String, Object> cardinalityInnerClause = Map.ofEntries(
             Map.entry("cardinality", Map.ofEntries(
                 Map.entry("field", cardinalityAggName),
-                Map.entry("precision_threshold", 40000)
+                Map.entry("precision_threshold", precisionThreshold)
             ))
         );
         Map<String, Object> cardinalityClause = null;
@@ -472,6 +635,656 @@ public class InventoryESService extends ESService {
         return cardinalityClause;
     }
 
+    /**
+     * Compiles the request bodies for every facet filter's aggregations
+     * @param facetFilters Facet filter configurations, keyed by index
+     * @param settings Facet filter settings, keyed by agg_name
+     * @param rangeParams GraphQL variables that are numeric
+     */
+    public void compileQueryTemplates(Map<String, List<Map<String, String>>> facetFilters, Map<String, FacetFilterSettings> settings,
+            Set<String> rangeParams) {
+        for (Map.Entry<String, List<Map<String, String>>> entry : facetFilters.entrySet()) {
+            String index = entry.getKey();
+
+            for (Map<String, String> filter : entry.getValue()) {
+                String field = filter.get("agg_name");
+                Integer maxBuckets = settings.get(field).maxBuckets();
+
+                if (maxBuckets != null) {
+                    bucketLimits.put(field, maxBuckets);
+                }
+
+                CountStrategy strategy = settings.get(field).countStrategy();
+                int precisionThreshold = settings.get(field).precisionThreshold();
+                String cardinalityAggName = strategy == CountStrategy.DOC_COUNT ? null : filter.get("cardinality_agg_name");
+
+                if (rangeParams.contains(field)) {
+                    rangeCountAggregationsTemplate(field, cardinalityAggName, precisionThreshold);
+                    continue;
+                }
+
+                if (strategy == CountStrategy.EXACT && !index.equals("participants")) {
+                    exactCountAggregationsTemplate(field, index, false);
+                    exactCountAggregationsTemplate(field, index, true);
+                } else {
+                    aggregationsTemplate(field, cardinalityAggName, precisionThreshold, false);
+                    aggregationsTemplate(field, cardinalityAggName, precisionThreshold, true);
+                }
+            }
+        }
+
+        logger.info("Compiled " + queryTemplates.size() + " query templates");
+    }
+
+    /**
+     * Serializes a terms aggregation request, equivalent to addAggregations()
+     * @param query Opensearch query built by buildFacetFilterQuery()
+     * @param field The field to aggregate
+     * @param cardinalityAggName Opensearch field for identifying unique results
+     * @param only_includes Bucket keys to limit the aggregation to
+     * @return The serialized request body
+     */
+    public String renderAggregations(Map<String, Object> query, String field, String cardinalityAggName, List<String> only_includes) {
+        return renderAggregations(query, field, cardinalityAggName, CountStrategy.DEFAULT_PRECISION_THRESHOLD, only_includes);
+    }
+
+    /**
+     * Serializes a terms aggregation request with a cardinality precision threshold
+     * @param query Opensearch query built by buildFacetFilterQuery()
+     * @param field The field to aggregate
+     * @param cardinalityAggName Opensearch field for identifying unique results
+     * @param precisionThreshold Counts below this are expected to be close to accurate
+     * @param only_includes Bucket keys to limit the aggregation to
+     * @return The serialized request body
+     */
+    public String renderAggregations(Map<String, Object> query, String field, String cardinalityAggName, int precisionThreshold, List<String> only_includes) {
+        boolean hasIncludes = only_includes.size() > 0;
+        QueryTemplate template = aggregationsTemplate(field, cardinalityAggName, precisionThreshold, hasIncludes);
+
+        return template.render(Map.of(
+            QUERY_SLOT, serializeFilter(query),
+            INCLUDE_SLOT, hasIncludes ? gson.toJson(only_includes) : ""
+        ));
+    }
+
+    /**
+     * Serializes a range aggregation request, equivalent to addRangeCountAggregations()
+     * @param query Opensearch query built by buildFacetFilterQuery()
+     * @param rangeAggName The numeric field to aggregate
+     * @param cardinalityAggName Opensearch field for identifying unique results
+     * @return The serialized request body
+     */
+    public String renderRangeCountAggregations(Map<String, Object> query, String rangeAggName, String cardinalityAggName) {
+        return renderRangeCountAggregations(query, rangeAggName, cardinalityAggName, CountStrategy.DEFAULT_PRECISION_THRESHOLD);
+    }
+
+    /**
+     * Serializes a range aggregation request with a cardinality precision threshold
+     * @param query Opensearch query built by buildFacetFilterQuery()
+     * @param rangeAggName The numeric field to aggregate
+     * @param cardinalityAggName Opensearch field for identifying unique results
+     * @param precisionThreshold Counts below this are expected to be close to accurate
+     * @return The serialized request body
+     */
+    public String renderRangeCountAggregations(Map<String, Object> query, String rangeAggName, String cardinalityAggName, int precisionThreshold) {
+        QueryTemplate template = rangeCountAggregationsTemplate(rangeAggName, cardinalityAggName, precisionThreshold);
+
+        return template.render(Map.of(QUERY_SLOT, serializeFilter(query)));
+    }
+
+    /**
+     * Serializes an exact participant count request, equivalent to addExactCountAggregations()
+     * The query must be built for the participants index
+     * @param query Opensearch query built by buildFacetFilterQuery()
+     * @param field The field to aggregate
+     * @param nestedProperty The nested path that contains the field
+     * @param only_includes Bucket keys to limit the aggregation to
+     * @return The serialized request body
+     */
+    public String renderExactCountAggregations(Map<String, Object> query, String field, String nestedProperty, List<String> only_includes) {
+        boolean hasIncludes = only_includes.size() > 0;
+        QueryTemplate template = exactCountAggregationsTemplate(field, nestedProperty, hasIncludes);
+
+        return template.render(Map.of(
+            QUERY_SLOT, serializeFilter(query),
+            INCLUDE_SLOT, hasIncludes ? gson.toJson(only_includes) : ""
+        ));
+    }
+
+    /**
+     * Serializes a request that counts unique values, equivalent to countValues()
+     * @param query Opensearch query built by buildFacetFilterQuery()
+     * @param termAggNames The fields whose values to count
+     * @return The serialized request body
+     */
+    public String renderCountValues(Map<String, Object> query, String[] termAggNames) {
+        String key = "countValues:" + String.join(",", termAggNames);
+        QueryTemplate template = queryTemplates.computeIfAbsent(key, k ->
+            compileTemplate(countValues(templateQuery(), termAggNames))
+        );
+
+        return template.render(Map.of(QUERY_SLOT, serializeFilter(query)));
+    }
+
+    private QueryTemplate aggregationsTemplate(String field, String cardinalityAggName, int precisionThreshold, boolean hasIncludes) {
+        String key = String.join(":", "terms", field, String.valueOf(cardinalityAggName), String.valueOf(precisionThreshold), String.valueOf(hasIncludes));
+
+        return queryTemplates.computeIfAbsent(key, k -> {
+            List<String> includes = hasIncludes ? List.of("{{include}}") : List.of();
+            return compileTemplate(addAggregations(templateQuery(), new String[]{field}, cardinalityAggName, precisionThreshold, bucketLimit(field), includes));
+        });
+    }
+
+    private QueryTemplate rangeCountAggregationsTemplate(String rangeAggName, String cardinalityAggName, int precisionThreshold) {
+        String key = String.join(":", "rangeCount", rangeAggName, String.valueOf(cardinalityAggName), String.valueOf(precisionThreshold));
+
+        return queryTemplates.computeIfAbsent(key, k ->
+            compileTemplate(addRangeCountAggregations(templateQuery(), rangeAggName, cardinalityAggName, precisionThreshold))
+        );
+    }
+
+    private QueryTemplate exactCountAggregationsTemplate(String field, String nestedProperty, boolean hasIncludes) {
+        String key = String.join(":", "exactCount", field, nestedProperty, String.valueOf(hasIncludes));
+
+        return queryTemplates.computeIfAbsent(key, k -> {
+            List<String> includes = hasIncludes ? List.of("{{include}}") : List.of();
+            return compileTemplate(addExactCountAggregations(templateQuery(), EXACT_COUNT_AGG_NAME, field, nestedProperty, bucketLimit(field), includes));
+        });
+    }
+
+    /**
+     * Serializes the node count aggregation request, equivalent to addNodeCountAggregations()
+     * @param query Opensearch query built by buildFacetFilterQuery()
+     * @param nodeName The field to aggregate
+     * @return The serialized request body
+     */
+    public String renderNodeCountAggregations(Map<String, Object> query, String nodeName) {
+        QueryTemplate template = queryTemplates.computeIfAbsent("nodeCount:" + nodeName, k ->
+            compileTemplate(addNodeCountAggregations(templateQuery(), nodeName))
+        );
+
+        return template.render(Map.of(QUERY_SLOT, serializeFilter(query)));
+    }
+
+    /**
+     * Serializes a size 0 request whose aggregations weren't built from a template
+     * @param query Opensearch query with aggregations
+     * @return The serialized request body
+     */
+    public String serializeForAggregations(Map<String, Object> query) {
+        Map<String, Object> newQuery = new HashMap<>(query);
+
+        newQuery.put("query", withoutInnerHits(query.get("query")));
+        newQuery.put("track_total_hits", false);
+
+        return gson.toJson(newQuery);
+    }
+
+    /**
+     * Whether the cluster has rejected a request recently, or has been slow to respond
+     * Optional work, such as prefetching, should be skipped while it's busy
+     * @return
+     */
+    public boolean isBusy() {
+        return loadMonitor.isBusy(System.currentTimeMillis());
+    }
+
+    /**
+     * Sends a request, timing the response for the load monitor
+     * @param request The Opensearch request
+     * @return
+     * @throws IOException
+     */
+    @Override
+    public JsonObject send(Request request) throws IOException {
+        long start = System.currentTimeMillis();
+        boolean isRejected = false;
+
+        try {
+            return super.send(request);
+        } catch (ResponseException e) {
+            isRejected = LoadMonitor.isRejection(e.getResponse().getStatusLine().getStatusCode());
+            throw e;
+        } finally {
+            long now = System.currentTimeMillis();
+            loadMonitor.record(now - start, isRejected, now);
+        }
+    }
+
+    /**
+     * Sends a request, trimmed to what the caller reads from the response
+     * AGGREGATIONS requests are answered from the shard request cache when possible
+     * @param request The Opensearch request
+     * @param use What the caller reads from the response
+     * @return
+     * @throws IOException
+     */
+    public JsonObject send(Request request, ResponseUse use) throws IOException {
+        switch (use) {
+            case AGGREGATIONS:
+                request.addParameter("request_cache", "true");
+                request.addParameter("filter_path", "aggregations");
+                break;
+            case COUNT:
+                request.addParameter("filter_path", "count");
+                break;
+            default:
+                break;
+        }
+
+        return send(request);
+    }
+
+    /**
+     * Opens a point in time, so that pages of results stay consistent while they're read
+     * Open cursors are never closed to make room, so a full pool refuses the new one instead
+     * @param index The Opensearch index
+     * @param pool Who will read the cursor
+     * @return The point in time ID
+     * @throws IOException If the pool is full
+     */
+    public String openPointInTime(String index, CursorRegistry.Pool pool) throws IOException {
+        Request request = new Request("POST", "/" + index + "/_search/point_in_time");
+        request.addParameter("keep_alive", PIT_KEEP_ALIVE);
+        JsonObject jsonObject = send(request);
+        String pitId = jsonObject.get("pit_id").getAsString();
+
+        if (!openCursors.add(pitId, pool, System.currentTimeMillis())) {
+            closeUnregisteredPointInTime(pitId);
+            throw new IOException("Too many cursors are open, please try again later");
+        }
+
+        return pitId;
+    }
+
+    /**
+     * Closes the point in time of a cursor, once no more pages will be read
+     * @param cursor A cursor from collectCursorPage()
+     * @throws IOException
+     */
+    public void closeCursor(String cursor) throws IOException {
+        closePointInTime(decodeCursor(cursor).get("pit_id").getAsString());
+    }
+
+    // Closes a point in time opened by openPointInTime(), unless it's already been closed
+    // It expires on its own if it can't be closed, so failures are only logged
+    private void closePointInTime(String pitId) {
+        if (openCursors.remove(pitId)) {
+            closeUnregisteredPointInTime(pitId);
+        }
+    }
+
+    private void closeUnregisteredPointInTime(String pitId) {
+        Request request = new Request("DELETE", "/_search/point_in_time");
+
+        request.setJsonEntity(gson.toJson(Map.of("pit_id", List.of(pitId))));
+
+        try {
+            send(request);
+        } catch (IOException e) {
+            logger.warn("Unable to close point in time: " + e.toString());
+        }
+    }
+
+    /**
+     * Retrieves a page of results with search_after, instead of from/size
+     * Every row has a "cursor" that continues from that row. The point in time is closed
+     * after the last page, which is the first page with fewer than pageSize rows
+     * Cursors of this overload are read interactively, a page at a time by the frontend
+     * @param index The Opensearch index
+     * @param query Opensearch query, sorted by fields that are unique together
+     * @param properties GraphQL field -> Opensearch field mappings of the rows
+     * @param pageSize Number of rows in the page
+     * @param after Cursor of the row before the page, or null for the first page
+     * @return
+     * @throws IOException
+     */
+    public List<Map<String, Object>> collectCursorPage(String index, Map<String, Object> query, List<Map<String, Object>> properties, int pageSize, String after) throws IOException {
+        return collectCursorPage(index, query, properties, pageSize, after, CursorRegistry.Pool.INTERACTIVE);
+    }
+
+    /**
+     * Retrieves a page of results with search_after, instead of from/size
+     * @param index The Opensearch index
+     * @param query Opensearch query, sorted by fields that are unique together
+     * @param properties GraphQL field -> Opensearch field mappings of the rows
+     * @param pageSize Number of rows in the page
+     * @param after Cursor of the row before the page, or null for the first page
+     * @param pool Who reads the cursor, which limits how many can be open at once
+     * @return
+     * @throws IOException
+     */
+    public List<Map<String, Object>> collectCursorPage(String index, Map<String, Object> query, List<Map<String, Object>> properties, int pageSize, String after, CursorRegistry.Pool pool) throws IOException {
+        Map<String, Object> newQuery = new HashMap<>(query);
+        List<Map<String, Object>> page = new ArrayList<>();
+        boolean isFirstPage = after == null || after.isEmpty();
+        String pitId;
+        Request request;
+        JsonObject jsonObject;
+
+        if (pageSize > SCROLL_THRESHOLD) {
+            throw new IOException("Parameter 'first' must not exceed " + SCROLL_THRESHOLD);
+        }
+
+        if (isFirstPage) {
+            pitId = openPointInTime(index, pool);
+        } else {
+            JsonObject cursor = decodeCursor(after);
+            pitId = cursor.get("pit_id").getAsString();
+            newQuery.put("search_after", cursor.getAsJsonArray("search_after"));
+            openCursors.touch(pitId, System.currentTimeMillis());
+        }
+
+        // The point in time determines the index
+        newQuery.put("size", pageSize);
+        newQuery.put("pit", Map.of("id", pitId, "keep_alive", PIT_KEEP_ALIVE));
+        newQuery.put("track_total_hits", false);
+        request = new Request("GET", "/_search");
+        request.setJsonEntity(gson.toJson(newQuery));
+
+        try {
+            jsonObject = send(request, ResponseUse.HITS);
+        } catch (ResponseException e) {
+            if (isFirstPage) {
+                closePointInTime(pitId);
+            }
+
+            if (e.getResponse().getStatusLine().getStatusCode() == 404) {
+                throw new IOException("Cursor has expired, please start from the first page");
+            }
+
+            throw e;
+        } catch (IOException | RuntimeException e) {
+            if (isFirstPage) {
+                closePointInTime(pitId);
+            }
+
+            throw e;
+        }
+
+        // Opensearch may hand back a new ID for the same point in time
+        if (jsonObject.has("pit_id") && !jsonObject.get("pit_id").getAsString().equals(pitId)) {
+            String newPitId = jsonObject.get("pit_id").getAsString();
+
+            openCursors.rename(pitId, newPitId);
+            pitId = newPitId;
+        }
+
+        for (JsonElement hit : jsonObject.getAsJsonObject("hits").getAsJsonArray("hits")) {
+            JsonObject hitObj = hit.getAsJsonObject();
+            Map<String, Object> row = mapSource(hitObj.getAsJsonObject("_source"), properties);
+
+            row.put(CURSOR, encodeCursor(pitId, hitObj.getAsJsonArray("sort")));
+            page.add(row);
+        }
+
+        // Nothing comes after a short page
+        if (page.size() < pageSize) {
+            closePointInTime(pitId);
+        }
+
+        return page;
+    }
+
+    /**
+     * Retrieves a page of results whose rows are the documents' _source, instead of copies built from a property list
+     * The response is trimmed to the _source of each hit
+     * @param request The Opensearch request, for the index's _search endpoint
+     * @param query Opensearch query, with its sort order and _source includes
+     * @param renames GraphQL field -> Opensearch field, for the fields whose names differ
+     * @param pageSize Number of rows in the page
+     * @param offset Offset of the page, which must end within SCROLL_THRESHOLD results
+     * @return
+     * @throws IOException
+     */
+    public List<Map<String, Object>> collectSourcePage(Request request, Map<String, Object> query, Map<String, String> renames, int pageSize, int offset) throws IOException {
+        Map<String, Object> newQuery = new HashMap<>(query);
+        List<Map<String, Object>> page = new ArrayList<>();
+        JsonObject jsonObject;
+        JsonObject hits;
+
+        if (pageSize + offset > SCROLL_THRESHOLD) {
+            throw new IOException("Pages must end within the first " + SCROLL_THRESHOLD + " results");
+        }
+
+        newQuery.put("size", pageSize);
+        newQuery.put("from", offset);
+        newQuery.put("track_total_hits", false);
+        request.addParameter("filter_path", "hits.hits._source");
+        request.setJsonEntity(gson.toJson(newQuery));
+        jsonObject = send(request, ResponseUse.HITS);
+
+        // filter_path drops "hits" entirely when nothing matched
+        hits = jsonObject.getAsJsonObject("hits");
+
+        if (hits == null || !hits.has("hits")) {
+            return page;
+        }
+
+        for (JsonElement hit : hits.getAsJsonArray("hits")) {
+            page.add(new SourceRow(hit.getAsJsonObject().getAsJsonObject("_source"), renames, gson));
+        }
+
+        return page;
+    }
+
+    /**
+     * Retrieves every result of a query, without a limit on the number of results
+     * Results that fit in one page come back from a single search. Larger ones keep that page, and the rest are
+     * scrolled through, split into slices that are scrolled through in parallel once at least SLICE_THRESHOLD remain
+     * @param index The Opensearch index
+     * @param query Opensearch query, without a sort order
+     * @param properties GraphQL field -> Opensearch field mappings of the rows
+     * @return The rows, in no particular order
+     * @throws IOException
+     */
+    public List<Map<String, Object>> collectAll(String index, Map<String, Object> query, List<Map<String, Object>> properties) throws IOException {
+        ResultCollector collector = new ResultCollector(this::sendBody, this::inParallel, SCROLL_THRESHOLD, InventoryESService::sliceCount);
+
+        return collector.collectAll(index, query, sourceIncludes(properties), source -> mapSource(source, properties));
+    }
+
+    // Sends a request whose body is built from Java objects
+    private JsonObject sendBody(String method, String endpoint, Map<String, String> parameters, Map<String, Object> body) throws IOException {
+        Request request = new Request(method, endpoint);
+
+        for (Map.Entry<String, String> parameter : parameters.entrySet()) {
+            request.addParameter(parameter.getKey(), parameter.getValue());
+        }
+
+        request.setJsonEntity(gson.toJson(body));
+
+        return send(request);
+    }
+
+    /**
+     * The number of slices to scroll through a query's results in
+     * Every slice costs its own scroll and clear-scroll, which only pays off for large result sets
+     * @param total Number of results
+     * @return SLICES, or 1 for fewer than SLICE_THRESHOLD results
+     */
+    static int sliceCount(int total) {
+        return total < SLICE_THRESHOLD ? 1 : SLICES;
+    }
+
+    /**
+     * Runs Opensearch requests at the same time, on the pool shared by all requests
+     * @param tasks The requests
+     * @return The results, in the order of the tasks
+     * @throws IOException If any of the requests fails
+     */
+    public <T> List<T> inParallel(List<Callable<T>> tasks) throws IOException {
+        return inParallel(tasks, sliceExecutor);
+    }
+
+    /**
+     * Runs Opensearch requests at the same time, on a pool of the caller's
+     * @param tasks The requests
+     * @param executor The pool, which bounds how many of the requests run at once
+     * @return The results, in the order of the tasks
+     * @throws IOException If any of the requests fails
+     */
+    public <T> List<T> inParallel(List<Callable<T>> tasks, ExecutorService executor) throws IOException {
+        List<Future<T>> futures = new ArrayList<>();
+        List<T> results = new ArrayList<>();
+
+        for (Callable<T> task : tasks) {
+            futures.add(executor.submit(task));
+        }
+
+        try {
+            for (Future<T> future : futures) {
+                results.add(future.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for Opensearch");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            throw cause instanceof IOException ? (IOException) cause : new IOException(cause);
+        } finally {
+            for (Future<T> future : futures) {
+                future.cancel(true);
+            }
+        }
+
+        return results;
+    }
+
+    // The Opensearch fields of a property list
+    private List<String> sourceIncludes(List<Map<String, Object>> properties) {
+        List<String> includes = new ArrayList<>();
+
+        for (Map<String, Object> property : properties) {
+            includes.add((String) property.get("osName"));
+        }
+
+        return includes;
+    }
+
+    /**
+     * Maps an Opensearch document to a GraphQL result
+     * @param source The document's _source
+     * @param properties GraphQL field -> Opensearch field mappings
+     * @return
+     */
+    public Map<String, Object> mapSource(JsonObject source, List<Map<String, Object>> properties) {
+        Map<String, Object> row = new HashMap<>();
+
+        for (Map<String, Object> property : properties) {
+            String gqlName = (String) property.get("gqlName");
+            JsonElement value = source == null ? null : source.get((String) property.get("osName"));
+            Object nestedRaw = property.get("nested");
+
+            if (value == null || value.isJsonNull()) {
+                row.put(gqlName, null);
+            } else if (TypeChecker.isOfType(nestedRaw, new TypeToken<List<Map<String, Object>>>() {})) {
+                @SuppressWarnings("unchecked")
+                List<Map<String, Object>> nested = (List<Map<String, Object>>) nestedRaw;
+
+                if (value.isJsonArray()) {
+                    List<Map<String, Object>> items = new ArrayList<>();
+
+                    for (JsonElement item : value.getAsJsonArray()) {
+                        items.add(mapSource(item.getAsJsonObject(), nested));
+                    }
+
+                    row.put(gqlName, items);
+                } else {
+                    row.put(gqlName, mapSource(value.getAsJsonObject(), nested));
+                }
+            } else {
+                row.put(gqlName, gson.fromJson(value, Object.class));
+            }
+        }
+
+        return row;
+    }
+
+    // Cursors are opaque to clients: the point in time plus the sort values of a row
+    private String encodeCursor(String pitId, JsonArray sortValues) {
+        JsonObject cursor = new JsonObject();
+
+        cursor.addProperty("pit_id", pitId);
+        cursor.add("search_after", sortValues);
+
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(gson.toJson(cursor).getBytes(StandardCharsets.UTF_8));
+    }
+
+    private JsonObject decodeCursor(String cursor) throws IOException {
+        try {
+            String json = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            JsonObject decoded = JsonParser.parseString(json).getAsJsonObject();
+
+            if (!decoded.has("pit_id") || !decoded.has("search_after")) {
+                throw new IOException("Invalid cursor");
+            }
+
+            return decoded;
+        } catch (IllegalArgumentException | JsonParseException | IllegalStateException e) {
+            throw new IOException("Invalid cursor");
+        }
+    }
+
+    /**
+     * The maximum number of values returned for a facet filter
+     * @param field The facet filter
+     * @return
+     */
+    public int bucketLimit(String field) {
+        return bucketLimits.getOrDefault(field, MAX_BUCKETS);
+    }
+
+    // A base query whose filter clause is a template slot
+    // Templates are only used for size 0 requests, so total hits are never read
+    private Map<String, Object> templateQuery() {
+        return Map.of("query", "{{query}}", "track_total_hits", false);
+    }
+
+    // Serializes the filter clause of a query for a template slot
+    private String serializeFilter(Map<String, Object> query) {
+        return gson.toJson(withoutInnerHits(query.get("query")));
+    }
+
+    /**
+     * Copies a query clause without its inner_hits sections
+     * inner_hits are only useful when reading hits, not counts or aggregations
+     * @param clause The query clause
+     * @return
+     */
+    private Object withoutInnerHits(Object clause) {
+        if (clause instanceof Map<?, ?> map) {
+            Map<Object, Object> copy = new HashMap<>();
+
+            // Terms clauses have no inner_hits, and can hold whole cohorts that aren't worth copying
+            if (map.containsKey("terms")) {
+                return clause;
+            }
+
+            for (Map.Entry<?, ?> entry : map.entrySet()) {
+                if (!"inner_hits".equals(entry.getKey())) {
+                    copy.put(entry.getKey(), withoutInnerHits(entry.getValue()));
+                }
+            }
+
+            return copy;
+        } else if (clause instanceof List<?> list) {
+            List<Object> copy = new ArrayList<>(list.size());
+
+            for (Object item : list) {
+                copy.add(withoutInnerHits(item));
+            }
+
+            return copy;
+        }
+
+        return clause;
+    }
+
+    private QueryTemplate compileTemplate(Map<String, Object> shape) {
+        return QueryTemplate.compile(gson.toJson(shape), TEMPLATE_MARKERS);
+    }
+
     public Map<String, JsonArray> collectNodeCountAggs(JsonObject jsonObject, String nodeName) {
         Map<String, JsonArray> data = new HashMap<>();
         JsonObject aggs = jsonObject.getAsJsonObject("aggregations");
@@ -499,6 +1312,64 @@ public class InventoryESService extends ESService {
         return data;
     }
 
+    /**
+     * Retrieves a page of a composite aggregation added by addCompositeAggregations()
+     * @param jsonObject The Opensearch response
+     * @param field The aggregated field
+     * @param cardinalityAggName Opensearch field for identifying unique results, or null for doc counts
+     * @return Map with the page's "values" and the "after" key of the next page, null on the last page
+     */
+    public Map<String, Object> collectCompositePage(JsonObject jsonObject, String field, String cardinalityAggName) {
+        Map<String, Object> page = new HashMap<>();
+        List<Map<String, Object>> values = new ArrayList<>();
+        JsonObject aggs = jsonObject.getAsJsonObject("aggregations").getAsJsonObject(field);
+        JsonArray buckets = aggs.getAsJsonArray("buckets");
+        boolean isNested = cardinalityAggName != null && cardinalityAggName.contains(".");
+
+        for (var bucket: buckets) {
+            JsonObject bucketObj = bucket.getAsJsonObject();
+            int count;
+
+            if (cardinalityAggName == null) {
+                count = bucketObj.get("doc_count").getAsInt();
+            } else if (isNested) {
+                count = bucketObj.getAsJsonObject("cardinality_count").getAsJsonObject("nested_cardinality_count").get("value").getAsInt();
+            } else {
+                count = bucketObj.getAsJsonObject("cardinality_count").get("value").getAsInt();
+            }
+
+            values.add(Map.ofEntries(
+                Map.entry("group", bucketObj.getAsJsonObject("key").get("value").getAsString()),
+                Map.entry("subjects", count)
+            ));
+        }
+
+        page.put("values", values);
+        page.put("after", aggs.has("after_key") && buckets.size() > 0 ? aggs.getAsJsonObject("after_key").get("value").getAsString() : null);
+
+        return page;
+    }
+
+    // Retrieves exact facet filter counts, in the order of the buckets
+    public List<Map<String, Object>> collectExactCounts(JsonObject jsonObject) {
+        return collectExactCountBuckets(jsonObject.getAsJsonObject("aggregations").getAsJsonObject(EXACT_COUNT_AGG_NAME));
+    }
+
+    // Retrieves the participant counts of an aggregation built by addExactCountAggregations() or exactCountAggregation()
+    public List<Map<String, Object>> collectExactCountBuckets(JsonObject aggs) {
+        List<Map<String, Object>> data = new ArrayList<>();
+        JsonArray buckets = aggs.getAsJsonObject("agg_buckets").getAsJsonArray("buckets");
+
+        for (var bucket: buckets) {
+            data.add(Map.ofEntries(
+                Map.entry("group", bucket.getAsJsonObject().get("key").getAsString()),
+                Map.entry("subjects", bucket.getAsJsonObject().getAsJsonObject("top_reverse_nested").get("doc_count").getAsInt())
+            ));
+        }
+
+        return data;
+    }
+
     // Retrieves recalculated facet filter counts
     public Map<String, Integer> collectCustomTerms(JsonObject jsonObject, String aggName) {
         Map<String, Integer> data = new HashMap<>();
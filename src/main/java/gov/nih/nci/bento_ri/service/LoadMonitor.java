@@ -0,0 +1,48 @@
+package gov.nih.nci.bento_ri.service;
+
+/**
+ * Tracks how busy the Opensearch cluster looks from the responses it sends back, so that optional work can back off
+ * The cluster is busy for BACKOFF_MILLIS after it rejects a request, and while the moving average latency of its
+ * responses is above BUSY_LATENCY_MILLIS
+ */
+public class LoadMonitor {
+    public static final long BACKOFF_MILLIS = 30000;
+    public static final double BUSY_LATENCY_MILLIS = 1000;
+    // Weight of each new response in the moving average
+    static final double LATENCY_WEIGHT = 0.2;
+
+    private double averageLatencyMillis = 0;
+    private long backOffUntil = 0;
+
+    /**
+     * Records a response
+     * @param latencyMillis How long the request took
+     * @param isRejected Whether the cluster refused the request because it's overloaded, such as with a 429
+     * @param now Current time, in milliseconds
+     */
+    public synchronized void record(long latencyMillis, boolean isRejected, long now) {
+        averageLatencyMillis += LATENCY_WEIGHT * (latencyMillis - averageLatencyMillis);
+
+        if (isRejected) {
+            backOffUntil = now + BACKOFF_MILLIS;
+        }
+    }
+
+    /**
+     * Whether optional work should be skipped for now
+     * @param now Current time, in milliseconds
+     * @return Whether the cluster rejected a request recently or has been slow to respond
+     */
+    public synchronized boolean isBusy(long now) {
+        return now < backOffUntil || averageLatencyMillis > BUSY_LATENCY_MILLIS;
+    }
+
+    /**
+     * Whether a response status means the cluster is overloaded
+     * @param status HTTP status of the response
+     * @return
+     */
+    public static boolean isRejection(int status) {
+        return status == 429 || status == 503;
+    }
+}
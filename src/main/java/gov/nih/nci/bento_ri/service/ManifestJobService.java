@@ -0,0 +1,355 @@
+package gov.nih.nci.bento_ri.service;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Builds manifests in the background, so that large exports don't hold request threads
+ * Finished manifests are spooled to disk gzip-compressed, next to a record of the job, so they can still be downloaded
+ * after a restart. They're deleted after manifest.jobs.retention_hours, or sooner once more than
+ * manifest.jobs.max_retained have finished. Jobs cut short by a restart are deleted when the service starts
+ * Each job belongs to the caller that submitted it, and is only found for that caller
+ */
+@Service
+public class ManifestJobService {
+    private static final Logger logger = LogManager.getLogger(ManifestJobService.class);
+    static final String MANIFEST_EXTENSION = ".gz";
+    static final String PARTIAL_EXTENSION = ".partial";
+    static final String RECORD_EXTENSION = ".json";
+
+    public enum Status {
+        QUEUED,
+        RUNNING,
+        DONE,
+        FAILED
+    }
+
+    // Writes the rows of a manifest
+    public interface Export {
+        void write(ManifestWriter writer) throws IOException;
+    }
+
+    public static class Job {
+        public final String id;
+        public final String type;
+        public final ManifestWriter.Format format;
+        public final long createdAt;
+        // The submitter's caller ID, or null if the submitter had none
+        private final String owner;
+        private volatile Status status = Status.QUEUED;
+        private volatile ManifestWriter writer;
+        private volatile String error;
+        private volatile long finishedAt;
+        private volatile long rowCount;
+
+        Job(String type, ManifestWriter.Format format, String owner) {
+            this(UUID.randomUUID().toString(), type, format, System.currentTimeMillis(), owner);
+        }
+
+        private Job(String id, String type, ManifestWriter.Format format, long createdAt, String owner) {
+            this.id = id;
+            this.type = type;
+            this.format = format;
+            this.createdAt = createdAt;
+            this.owner = owner;
+        }
+
+        public Status getStatus() {
+            return status;
+        }
+
+        public long getRowCount() {
+            return writer == null ? rowCount : writer.getRowCount();
+        }
+
+        public String getError() {
+            return error;
+        }
+
+        public String getFileName() {
+            return type + "." + format.extension + ".gz";
+        }
+    }
+
+    private final Gson gson = new Gson();
+    private final Path directory;
+    private final int retentionHours;
+    private final int maxRetained;
+    private final Map<String, Job> jobs = new ConcurrentHashMap<>();
+    private final ThreadPoolExecutor workers;
+    private final ScheduledExecutorService cleaner = Executors.newSingleThreadScheduledExecutor();
+
+    public ManifestJobService(
+            @Value("${manifest.jobs.directory:}") String directory,
+            @Value("${manifest.jobs.workers:2}") int workerCount,
+            @Value("${manifest.jobs.queue_size:20}") int queueSize,
+            @Value("${manifest.jobs.retention_hours:24}") int retentionHours,
+            @Value("${manifest.jobs.max_retained:200}") int maxRetained) throws IOException {
+        this.directory = directory.isEmpty()
+            ? Path.of(System.getProperty("java.io.tmpdir"), "manifest-jobs")
+            : Path.of(directory);
+        this.retentionHours = retentionHours;
+        this.maxRetained = maxRetained;
+        Files.createDirectories(this.directory);
+
+        // Bounded, so that exports can't take over the heap or the Opensearch cluster
+        this.workers = new ThreadPoolExecutor(workerCount, workerCount, 0, TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<>(queueSize), runnable -> {
+                Thread thread = new Thread(runnable, "manifest-job");
+                thread.setDaemon(true);
+                thread.setPriority(Thread.MIN_PRIORITY);
+                return thread;
+            });
+        cleaner.scheduleAtFixedRate(this::deleteExpiredJobs, 1, 1, TimeUnit.HOURS);
+    }
+
+    /**
+     * Queues a manifest to be built
+     * @param type What the manifest contains, used to name the file
+     * @param format The manifest's format
+     * @param owner The submitter's caller ID, or null if the submitter has none
+     * @param export Writes the manifest's rows
+     * @return The queued job
+     * @throws IOException If the queue is full
+     */
+    public Job submit(String type, ManifestWriter.Format format, String owner, Export export) throws IOException {
+        Job job = new Job(type, format, owner);
+
+        jobs.put(job.id, job);
+
+        try {
+            workers.execute(() -> run(job, export));
+        } catch (RejectedExecutionException e) {
+            jobs.remove(job.id);
+            throw new IOException("Too many manifests are being built, please try again later");
+        }
+
+        return job;
+    }
+
+    /**
+     * Finds a job of a caller
+     * @param id The job ID
+     * @param owner The caller ID, or null if the caller has none
+     * @return The job, or null if there's no such job or it was submitted by someone else
+     */
+    public Job getJob(String id, String owner) {
+        Job job = jobs.get(id);
+
+        return job == null || !Objects.equals(job.owner, owner) ? null : job;
+    }
+
+    /**
+     * The finished manifest of a job
+     * @param job A job whose status is DONE
+     * @return
+     */
+    public Path getFile(Job job) {
+        return directory.resolve(job.id + MANIFEST_EXTENSION);
+    }
+
+    private Path getRecord(String id) {
+        return directory.resolve(id + RECORD_EXTENSION);
+    }
+
+    private void run(Job job, Export export) {
+        Path partialFile = directory.resolve(job.id + PARTIAL_EXTENSION);
+
+        job.status = Status.RUNNING;
+
+        try (OutputStream out = new GZIPOutputStream(Files.newOutputStream(partialFile))) {
+            job.writer = new ManifestWriter(out, job.format);
+            export.write(job.writer);
+            job.writer.flush();
+        } catch (IOException | RuntimeException e) {
+            logger.error("Manifest job " + job.id + " failed: " + e.toString());
+            job.error = e.getMessage();
+            job.status = Status.FAILED;
+            job.finishedAt = System.currentTimeMillis();
+            deleteQuietly(partialFile);
+            deleteExcessJobs();
+            return;
+        }
+
+        // Only finished manifests get the final name, so downloads never see a partial file
+        // The record is written last, so a manifest without one was never finished
+        try {
+            Files.move(partialFile, getFile(job), StandardCopyOption.ATOMIC_MOVE);
+            job.rowCount = job.writer.getRowCount();
+            job.finishedAt = System.currentTimeMillis();
+            saveRecord(job);
+            job.status = Status.DONE;
+        } catch (IOException e) {
+            logger.error("Unable to save manifest job " + job.id + ": " + e.toString());
+            job.error = e.getMessage();
+            job.status = Status.FAILED;
+            job.finishedAt = System.currentTimeMillis();
+            deleteQuietly(partialFile);
+            deleteQuietly(getFile(job));
+        }
+
+        logger.info("Manifest job " + job.id + " wrote " + job.getRowCount() + " rows of " + job.type);
+        deleteExcessJobs();
+    }
+
+    private void saveRecord(Job job) throws IOException {
+        JsonObject record = new JsonObject();
+        Path partialRecord = directory.resolve(job.id + RECORD_EXTENSION + PARTIAL_EXTENSION);
+
+        record.addProperty("id", job.id);
+        record.addProperty("type", job.type);
+        record.addProperty("owner", job.owner);
+        record.addProperty("format", job.format.extension);
+        record.addProperty("rows", job.rowCount);
+        record.addProperty("created_at", job.createdAt);
+        record.addProperty("finished_at", job.finishedAt);
+        Files.writeString(partialRecord, gson.toJson(record), StandardCharsets.UTF_8);
+        Files.move(partialRecord, getRecord(job.id), StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    // Picks up the finished jobs of previous runs, and deletes whatever a restart cut short
+    // Only files named after a job ID are touched, so other files in the directory are left alone
+    @PostConstruct
+    public void restoreJobs() throws IOException {
+        int restoredCount = 0;
+
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                String id = name.substring(0, name.indexOf('.') == -1 ? name.length() : name.indexOf('.'));
+
+                if (!isJobId(id)) {
+                    continue;
+                }
+
+                if (name.equals(id + RECORD_EXTENSION)) {
+                    Job job = readRecord(file);
+
+                    if (job != null && Files.exists(getFile(job))) {
+                        jobs.put(job.id, job);
+                        restoredCount++;
+                    } else {
+                        deleteQuietly(file);
+                    }
+                } else if (name.endsWith(PARTIAL_EXTENSION)
+                        || (name.equals(id + MANIFEST_EXTENSION) && !Files.exists(getRecord(id)))) {
+                    deleteQuietly(file);
+                }
+            }
+        }
+
+        logger.info("Restored " + restoredCount + " finished manifest jobs from " + directory);
+        deleteExpiredJobs();
+        deleteExcessJobs();
+    }
+
+    private Job readRecord(Path file) {
+        try {
+            JsonObject record = gson.fromJson(Files.readString(file, StandardCharsets.UTF_8), JsonObject.class);
+            Job job = new Job(
+                record.get("id").getAsString(),
+                record.get("type").getAsString(),
+                ManifestWriter.Format.fromName(record.get("format").getAsString()),
+                record.get("created_at").getAsLong(),
+                record.has("owner") && !record.get("owner").isJsonNull() ? record.get("owner").getAsString() : null
+            );
+
+            job.rowCount = record.get("rows").getAsLong();
+            job.finishedAt = record.get("finished_at").getAsLong();
+            job.status = Status.DONE;
+
+            return job;
+        } catch (IOException | RuntimeException e) {
+            logger.warn("Unable to read manifest job record " + file + ": " + e.toString());
+            return null;
+        }
+    }
+
+    static boolean isJobId(String name) {
+        try {
+            return UUID.fromString(name).toString().equals(name);
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    private void deleteExpiredJobs() {
+        long expiry = System.currentTimeMillis() - TimeUnit.HOURS.toMillis(retentionHours);
+
+        jobs.values().removeIf(job -> {
+            if (job.finishedAt == 0 || job.finishedAt > expiry) {
+                return false;
+            }
+
+            deleteJobFiles(job);
+            return true;
+        });
+    }
+
+    // Keeps at most maxRetained finished jobs, deleting the oldest first
+    private synchronized void deleteExcessJobs() {
+        List<Job> finishedJobs = new ArrayList<>();
+
+        for (Job job : jobs.values()) {
+            if (job.finishedAt != 0) {
+                finishedJobs.add(job);
+            }
+        }
+
+        finishedJobs.sort(Comparator.comparingLong((Job job) -> job.finishedAt).reversed());
+
+        for (Job job : finishedJobs.subList(Math.min(maxRetained, finishedJobs.size()), finishedJobs.size())) {
+            jobs.remove(job.id);
+            deleteJobFiles(job);
+        }
+    }
+
+    private void deleteJobFiles(Job job) {
+        deleteQuietly(getRecord(job.id));
+        deleteQuietly(getFile(job));
+    }
+
+    private void deleteQuietly(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            logger.warn("Unable to delete " + file + ": " + e.toString());
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        workers.shutdownNow();
+        cleaner.shutdownNow();
+    }
+}
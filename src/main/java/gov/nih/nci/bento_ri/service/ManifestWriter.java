@@ -0,0 +1,227 @@
+package gov.nih.nci.bento_ri.service;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+
+import gov.nih.nci.bento.utility.TypeChecker;
+
+import com.google.common.reflect.TypeToken;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * Writes overview table rows to a manifest file, one row at a time
+ * Nested fields become one column per nested field, with multiple values joined by VALUE_SEPARATOR
+ */
+public class ManifestWriter {
+    public static final String VALUE_SEPARATOR = ";";
+
+    public enum Format {
+        CSV("text/csv", "csv"),
+        TSV("text/tab-separated-values", "tsv"),
+        NDJSON("application/x-ndjson", "ndjson");
+
+        public final String contentType;
+        public final String extension;
+
+        Format(String contentType, String extension) {
+            this.contentType = contentType;
+            this.extension = extension;
+        }
+
+        /**
+         * Looks up a format by its extension
+         * @param name The format's extension, such as "csv"
+         * @return
+         */
+        public static Format fromName(String name) {
+            for (Format format : values()) {
+                if (format.extension.equalsIgnoreCase(name)) {
+                    return format;
+                }
+            }
+
+            throw new IllegalArgumentException("Unknown manifest format \"" + name + "\"");
+        }
+    }
+
+    private final Writer writer;
+    private final Format format;
+    private final Gson gson = new GsonBuilder().serializeNulls().create();
+    private List<String[]> columns = List.of(); // GraphQL field, nested GraphQL field or null
+    private volatile long rowCount = 0; // Read by other threads to report progress
+
+    public ManifestWriter(OutputStream out, Format format) {
+        this.writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+        this.format = format;
+    }
+
+    /**
+     * Writes the header row, and sets the columns of the rows that follow
+     * @param properties GraphQL field -> Opensearch field mappings of the rows
+     * @throws IOException
+     */
+    public void writeHeader(List<Map<String, Object>> properties) throws IOException {
+        List<String[]> newColumns = new ArrayList<>();
+
+        for (Map<String, Object> property : properties) {
+            String gqlName = (String) property.get("gqlName");
+            Object nestedRaw = property.get("nested");
+
+            if (TypeChecker.isOfType(nestedRaw, new TypeToken<List<Map<String, Object>>>() {})) {
+                @SuppressWarnings("unchecked")
+                List<Map<String, Object>> nested = (List<Map<String, Object>>) nestedRaw;
+
+                for (Map<String, Object> nestedProperty : nested) {
+                    newColumns.add(new String[]{gqlName, (String) nestedProperty.get("gqlName")});
+                }
+            } else {
+                newColumns.add(new String[]{gqlName, null});
+            }
+        }
+
+        columns = newColumns;
+
+        if (format == Format.NDJSON) {
+            return;
+        }
+
+        List<String> names = new ArrayList<>();
+
+        for (String[] column : columns) {
+            names.add(column[1] == null ? column[0] : column[0] + "." + column[1]);
+        }
+
+        writeLine(names);
+    }
+
+    /**
+     * Writes a row
+     * @param row A row from the overview table, mapped to GraphQL fields
+     * @throws IOException
+     */
+    public void writeRow(Map<String, Object> row) throws IOException {
+        rowCount++;
+
+        if (format == Format.NDJSON) {
+            Map<String, Object> fields = new HashMap<>(row);
+            fields.remove(InventoryESService.CURSOR);
+            writer.write(gson.toJson(fields));
+            writer.write("\n");
+            return;
+        }
+
+        List<String> values = new ArrayList<>();
+
+        for (String[] column : columns) {
+            Object value = row.get(column[0]);
+
+            if (column[1] != null) {
+                value = nestedValues(value, column[1]);
+            }
+
+            values.add(toText(value));
+        }
+
+        writeLine(values);
+    }
+
+    public long getRowCount() {
+        return rowCount;
+    }
+
+    public void flush() throws IOException {
+        writer.flush();
+    }
+
+    // Values of a nested field, from one nested object or a list of them
+    private static Object nestedValues(Object value, String nestedName) {
+        if (value instanceof Map) {
+            return ((Map<?, ?>) value).get(nestedName);
+        }
+
+        if (value instanceof List) {
+            List<Object> values = new ArrayList<>();
+
+            for (Object item : (List<?>) value) {
+                if (item instanceof Map) {
+                    values.add(((Map<?, ?>) item).get(nestedName));
+                }
+            }
+
+            return values;
+        }
+
+        return null;
+    }
+
+    // Whole numbers come back from Opensearch as doubles, so print them without a decimal point
+    // Entities without column mappings, such as the diagnoses of a cohort manifest, are written as JSON
+    String toText(Object value) {
+        if (value == null) {
+            return "";
+        }
+
+        if (value instanceof Map) {
+            return gson.toJson(value);
+        }
+
+        if (value instanceof List) {
+            return ((List<?>) value).stream()
+                .map(this::toText)
+                .collect(Collectors.joining(VALUE_SEPARATOR));
+        }
+
+        if (value instanceof Double && (Double) value == Math.rint((Double) value) && !((Double) value).isInfinite()) {
+            return Long.toString(((Double) value).longValue());
+        }
+
+        return value.toString();
+    }
+
+    private void writeLine(List<String> values) throws IOException {
+        for (int i = 0; i < values.size(); i++) {
+            if (i > 0) {
+                writer.write(format == Format.CSV ? "," : "\t");
+            }
+
+            writer.write(format == Format.CSV ? escapeCsv(values.get(i)) : escapeTsv(values.get(i)));
+        }
+
+        writer.write("\n");
+    }
+
+    private static String escapeCsv(String value) {
+        value = escapeFormula(value);
+
+        if (value.contains(",") || value.contains("\"") || value.contains("\n") || value.contains("\r")) {
+            return "\"" + value.replace("\"", "\"\"") + "\"";
+        }
+
+        return value;
+    }
+
+    // Spreadsheets run values starting with these as formulas, so they're prefixed with ' to be read as text instead
+    static String escapeFormula(String value) {
+        if (!value.isEmpty() && "=+-@\t\r".indexOf(value.charAt(0)) >= 0) {
+            return "'" + value;
+        }
+
+        return value;
+    }
+
+    // TSV has no quoting, so separators inside values become spaces
+    private static String escapeTsv(String value) {
+        return escapeFormula(value).replace('\t', ' ').replace('\n', ' ').replace('\r', ' ');
+    }
+}
@@ -0,0 +1,527 @@
+package gov.nih.nci.bento_ri.service;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.google.gson.reflect.TypeToken;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * A read-only, memory-mapped copy of one overview table, answering pages without Opensearch
+ * Each filter column is stored on its own: strings are dictionary-encoded, numbers are stored as doubles,
+ * and each sort key has a row permutation per direction, so a page is a walk over one permutation
+ *
+ * Files in a snapshot's directory, all big-endian:
+ *   manifest.json - row count and column names, written last so partial snapshots are never opened
+ *   rows.off, rows.bin - each row as JSON, and where each row starts
+ *   str.COLUMN.dict, str.COLUMN.off, str.COLUMN.val - sorted values, and each row's value codes
+ *   num.COLUMN.off, num.COLUMN.val - each row's numeric values
+ *   sort.KEY.asc, sort.KEY.desc - rows in sort order, rows without a value last
+ */
+public final class OverviewSnapshot {
+    private static final String MANIFEST = "manifest.json";
+    private static final Gson gson = new GsonBuilder().serializeNulls().create();
+    private static final Type ROW_TYPE = new TypeToken<Map<String, Object>>() {}.getType();
+
+    // A string column: sorted distinct values, and the codes of each row's values
+    private static final class StringColumn {
+        final String[] dictionary;
+        final IntBuffer offsets;
+        final IntBuffer codes;
+
+        StringColumn(String[] dictionary, IntBuffer offsets, IntBuffer codes) {
+            this.dictionary = dictionary;
+            this.offsets = offsets;
+            this.codes = codes;
+        }
+    }
+
+    // A numeric column: each row's values
+    private static final class NumberColumn {
+        final IntBuffer offsets;
+        final DoubleBuffer values;
+
+        NumberColumn(IntBuffer offsets, DoubleBuffer values) {
+            this.offsets = offsets;
+            this.values = values;
+        }
+    }
+
+    private final int rowCount;
+    private final LongBuffer rowOffsets;
+    private final ByteBuffer rows;
+    private final Map<String, StringColumn> stringColumns;
+    private final Map<String, NumberColumn> numberColumns;
+    private final Map<String, IntBuffer> ascending;
+    private final Map<String, IntBuffer> descending;
+
+    private OverviewSnapshot(int rowCount, LongBuffer rowOffsets, ByteBuffer rows, Map<String, StringColumn> stringColumns,
+            Map<String, NumberColumn> numberColumns, Map<String, IntBuffer> ascending, Map<String, IntBuffer> descending) {
+        this.rowCount = rowCount;
+        this.rowOffsets = rowOffsets;
+        this.rows = rows;
+        this.stringColumns = stringColumns;
+        this.numberColumns = numberColumns;
+        this.ascending = ascending;
+        this.descending = descending;
+    }
+
+    /**
+     * Whether a complete snapshot has been written to a directory
+     * @param directory The snapshot's directory
+     * @return
+     */
+    public static boolean exists(Path directory) {
+        return Files.isRegularFile(directory.resolve(MANIFEST));
+    }
+
+    /**
+     * Writes a snapshot of an overview table
+     * @param directory Where to write the snapshot, which must not exist yet
+     * @param sources Every document of the table, keyed by Opensearch field
+     * @param fields GraphQL field -> Opensearch field of the table's rows
+     * @param stringColumns Opensearch fields that can be filtered by value
+     * @param numberColumns Opensearch fields that can be filtered by range
+     * @param sortKeys Opensearch fields that the table can be sorted by, with "." between nested fields
+     * @throws IOException
+     */
+    public static void write(Path directory, List<Map<String, Object>> sources, Map<String, String> fields,
+            Set<String> stringColumns, Set<String> numberColumns, Set<String> sortKeys) throws IOException {
+        JsonObject manifest = new JsonObject();
+
+        Files.createDirectories(directory);
+        writeRows(directory, sources, fields);
+
+        for (String column : stringColumns) {
+            writeStringColumn(directory, column, sources);
+        }
+
+        for (String column : numberColumns) {
+            writeNumberColumn(directory, column, sources);
+        }
+
+        for (String sortKey : sortKeys) {
+            writeSortKey(directory, sortKey, sources);
+        }
+
+        manifest.addProperty("rows", sources.size());
+        manifest.add("string_columns", gson.toJsonTree(new TreeSet<>(stringColumns)));
+        manifest.add("number_columns", gson.toJsonTree(new TreeSet<>(numberColumns)));
+        manifest.add("sort_keys", gson.toJsonTree(new TreeSet<>(sortKeys)));
+        Files.writeString(directory.resolve(MANIFEST), gson.toJson(manifest));
+    }
+
+    /**
+     * Maps a snapshot into memory
+     * @param directory The snapshot's directory
+     * @return
+     * @throws IOException If the snapshot is incomplete or can't be read
+     */
+    public static OverviewSnapshot open(Path directory) throws IOException {
+        JsonObject manifest;
+        Map<String, StringColumn> stringColumns = new HashMap<>();
+        Map<String, NumberColumn> numberColumns = new HashMap<>();
+        Map<String, IntBuffer> ascending = new HashMap<>();
+        Map<String, IntBuffer> descending = new HashMap<>();
+
+        if (!exists(directory)) {
+            throw new IOException("No snapshot in " + directory);
+        }
+
+        manifest = JsonParser.parseString(Files.readString(directory.resolve(MANIFEST))).getAsJsonObject();
+
+        for (String column : names(manifest, "string_columns")) {
+            stringColumns.put(column, new StringColumn(
+                readDictionary(directory.resolve(fileName("str", column, "dict"))),
+                map(directory.resolve(fileName("str", column, "off"))).asIntBuffer(),
+                map(directory.resolve(fileName("str", column, "val"))).asIntBuffer()
+            ));
+        }
+
+        for (String column : names(manifest, "number_columns")) {
+            numberColumns.put(column, new NumberColumn(
+                map(directory.resolve(fileName("num", column, "off"))).asIntBuffer(),
+                map(directory.resolve(fileName("num", column, "val"))).asDoubleBuffer()
+            ));
+        }
+
+        for (String sortKey : names(manifest, "sort_keys")) {
+            ascending.put(sortKey, map(directory.resolve(fileName("sort", sortKey, "asc"))).asIntBuffer());
+            descending.put(sortKey, map(directory.resolve(fileName("sort", sortKey, "desc"))).asIntBuffer());
+        }
+
+        return new OverviewSnapshot(
+            manifest.get("rows").getAsInt(),
+            map(directory.resolve("rows.off")).asLongBuffer(),
+            map(directory.resolve("rows.bin")),
+            stringColumns,
+            numberColumns,
+            ascending,
+            descending
+        );
+    }
+
+    public int getRowCount() {
+        return rowCount;
+    }
+
+    /**
+     * Retrieves a page of the table
+     * Rows match when every filter matches at least one of their values, as with Opensearch terms and range queries
+     * @param terms Opensearch field -> values to match
+     * @param ranges Opensearch field -> lower and upper bounds, either of which can be null
+     * @param sortKey Opensearch field to sort by
+     * @param isDescending Whether to sort in descending order
+     * @param pageSize Number of rows in the page
+     * @param offset Offset of the page
+     * @return The page, or null if the snapshot can't answer the request
+     */
+    public List<Map<String, Object>> page(Map<String, Set<String>> terms, Map<String, Double[]> ranges,
+            String sortKey, boolean isDescending, int pageSize, int offset) {
+        IntBuffer order = (isDescending ? descending : ascending).get(sortKey);
+        List<StringColumn> termColumns = new ArrayList<>();
+        List<BitSet> termCodes = new ArrayList<>();
+        List<NumberColumn> rangeColumns = new ArrayList<>();
+        List<Double[]> rangeBounds = new ArrayList<>();
+        List<Map<String, Object>> page = new ArrayList<>();
+        int skipped = 0;
+
+        if (order == null) {
+            return null;
+        }
+
+        for (Map.Entry<String, Set<String>> term : terms.entrySet()) {
+            StringColumn column = stringColumns.get(term.getKey());
+            BitSet codes;
+
+            if (column == null) {
+                return null;
+            }
+
+            codes = new BitSet(column.dictionary.length);
+
+            for (String value : term.getValue()) {
+                int code = Arrays.binarySearch(column.dictionary, value);
+
+                if (code >= 0) {
+                    codes.set(code);
+                }
+            }
+
+            // None of the values occur, so nothing matches
+            if (codes.isEmpty()) {
+                return page;
+            }
+
+            termColumns.add(column);
+            termCodes.add(codes);
+        }
+
+        for (Map.Entry<String, Double[]> range : ranges.entrySet()) {
+            NumberColumn column = numberColumns.get(range.getKey());
+
+            if (column == null) {
+                return null;
+            }
+
+            rangeColumns.add(column);
+            rangeBounds.add(range.getValue());
+        }
+
+        for (int i = 0; i < rowCount && page.size() < pageSize; i++) {
+            int row = order.get(i);
+
+            if (!matches(row, termColumns, termCodes, rangeColumns, rangeBounds)) {
+                continue;
+            }
+
+            if (skipped < offset) {
+                skipped++;
+                continue;
+            }
+
+            page.add(readRow(row));
+        }
+
+        return page;
+    }
+
+    private static boolean matches(int row, List<StringColumn> termColumns, List<BitSet> termCodes,
+            List<NumberColumn> rangeColumns, List<Double[]> rangeBounds) {
+        for (int i = 0; i < termColumns.size(); i++) {
+            StringColumn column = termColumns.get(i);
+            BitSet codes = termCodes.get(i);
+            boolean isMatch = false;
+
+            for (int j = column.offsets.get(row); j < column.offsets.get(row + 1) && !isMatch; j++) {
+                isMatch = codes.get(column.codes.get(j));
+            }
+
+            if (!isMatch) {
+                return false;
+            }
+        }
+
+        for (int i = 0; i < rangeColumns.size(); i++) {
+            NumberColumn column = rangeColumns.get(i);
+            Double lower = rangeBounds.get(i)[0];
+            Double upper = rangeBounds.get(i)[1];
+            boolean isMatch = false;
+
+            for (int j = column.offsets.get(row); j < column.offsets.get(row + 1) && !isMatch; j++) {
+                double value = column.values.get(j);
+                isMatch = (lower == null || value >= lower) && (upper == null || value <= upper);
+            }
+
+            if (!isMatch) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private Map<String, Object> readRow(int row) {
+        int start = (int) rowOffsets.get(row);
+        byte[] bytes = new byte[(int) rowOffsets.get(row + 1) - start];
+
+        rows.get(start, bytes);
+
+        return gson.fromJson(new String(bytes, StandardCharsets.UTF_8), ROW_TYPE);
+    }
+
+    // Values of a field, with nested fields separated by "." and lists flattened
+    static List<Object> valuesOf(Map<String, Object> source, String field) {
+        List<Object> values = new ArrayList<>();
+
+        collectValues(source, field.split("\\."), 0, values);
+
+        return values;
+    }
+
+    private static void collectValues(Object value, String[] path, int depth, List<Object> values) {
+        if (value == null) {
+            return;
+        }
+
+        if (value instanceof List) {
+            for (Object item : (List<?>) value) {
+                collectValues(item, path, depth, values);
+            }
+        } else if (depth == path.length) {
+            values.add(value);
+        } else if (value instanceof Map) {
+            collectValues(((Map<?, ?>) value).get(path[depth]), path, depth + 1, values);
+        }
+    }
+
+    private static void writeRows(Path directory, List<Map<String, Object>> sources, Map<String, String> fields) throws IOException {
+        long offset = 0;
+
+        try (DataOutputStream offsets = create(directory.resolve("rows.off"));
+             DataOutputStream rows = create(directory.resolve("rows.bin"))) {
+            for (Map<String, Object> source : sources) {
+                Map<String, Object> row = new HashMap<>();
+                byte[] bytes;
+
+                fields.forEach((gqlName, osName) -> row.put(gqlName, source.get(osName)));
+                bytes = gson.toJson(row).getBytes(StandardCharsets.UTF_8);
+                offsets.writeLong(offset);
+                rows.write(bytes);
+                offset += bytes.length;
+            }
+
+            offsets.writeLong(offset);
+        }
+
+        // Rows are read through a single mapping
+        if (offset > Integer.MAX_VALUE) {
+            throw new IOException("Snapshot rows exceed " + Integer.MAX_VALUE + " bytes");
+        }
+    }
+
+    private static void writeStringColumn(Path directory, String column, List<Map<String, Object>> sources) throws IOException {
+        TreeSet<String> distinct = new TreeSet<>();
+        String[] dictionary;
+        int offset = 0;
+
+        for (Map<String, Object> source : sources) {
+            for (Object value : valuesOf(source, column)) {
+                distinct.add(toText(value));
+            }
+        }
+
+        dictionary = distinct.toArray(new String[0]);
+
+        try (DataOutputStream dictionaryOut = create(directory.resolve(fileName("str", column, "dict")))) {
+            dictionaryOut.writeInt(dictionary.length);
+
+            for (String value : dictionary) {
+                byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+                dictionaryOut.writeInt(bytes.length);
+                dictionaryOut.write(bytes);
+            }
+        }
+
+        try (DataOutputStream offsets = create(directory.resolve(fileName("str", column, "off")));
+             DataOutputStream codes = create(directory.resolve(fileName("str", column, "val")))) {
+            for (Map<String, Object> source : sources) {
+                offsets.writeInt(offset);
+
+                for (Object value : valuesOf(source, column)) {
+                    codes.writeInt(Arrays.binarySearch(dictionary, toText(value)));
+                    offset++;
+                }
+            }
+
+            offsets.writeInt(offset);
+        }
+    }
+
+    private static void writeNumberColumn(Path directory, String column, List<Map<String, Object>> sources) throws IOException {
+        int offset = 0;
+
+        try (DataOutputStream offsets = create(directory.resolve(fileName("num", column, "off")));
+             DataOutputStream values = create(directory.resolve(fileName("num", column, "val")))) {
+            for (Map<String, Object> source : sources) {
+                offsets.writeInt(offset);
+
+                for (Object value : valuesOf(source, column)) {
+                    Double number = toNumber(value);
+
+                    if (number != null) {
+                        values.writeDouble(number);
+                        offset++;
+                    }
+                }
+            }
+
+            offsets.writeInt(offset);
+        }
+    }
+
+    // Like Opensearch, sorts by a row's lowest value in ascending order and its highest in descending order
+    private static void writeSortKey(Path directory, String sortKey, List<Map<String, Object>> sources) throws IOException {
+        List<List<Object>> rowValues = new ArrayList<>();
+        boolean isNumeric = true;
+
+        for (Map<String, Object> source : sources) {
+            List<Object> values = valuesOf(source, sortKey);
+
+            rowValues.add(values);
+            isNumeric = isNumeric && values.stream().allMatch(value -> value instanceof Number);
+        }
+
+        Comparator<Object> comparator = isNumeric
+            ? Comparator.comparingDouble(value -> ((Number) value).doubleValue())
+            : Comparator.comparing(OverviewSnapshot::toText);
+        Object[] lowest = new Object[sources.size()];
+        Object[] highest = new Object[sources.size()];
+
+        for (int row = 0; row < sources.size(); row++) {
+            List<Object> values = rowValues.get(row);
+
+            if (!values.isEmpty()) {
+                lowest[row] = values.stream().min(comparator).get();
+                highest[row] = values.stream().max(comparator).get();
+            }
+        }
+
+        writePermutation(directory.resolve(fileName("sort", sortKey, "asc")), lowest, comparator);
+        writePermutation(directory.resolve(fileName("sort", sortKey, "desc")), highest, comparator.reversed());
+    }
+
+    private static void writePermutation(Path file, Object[] sortValues, Comparator<Object> comparator) throws IOException {
+        Integer[] order = new Integer[sortValues.length];
+
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+
+        // Rows without a value go last, ties keep their original order
+        Arrays.sort(order, Comparator.comparing((Integer row) -> sortValues[row], Comparator.nullsLast(comparator)));
+
+        try (DataOutputStream out = create(file)) {
+            for (int row : order) {
+                out.writeInt(row);
+            }
+        }
+    }
+
+    private static String[] readDictionary(Path file) throws IOException {
+        ByteBuffer buffer = map(file);
+        String[] dictionary = new String[buffer.getInt()];
+
+        for (int i = 0; i < dictionary.length; i++) {
+            byte[] bytes = new byte[buffer.getInt()];
+            buffer.get(bytes);
+            dictionary[i] = new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        return dictionary;
+    }
+
+    private static List<String> names(JsonObject manifest, String key) {
+        return gson.fromJson(manifest.get(key), new TypeToken<List<String>>() {}.getType());
+    }
+
+    // Fields can contain characters that don't belong in file names
+    private static String fileName(String kind, String field, String extension) {
+        return kind + "." + field.replaceAll("[^A-Za-z0-9_.-]", "_") + "." + extension;
+    }
+
+    private static MappedByteBuffer map(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+    }
+
+    private static DataOutputStream create(Path file) throws IOException {
+        return new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file)));
+    }
+
+    // Whole numbers come back from Opensearch as doubles, so match them without a decimal point
+    private static String toText(Object value) {
+        if (value instanceof Double && (Double) value == Math.rint((Double) value) && !((Double) value).isInfinite()) {
+            return Long.toString(((Double) value).longValue());
+        }
+
+        return value.toString();
+    }
+
+    private static Double toNumber(Object value) {
+        if (value instanceof Number) {
+            return ((Number) value).doubleValue();
+        }
+
+        try {
+            return Double.parseDouble(value.toString());
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,213 @@
+package gov.nih.nci.bento_ri.service;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+
+/**
+ * Local read replicas of overview tables, rebuilt whenever a new release is detected
+ * Each table is exported from Opensearch once per release into an OverviewSnapshot on disk,
+ * and pages are answered from the memory-mapped files until the next release
+ * Requests the snapshots can't answer go to Opensearch, and the previous release's snapshots are served while the
+ * next release is being exported
+ * Each release's snapshots are kept in a directory tagged with a marker file, and only tagged directories are ever
+ * deleted, so overview.snapshot.directory can be shared with other files
+ */
+@Service
+public class OverviewSnapshotStore {
+    private static final Logger logger = LogManager.getLogger(OverviewSnapshotStore.class);
+    // Marks a directory as holding the snapshots of a release
+    static final String RELEASE_MARKER = ".overview-snapshot-release";
+
+    /**
+     * What to keep of an overview table
+     * @param name The table's name, which names its snapshot directory
+     * @param index The Opensearch index with the table's rows
+     * @param fields GraphQL field -> Opensearch field of the table's rows
+     * @param stringColumns Opensearch fields that can be filtered by value
+     * @param numberColumns Opensearch fields that can be filtered by range
+     * @param sortKeys Opensearch fields that the table can be sorted by
+     */
+    public record Table(String name, String index, Map<String, String> fields,
+            Set<String> stringColumns, Set<String> numberColumns, Set<String> sortKeys) {}
+
+    private final boolean enabled;
+    private final Path directory;
+    private final InventoryESService esService;
+    private final ReleaseMonitor releaseMonitor;
+    private final Map<String, Table> tables = new ConcurrentHashMap<>();
+    private volatile Map<String, OverviewSnapshot> snapshots = Map.of();
+
+    public OverviewSnapshotStore(
+            @Value("${overview.snapshot.enabled:false}") boolean enabled,
+            @Value("${overview.snapshot.directory:}") String directory,
+            InventoryESService esService,
+            ReleaseMonitor releaseMonitor) {
+        this.enabled = enabled;
+        this.directory = directory.isEmpty()
+            ? Path.of(System.getProperty("java.io.tmpdir"), "overview-snapshots")
+            : Path.of(directory);
+        this.esService = esService;
+        this.releaseMonitor = releaseMonitor;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Keeps snapshots of overview tables, starting with the current release
+     * Does nothing unless overview.snapshot.enabled is set
+     * @param newTables The tables
+     */
+    public void track(Collection<Table> newTables) {
+        if (!enabled || newTables.isEmpty()) {
+            return;
+        }
+
+        for (Table table : newTables) {
+            tables.put(table.name(), table);
+        }
+
+        releaseMonitor.addListener(this::load);
+    }
+
+    /**
+     * Retrieves a page of an overview table from its snapshot
+     * @param table The table's name
+     * @param terms Opensearch field -> values to match
+     * @param ranges Opensearch field -> lower and upper bounds, either of which can be null
+     * @param sortKey Opensearch field to sort by
+     * @param isDescending Whether to sort in descending order
+     * @param pageSize Number of rows in the page
+     * @param offset Offset of the page
+     * @return The page, or null if it has to come from Opensearch
+     */
+    public List<Map<String, Object>> page(String table, Map<String, Set<String>> terms, Map<String, Double[]> ranges,
+            String sortKey, boolean isDescending, int pageSize, int offset) {
+        OverviewSnapshot snapshot = snapshots.get(table);
+
+        if (snapshot == null) {
+            return null;
+        }
+
+        return snapshot.page(terms, ranges, sortKey, isDescending, pageSize, offset);
+    }
+
+    // Swaps in each table's snapshot of a release as soon as it's ready, serving the previous release's meanwhile
+    // If any table fails, the release is retried on the next poll, and its finished snapshots are reused from disk
+    private void load(String newRelease) throws IOException {
+        Path releaseDirectory = directory.resolve(newRelease);
+        Map<String, OverviewSnapshot> loaded = new HashMap<>(snapshots);
+        int failedCount = 0;
+
+        createReleaseDirectory(releaseDirectory);
+
+        for (Table table : tables.values()) {
+            try {
+                loaded.put(table.name(), loadTable(table, releaseDirectory));
+                snapshots = Map.copyOf(loaded);
+            } catch (IOException | RuntimeException e) {
+                logger.error("Unable to snapshot " + table.name() + " of release " + newRelease + ": " + e.toString());
+                failedCount++;
+            }
+        }
+
+        if (failedCount > 0) {
+            throw new IOException(failedCount + " overview tables of release " + newRelease + " couldn't be snapshotted");
+        }
+
+        logger.info("Loaded " + loaded.size() + " overview snapshots of release " + newRelease);
+        deleteOtherReleases(newRelease);
+    }
+
+    private void createReleaseDirectory(Path releaseDirectory) throws IOException {
+        Path marker = releaseDirectory.resolve(RELEASE_MARKER);
+
+        Files.createDirectories(releaseDirectory);
+
+        if (!Files.exists(marker)) {
+            Files.createFile(marker);
+        }
+    }
+
+    private OverviewSnapshot loadTable(Table table, Path releaseDirectory) throws IOException {
+        Path tableDirectory = releaseDirectory.resolve(table.name());
+        Path partialDirectory = releaseDirectory.resolve(table.name() + ".partial");
+
+        // Snapshots survive restarts, as long as the release hasn't changed
+        if (!OverviewSnapshot.exists(tableDirectory)) {
+            List<Map<String, Object>> sources;
+
+            deleteDirectory(partialDirectory);
+            sources = esService.collectAll(table.index(), Map.of("query", Map.of("match_all", Map.of())), sourceProperties(table));
+            OverviewSnapshot.write(partialDirectory, sources, table.fields(), table.stringColumns(), table.numberColumns(), table.sortKeys());
+            deleteDirectory(tableDirectory);
+            Files.move(partialDirectory, tableDirectory, StandardCopyOption.ATOMIC_MOVE);
+        }
+
+        return OverviewSnapshot.open(tableDirectory);
+    }
+
+    // Whole top level fields, keyed by their Opensearch names, for every field the snapshot keeps
+    private List<Map<String, Object>> sourceProperties(Table table) {
+        Set<String> osNames = new HashSet<>(table.fields().values());
+        List<Map<String, Object>> properties = new ArrayList<>();
+
+        Stream.of(table.stringColumns(), table.numberColumns(), table.sortKeys())
+            .flatMap(Set::stream)
+            .forEach(field -> osNames.add(field.split("\\.")[0]));
+
+        for (String osName : osNames) {
+            properties.add(Map.of("gqlName", osName, "osName", osName));
+        }
+
+        return properties;
+    }
+
+    // Only directories with the release marker are deleted, anything else in the directory was put there by someone else
+    private void deleteOtherReleases(String currentRelease) {
+        try (Stream<Path> releases = Files.list(directory)) {
+            releases.filter(path -> !path.getFileName().toString().equals(currentRelease))
+                .filter(path -> Files.isRegularFile(path.resolve(RELEASE_MARKER)))
+                .forEach(this::deleteDirectory);
+        } catch (IOException e) {
+            logger.warn("Unable to delete old overview snapshots: " + e.toString());
+        }
+    }
+
+    // Mapped files can be deleted while they're still in use, their pages stay readable until they're unmapped
+    private void deleteDirectory(Path path) {
+        if (!Files.exists(path)) {
+            return;
+        }
+
+        try (Stream<Path> files = Files.walk(path)) {
+            files.sorted(Comparator.reverseOrder()).forEach(file -> {
+                try {
+                    Files.delete(file);
+                } catch (IOException e) {
+                    logger.warn("Unable to delete " + file + ": " + e.toString());
+                }
+            });
+        } catch (IOException e) {
+            logger.warn("Unable to delete " + path + ": " + e.toString());
+        }
+    }
+}
@@ -0,0 +1,255 @@
+package gov.nih.nci.bento_ri.service;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Participant IDs and associated IDs, searchable by prefix, and the studies of each participant ID
+ * The IDs are sorted and front-coded in blocks of BLOCK_SIZE: each block starts with a whole ID, and every other ID
+ * is stored as the number of bytes it shares with the one before it, followed by the rest of its UTF-8 bytes
+ */
+public final class ParticipantIdIndex {
+    static final int BLOCK_SIZE = 16;
+
+    // The first ID of each block, and where the rest of the block starts in keyData
+    private final String[] blockHeads;
+    private final int[] blockOffsets;
+    private final byte[] keyData;
+    // Participant of each associated ID, or null for participant IDs, in the order of the IDs
+    private final String[] participantsOfKeys;
+    private final int keyCount;
+    // Sorted participant IDs, and the study of each
+    private final String[] participantIds;
+    private final String[] studyIds;
+
+    /**
+     * An ID found by prefix
+     * @param id The participant ID or associated ID
+     * @param participantId The participant ID that the ID belongs to
+     */
+    public record Match(String id, String participantId) {}
+
+    private record Key(String id, String participantId) {}
+
+    private ParticipantIdIndex(String[] blockHeads, int[] blockOffsets, byte[] keyData, String[] participantsOfKeys,
+            String[] participantIds, String[] studyIds) {
+        this.blockHeads = blockHeads;
+        this.blockOffsets = blockOffsets;
+        this.keyData = keyData;
+        this.participantsOfKeys = participantsOfKeys;
+        this.keyCount = participantsOfKeys.length;
+        this.participantIds = participantIds;
+        this.studyIds = studyIds;
+    }
+
+    /**
+     * Builds an index
+     * @param participantIdList Participant IDs of idsLists
+     * @param associatedIdList Associated IDs of idsLists, each with "associated_id" and "participant_id"
+     * @param participants Participants, each with "participant_id" and "study_id"
+     * @return
+     */
+    public static ParticipantIdIndex build(Collection<String> participantIdList, List<Map<String, Object>> associatedIdList,
+            List<Map<String, Object>> participants) {
+        List<Key> keys = new ArrayList<>();
+        List<String[]> participantStudies = new ArrayList<>();
+        ByteArrayOutputStream keyData = new ByteArrayOutputStream();
+        String[] blockHeads;
+        int[] blockOffsets;
+        String[] participantsOfKeys;
+        byte[] previous = new byte[0];
+
+        for (String participantId : participantIdList) {
+            if (participantId != null && !participantId.isEmpty()) {
+                keys.add(new Key(participantId, null));
+            }
+        }
+
+        for (Map<String, Object> associatedId : associatedIdList) {
+            if (associatedId.get("associated_id") instanceof String id && !id.isEmpty()
+                    && associatedId.get("participant_id") instanceof String participantId) {
+                keys.add(new Key(id, participantId));
+            }
+        }
+
+        // Participant IDs come before the associated IDs that are the same string
+        keys.sort(Comparator.comparing(Key::id)
+            .thenComparing(Key::participantId, Comparator.nullsFirst(Comparator.naturalOrder())));
+        keys = keys.stream().distinct().toList();
+        blockHeads = new String[(keys.size() + BLOCK_SIZE - 1) / BLOCK_SIZE];
+        blockOffsets = new int[blockHeads.length];
+        participantsOfKeys = new String[keys.size()];
+
+        for (int i = 0; i < keys.size(); i++) {
+            Key key = keys.get(i);
+            byte[] bytes = key.id().getBytes(StandardCharsets.UTF_8);
+
+            participantsOfKeys[i] = key.participantId();
+
+            if (i % BLOCK_SIZE == 0) {
+                blockHeads[i / BLOCK_SIZE] = key.id();
+                blockOffsets[i / BLOCK_SIZE] = keyData.size();
+            } else {
+                int shared = 0;
+
+                while (shared < previous.length && shared < bytes.length && previous[shared] == bytes[shared]) {
+                    shared++;
+                }
+
+                writeVarInt(keyData, shared);
+                writeVarInt(keyData, bytes.length - shared);
+                keyData.write(bytes, shared, bytes.length - shared);
+            }
+
+            previous = bytes;
+        }
+
+        for (Map<String, Object> participant : participants) {
+            if (participant.get("participant_id") instanceof String participantId) {
+                participantStudies.add(new String[] {participantId, Objects.toString(participant.get("study_id"), null)});
+            }
+        }
+
+        participantStudies.sort(Comparator.comparing((String[] participantStudy) -> participantStudy[0])
+            .thenComparing(participantStudy -> participantStudy[1], Comparator.nullsFirst(Comparator.naturalOrder())));
+
+        return new ParticipantIdIndex(
+            blockHeads,
+            blockOffsets,
+            keyData.toByteArray(),
+            participantsOfKeys,
+            participantStudies.stream().map(participantStudy -> participantStudy[0]).toArray(String[]::new),
+            participantStudies.stream().map(participantStudy -> participantStudy[1]).toArray(String[]::new)
+        );
+    }
+
+    public int size() {
+        return keyCount;
+    }
+
+    /**
+     * Finds the IDs that start with a prefix
+     * @param prefix The prefix
+     * @param limit The most IDs to return
+     * @return The first matching IDs, in order
+     */
+    public List<Match> suggest(String prefix, int limit) {
+        List<Match> matches = new ArrayList<>();
+        int low = 0;
+        int high = blockHeads.length;
+        int block;
+
+        // The first block starting at or after the prefix, whose IDs may also end the block before
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+
+            if (blockHeads[middle].compareTo(prefix) < 0) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+
+        for (block = Math.max(low - 1, 0); block < blockHeads.length && matches.size() < limit; block++) {
+            int position = blockOffsets[block];
+            int end = block + 1 < blockOffsets.length ? blockOffsets[block + 1] : keyData.length;
+            byte[] bytes = blockHeads[block].getBytes(StandardCharsets.UTF_8);
+            int length = bytes.length;
+            int keyIndex = block * BLOCK_SIZE;
+
+            while (matches.size() < limit) {
+                String id = new String(bytes, 0, length, StandardCharsets.UTF_8);
+
+                if (id.startsWith(prefix)) {
+                    String participantId = participantsOfKeys[keyIndex];
+                    matches.add(new Match(id, participantId == null ? id : participantId));
+                } else if (id.compareTo(prefix) > 0) {
+                    return matches;
+                }
+
+                if (position >= end) {
+                    break;
+                }
+
+                // Decodes the next ID over the current one
+                int[] shared = readVarInt(keyData, position);
+                int[] suffix = readVarInt(keyData, shared[1]);
+
+                length = shared[0] + suffix[0];
+                if (bytes.length < length) {
+                    bytes = Arrays.copyOf(bytes, Math.max(length, bytes.length * 2));
+                }
+                System.arraycopy(keyData, suffix[1], bytes, shared[0], suffix[0]);
+                position = suffix[1] + suffix[0];
+                keyIndex++;
+            }
+        }
+
+        return matches;
+    }
+
+    public boolean hasParticipant(String id) {
+        return Arrays.binarySearch(participantIds, id) >= 0;
+    }
+
+    /**
+     * Finds participants by participant ID
+     * @param ids Participant IDs
+     * @return The "participant_id" and "study_id" of every participant with one of the IDs, sorted
+     */
+    public List<Map<String, Object>> findParticipants(Collection<String> ids) {
+        List<Map<String, Object>> participants = new ArrayList<>();
+
+        for (String id : ids.stream().filter(Objects::nonNull).distinct().sorted().toList()) {
+            int position = Arrays.binarySearch(participantIds, id);
+
+            if (position < 0) {
+                continue;
+            }
+
+            // binarySearch finds any of the participant's studies
+            while (position > 0 && participantIds[position - 1].equals(id)) {
+                position--;
+            }
+
+            for (; position < participantIds.length && participantIds[position].equals(id); position++) {
+                participants.add(studyIds[position] == null
+                    ? Map.of("participant_id", id)
+                    : Map.of("participant_id", id, "study_id", studyIds[position]));
+            }
+        }
+
+        return participants;
+    }
+
+    private static void writeVarInt(ByteArrayOutputStream out, int value) {
+        while (value >= 0x80) {
+            out.write((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+
+        out.write(value);
+    }
+
+    // The value, and the position after it
+    private static int[] readVarInt(byte[] data, int position) {
+        int value = 0;
+        int shift = 0;
+        byte current;
+
+        do {
+            current = data[position++];
+            value |= (current & 0x7F) << shift;
+            shift += 7;
+        } while ((current & 0x80) != 0);
+
+        return new int[] {value, position};
+    }
+}
@@ -0,0 +1,138 @@
+package gov.nih.nci.bento_ri.service;
+
+import gov.nih.nci.bento.utility.TypeChecker;
+
+import com.google.common.reflect.TypeToken;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Keeps a ParticipantIdIndex of the current release, for ID autocomplete and lookups without Opensearch
+ * The index is rebuilt from idsLists and the participants index whenever a new release is detected
+ * Does nothing unless participant.index.enabled is set, and lookups then go to Opensearch
+ */
+@Service
+public class ParticipantIdLookup {
+    private static final Logger logger = LogManager.getLogger(ParticipantIdLookup.class);
+    public static final List<Map<String, Object>> IDS_LISTS_PROPERTIES = List.of(
+        Map.ofEntries(
+            Map.entry("gqlName", "participant_ids"),
+            Map.entry("osName", "participant_ids")
+        ),
+        Map.ofEntries(
+            Map.entry("gqlName", "associated_ids"),
+            Map.entry("osName", "associated_ids"),
+            Map.entry("nested", List.of(
+                Map.ofEntries(
+                    Map.entry("gqlName", "associated_id"),
+                    Map.entry("osName", "associated_id")
+                ),
+                Map.ofEntries(
+                    Map.entry("gqlName", "participant_id"),
+                    Map.entry("osName", "participant_id")
+                )
+            ))
+        )
+    );
+
+    private final InventoryESService esService;
+    private final ReleaseMonitor releaseMonitor;
+    private volatile ParticipantIdIndex participantIdIndex;
+    // The release participantIdIndex was built from
+    private volatile String indexRelease;
+
+    public ParticipantIdLookup(
+            @Value("${participant.index.enabled:false}") boolean enabled,
+            InventoryESService esService,
+            ReleaseMonitor releaseMonitor) {
+        this.esService = esService;
+        this.releaseMonitor = releaseMonitor;
+
+        if (enabled) {
+            releaseMonitor.addListener(this::load);
+        }
+    }
+
+    /**
+     * Finds the participant IDs and associated IDs that start with a prefix
+     * @param prefix The prefix
+     * @param limit The most IDs to return
+     * @return The first matching IDs in order, or null until the index is built
+     */
+    public List<ParticipantIdIndex.Match> suggest(String prefix, int limit) {
+        ParticipantIdIndex currentIndex = participantIdIndex;
+
+        return currentIndex == null ? null : currentIndex.suggest(prefix, limit);
+    }
+
+    /**
+     * Finds participants by participant ID
+     * @param ids Participant IDs
+     * @return The "participant_id" and "study_id" of the participants, or null if they have to come from Opensearch
+     */
+    public List<Map<String, Object>> findParticipants(Collection<String> ids) {
+        ParticipantIdIndex currentIndex = participantIdIndex;
+
+        return currentIndex == null ? null : currentIndex.findParticipants(ids);
+    }
+
+    /**
+     * Checks whether a participant ID could exist
+     * @param id The participant ID
+     * @return False only if the ID is definitely not in the current release
+     */
+    public boolean mightExist(String id) {
+        ParticipantIdIndex currentIndex = participantIdIndex;
+
+        // The previous release's index can't rule out IDs that are new in this one
+        if (currentIndex == null || !Objects.equals(indexRelease, releaseMonitor.getRelease())) {
+            return true;
+        }
+
+        return currentIndex.hasParticipant(id);
+    }
+
+    // Builds the index of a release, serving the previous release's index meanwhile
+    private void load(String newRelease) throws IOException {
+        Map<String, Object> query = Map.of("query", Map.of("match_all", Map.of()));
+        List<Map<String, Object>> idsLists;
+        List<Map<String, Object>> participants;
+        List<String> participantIds = List.of();
+        List<Map<String, Object>> associatedIds = List.of();
+        ParticipantIdIndex newIndex;
+
+        idsLists = esService.collectAll("participant_ids_lists", query, IDS_LISTS_PROPERTIES);
+        participants = esService.collectAll("participants", query, List.of(
+            Map.of("gqlName", "participant_id", "osName", "participant_id"),
+            Map.of("gqlName", "study_id", "osName", "study_id")
+        ));
+
+        if (!idsLists.isEmpty() && TypeChecker.isOfType(idsLists.get(0).get("participant_ids"), new TypeToken<List<String>>() {})) {
+            @SuppressWarnings("unchecked")
+            List<String> castedParticipantIds = (List<String>) idsLists.get(0).get("participant_ids");
+            participantIds = castedParticipantIds;
+        }
+
+        if (!idsLists.isEmpty() && TypeChecker.isOfType(idsLists.get(0).get("associated_ids"), new TypeToken<List<Map<String, Object>>>() {})) {
+            @SuppressWarnings("unchecked")
+            List<Map<String, Object>> castedAssociatedIds = (List<Map<String, Object>>) idsLists.get(0).get("associated_ids");
+            associatedIds = castedAssociatedIds;
+        }
+
+        newIndex = ParticipantIdIndex.build(participantIds, associatedIds, participants);
+        participantIdIndex = newIndex;
+        indexRelease = newRelease;
+
+        logger.info("Loaded the participant ID index of release " + newRelease + ", with "
+            + newIndex.size() + " IDs and " + participants.size() + " participants");
+    }
+}
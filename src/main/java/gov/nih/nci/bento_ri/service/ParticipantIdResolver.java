@@ -0,0 +1,304 @@
+package gov.nih.nci.bento_ri.service;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.opensearch.client.Request;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+
+/**
+ * Resolves uploaded lists of participant IDs to participants
+ * The list is read whole first, so that an invalid list is refused before any results are sent, and is bounded by
+ * participant.upload.max_ids. IDs that the participant ID index rules out are written as misses right away. The rest
+ * are looked up in chunks of participant.upload.chunk_size IDs, a window of chunks in parallel, and their results are
+ * streamed as each window finishes. A chunk whose matches don't fit in one page of SCROLL_THRESHOLD hits, which can
+ * happen when an ID belongs to participants of several studies, is read in pages sorted by id
+ */
+@Service
+public class ParticipantIdResolver {
+    private static final Logger logger = LogManager.getLogger(ParticipantIdResolver.class);
+    public static final List<Map<String, Object>> PROPERTIES = List.of(
+        Map.of("gqlName", "participant_id", "osName", "participant_id"),
+        Map.of("gqlName", "study_id", "osName", "study_id"),
+        Map.of("gqlName", "participant_pk", "osName", "id"),
+        Map.of("gqlName", "found", "osName", "found")
+    );
+    // Headers of the ID column, compared ignoring case
+    public static final Set<String> ID_HEADERS = Set.of("participant_id", "participant id", "participant");
+
+    // Finds the participants of each chunk of a window of IDs
+    interface WindowLookup {
+        List<List<Map<String, Object>>> find(List<List<String>> window) throws IOException;
+    }
+
+    // Finds one page of the participants matching a query
+    interface PageLookup {
+        List<Map<String, Object>> find(Map<String, Object> query) throws IOException;
+    }
+
+    private final ParticipantIdLookup participantIdLookup;
+    private final WindowLookup windowLookup;
+    private final int chunkSize;
+    private final int maxIds;
+
+    @Autowired
+    public ParticipantIdResolver(
+            InventoryESService esService,
+            ParticipantIdLookup participantIdLookup,
+            @Value("${participant.upload.chunk_size:1000}") int chunkSize,
+            @Value("${participant.upload.max_ids:1000000}") int maxIds) {
+        this(participantIdLookup, window -> findWindow(esService, window), chunkSize, maxIds);
+    }
+
+    ParticipantIdResolver(ParticipantIdLookup participantIdLookup, WindowLookup windowLookup, int chunkSize, int maxIds) {
+        if (chunkSize < 1 || chunkSize > InventoryESService.SCROLL_THRESHOLD) {
+            throw new IllegalArgumentException("participant.upload.chunk_size must be between 1 and "
+                + InventoryESService.SCROLL_THRESHOLD + ", not " + chunkSize);
+        }
+
+        this.participantIdLookup = participantIdLookup;
+        this.windowLookup = windowLookup;
+        this.chunkSize = chunkSize;
+        this.maxIds = maxIds;
+    }
+
+    /**
+     * Reads the distinct participant IDs of an uploaded list
+     * The list is text with one ID per line, or CSV or TSV. IDs are read from the first column, unless the first row is
+     * a header naming one of ID_HEADERS, in which case it's skipped and IDs are read from the column it names
+     * @param reader The list
+     * @return The list's distinct IDs, in the order they first appear
+     * @throws IOException
+     * @throws IllegalArgumentException If the list has more than participant.upload.max_ids distinct IDs
+     */
+    public Set<String> readIds(Reader reader) throws IOException {
+        BufferedReader lines = new BufferedReader(reader);
+        Set<String> ids = new LinkedHashSet<>();
+        String line;
+        char delimiter = 0;
+        int column = 0;
+
+        while ((line = lines.readLine()) != null) {
+            List<String> values;
+
+            // The first line that isn't blank sets the delimiter, and may be a header
+            if (delimiter == 0) {
+                line = line.replace("\uFEFF", "");
+
+                if (line.isBlank()) {
+                    continue;
+                }
+
+                delimiter = line.indexOf('\t') >= 0 ? '\t' : ',';
+                values = parseLine(line, delimiter);
+                column = headerColumn(values);
+
+                if (column >= 0) {
+                    continue;
+                }
+
+                column = 0;
+            } else {
+                values = parseLine(line, delimiter);
+            }
+
+            if (column < values.size() && !values.get(column).isEmpty()) {
+                ids.add(values.get(column));
+            }
+
+            if (ids.size() > maxIds) {
+                throw new IllegalArgumentException("At most " + maxIds + " participant IDs can be resolved at once");
+            }
+        }
+
+        return ids;
+    }
+
+    /**
+     * Resolves participant IDs
+     * Writes a row for each participant found, and a row with "found" false for each ID that wasn't,
+     * in the order they're resolved
+     * @param ids Distinct participant IDs, as read by readIds()
+     * @param writer Where to write the results
+     * @throws IOException
+     */
+    public void resolve(Collection<String> ids, ManifestWriter writer) throws IOException {
+        List<List<String>> window = new ArrayList<>();
+        List<String> chunk = new ArrayList<>();
+        long missCount = 0;
+
+        writer.writeHeader(PROPERTIES);
+
+        for (String id : ids) {
+            if (!participantIdLookup.mightExist(id)) {
+                writer.writeRow(Map.of("participant_id", id, "found", false));
+                missCount++;
+                continue;
+            }
+
+            chunk.add(id);
+
+            if (chunk.size() == chunkSize) {
+                window.add(chunk);
+                chunk = new ArrayList<>();
+            }
+
+            if (window.size() == InventoryESService.SLICES) {
+                missCount += resolveWindow(window, writer);
+                window = new ArrayList<>();
+            }
+        }
+
+        if (!chunk.isEmpty()) {
+            window.add(chunk);
+        }
+
+        if (!window.isEmpty()) {
+            missCount += resolveWindow(window, writer);
+        }
+
+        writer.flush();
+
+        logger.info("Resolved " + ids.size() + " uploaded participant IDs, " + missCount + " of which weren't found");
+    }
+
+    /**
+     * Splits a line of CSV or TSV into values
+     * Values may be quoted, with delimiters inside quotes kept and doubled quotes read as one
+     * @param line A line of text
+     * @param delimiter ',' or '\t'
+     * @return The line's values, unquoted and stripped, including empty ones
+     */
+    static List<String> parseLine(String line, char delimiter) {
+        List<String> values = new ArrayList<>();
+        StringBuilder value = new StringBuilder();
+        boolean isQuoted = false;
+
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+
+            if (isQuoted && c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                value.append('"');
+                i++;
+            } else if (c == '"') {
+                isQuoted = !isQuoted;
+            } else if (c == delimiter && !isQuoted) {
+                values.add(value.toString().strip());
+                value.setLength(0);
+            } else {
+                value.append(c);
+            }
+        }
+
+        values.add(value.toString().strip());
+
+        return values;
+    }
+
+    // The column of the first header in ID_HEADERS, or -1 if the row isn't a header
+    private static int headerColumn(List<String> values) {
+        for (int i = 0; i < values.size(); i++) {
+            if (ID_HEADERS.contains(values.get(i).toLowerCase())) {
+                return i;
+            }
+        }
+
+        return -1;
+    }
+
+    private static List<List<Map<String, Object>>> findWindow(InventoryESService esService, List<List<String>> window) throws IOException {
+        List<Callable<List<Map<String, Object>>>> tasks = new ArrayList<>();
+
+        for (List<String> chunk : window) {
+            tasks.add(() -> findChunk(chunk, InventoryESService.SCROLL_THRESHOLD, query -> esService.collectPage(
+                new Request("GET", "/participants/_search"), query, PROPERTIES.subList(0, 3), InventoryESService.SCROLL_THRESHOLD, 0
+            )));
+        }
+
+        return esService.inParallel(tasks);
+    }
+
+    /**
+     * Finds every participant of a chunk of IDs
+     * Pages are sorted by id, and each page after the first starts after the previous page's last id, so a chunk is
+     * never cut off at the page size
+     * @param chunk Participant IDs
+     * @param pageSize The number of hits pageLookup returns at most
+     * @param pageLookup Finds a page of participants
+     * @return The participants
+     * @throws IOException
+     */
+    static List<Map<String, Object>> findChunk(List<String> chunk, int pageSize, PageLookup pageLookup) throws IOException {
+        List<Map<String, Object>> participants = new ArrayList<>();
+        Object lastPk = null;
+
+        while (true) {
+            List<Map<String, Object>> filters = new ArrayList<>(List.of(Map.of("terms", Map.of("participant_id", chunk))));
+            List<Map<String, Object>> page;
+
+            if (lastPk != null) {
+                filters.add(Map.of("range", Map.of("id", Map.of("gt", lastPk))));
+            }
+
+            page = pageLookup.find(new HashMap<>(Map.of(
+                "query", Map.of("bool", Map.of("filter", filters)),
+                "sort", List.of(Map.of("id", "asc")),
+                "_source", List.of("participant_id", "study_id", "id")
+            )));
+            participants.addAll(page);
+
+            if (page.size() < pageSize) {
+                return participants;
+            }
+
+            lastPk = page.get(page.size() - 1).get("participant_pk");
+
+            // Participants without an id sort last, so the rest of the chunk can't be told apart from them
+            if (lastPk == null) {
+                throw new IOException("Unable to page the participants of " + chunk.size() + " IDs, some have no id");
+            }
+        }
+    }
+
+    // Looks up chunks of IDs in parallel, and writes their matches and misses
+    private long resolveWindow(List<List<String>> window, ManifestWriter writer) throws IOException {
+        List<List<Map<String, Object>>> results = windowLookup.find(window);
+        long missCount = 0;
+
+        for (int i = 0; i < window.size(); i++) {
+            Set<String> missingIds = new LinkedHashSet<>(window.get(i));
+
+            for (Map<String, Object> participant : results.get(i)) {
+                Map<String, Object> row = new HashMap<>(participant);
+
+                row.put("found", true);
+                writer.writeRow(row);
+                missingIds.remove(participant.get("participant_id"));
+            }
+
+            for (String id : missingIds) {
+                writer.writeRow(Map.of("participant_id", id, "found", false));
+            }
+
+            missCount += missingIds.size();
+        }
+
+        // Sends each window's results as soon as they're ready
+        writer.flush();
+
+        return missCount;
+    }
+}
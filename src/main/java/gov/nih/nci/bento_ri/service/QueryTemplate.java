@@ -0,0 +1,89 @@
+package gov.nih.nci.bento_ri.service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A pre-serialized Opensearch request body with named slots
+ * The literal JSON around the slots is computed once, so rendering only
+ * concatenates the literals with the per-request slot values
+ */
+public class QueryTemplate {
+    private final String[] literals; // Always one more literal than slots
+    private final String[] slots;
+    private final int literalLength;
+
+    private QueryTemplate(String[] literals, String[] slots) {
+        int length = 0;
+
+        for (String literal : literals) {
+            length += literal.length();
+        }
+
+        this.literals = literals;
+        this.slots = slots;
+        this.literalLength = length;
+    }
+
+    /**
+     * Compiles a template from a serialized request body
+     * @param json The serialized request body, containing slot markers
+     * @param markers Map of slot name -> exact text of the slot's marker in the JSON
+     * @return The template, with a slot wherever one of the markers appears in the JSON
+     */
+    public static QueryTemplate compile(String json, Map<String, String> markers) {
+        List<String> literals = new ArrayList<>();
+        List<String> slots = new ArrayList<>();
+        int position = 0;
+
+        while (true) {
+            int nextIndex = -1;
+            String nextSlot = null;
+            String nextMarker = null;
+
+            // Find the earliest marker after the current position
+            for (Map.Entry<String, String> marker : markers.entrySet()) {
+                int index = json.indexOf(marker.getValue(), position);
+
+                if (index != -1 && (nextIndex == -1 || index < nextIndex)) {
+                    nextIndex = index;
+                    nextSlot = marker.getKey();
+                    nextMarker = marker.getValue();
+                }
+            }
+
+            if (nextIndex == -1) {
+                break;
+            }
+
+            literals.add(json.substring(position, nextIndex));
+            slots.add(nextSlot);
+            position = nextIndex + nextMarker.length();
+        }
+
+        literals.add(json.substring(position));
+
+        return new QueryTemplate(literals.toArray(new String[0]), slots.toArray(new String[0]));
+    }
+
+    /**
+     * Fills in the template's slots
+     * @param values Map of slot name -> serialized JSON to put in the slot
+     * @return The serialized request body
+     */
+    public String render(Map<String, String> values) {
+        StringBuilder builder = new StringBuilder(literalLength + 256);
+
+        for (int i = 0; i < slots.length; i++) {
+            String value = values.get(slots[i]);
+
+            builder.append(literals[i]);
+            builder.append(value == null ? "null" : value);
+        }
+
+        builder.append(literals[slots.length]);
+
+        return builder.toString();
+    }
+}
@@ -0,0 +1,173 @@
+package gov.nih.nci.bento_ri.service;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.opensearch.client.Request;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import jakarta.annotation.PreDestroy;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Detects when a new data release has been published to Opensearch
+ * Loading a release recreates its indices, so a release is identified by the UUIDs of the indices it's served from
+ * Listeners are called on the monitor's own thread, one at a time, so they can take as long as they need
+ * Opensearch isn't polled until the first listener is added, so nothing is polled when every feature that needs
+ * releases is disabled
+ * A listener has loaded a release only once it returns without an exception, so a listener that failed is called
+ * again on every poll until it succeeds. Listeners keep serving the previous release's data until then
+ */
+@Service
+public class ReleaseMonitor {
+    private static final Logger logger = LogManager.getLogger(ReleaseMonitor.class);
+
+    // Rebuilds data kept for a release, replacing the previous release's data only once the new data is ready
+    public interface Listener {
+        void onRelease(String release) throws IOException;
+    }
+
+    // A listener, and the last release it loaded, only read and written on the monitor's thread
+    private static class Subscription {
+        final Listener listener;
+        String loadedRelease;
+
+        Subscription(Listener listener) {
+            this.listener = listener;
+        }
+    }
+
+    private final InventoryESService esService;
+    private final String indices;
+    private final int pollMinutes;
+    private final List<Subscription> subscriptions = new CopyOnWriteArrayList<>();
+    private final ScheduledExecutorService monitor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "release-monitor");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private volatile String release;
+    private boolean isPolling = false;
+
+    public ReleaseMonitor(InventoryESService esService,
+            @Value("${release.indices:participants,diagnoses,genetic_analyses,studies,survivals,treatments,treatment_responses,home_stats,participant_ids_lists}") String indices,
+            @Value("${release.poll_minutes:5}") int pollMinutes) {
+        this.esService = esService;
+        this.indices = indices;
+        this.pollMinutes = pollMinutes;
+    }
+
+    /**
+     * Calls a listener for every release from now on, starting with the current one if it's known
+     * @param listener The listener
+     */
+    public synchronized void addListener(Listener listener) {
+        Subscription subscription = new Subscription(listener);
+
+        subscriptions.add(subscription);
+
+        // The first poll calls the listener with the current release
+        if (!isPolling) {
+            isPolling = true;
+            monitor.scheduleWithFixedDelay(this::poll, 0, pollMinutes, TimeUnit.MINUTES);
+            return;
+        }
+
+        monitor.execute(() -> {
+            String currentRelease = release;
+
+            if (currentRelease != null) {
+                notify(subscription, currentRelease);
+            }
+        });
+    }
+
+    // The current release, or null until Opensearch has been reached
+    public String getRelease() {
+        return release;
+    }
+
+    private void poll() {
+        String newRelease;
+
+        try {
+            newRelease = fingerprint();
+        } catch (IOException | RuntimeException e) {
+            logger.warn("Unable to check for a new release: " + e.toString());
+            return;
+        }
+
+        if (!newRelease.equals(release)) {
+            logger.info("Release " + newRelease + " detected, replacing release " + release);
+            release = newRelease;
+        }
+
+        // Listeners that failed to load the current release try again
+        for (Subscription subscription : subscriptions) {
+            notify(subscription, newRelease);
+        }
+    }
+
+    private void notify(Subscription subscription, String newRelease) {
+        if (newRelease.equals(subscription.loadedRelease)) {
+            return;
+        }
+
+        try {
+            subscription.listener.onRelease(newRelease);
+            subscription.loadedRelease = newRelease;
+        } catch (IOException | RuntimeException e) {
+            logger.error("Unable to load release " + newRelease + ", retrying on the next poll: " + e.toString());
+        }
+    }
+
+    // A short hash of each index's concrete name and UUID
+    private String fingerprint() throws IOException {
+        Request request = new Request("GET", "/" + indices + "/_settings/index.uuid");
+        Map<String, String> uuids = new TreeMap<>();
+        JsonObject jsonObject;
+
+        request.addParameter("ignore_unavailable", "true");
+        request.addParameter("filter_path", "*.settings.index.uuid");
+        jsonObject = esService.send(request);
+
+        for (Map.Entry<String, JsonElement> index : jsonObject.entrySet()) {
+            uuids.put(index.getKey(), index.getValue().getAsJsonObject()
+                .getAsJsonObject("settings")
+                .getAsJsonObject("index")
+                .get("uuid").getAsString());
+        }
+
+        if (uuids.isEmpty()) {
+            throw new IOException("None of the indices " + indices + " exist");
+        }
+
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            byte[] hash = digest.digest(uuids.toString().getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(hash, 0, 8);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException(e.toString());
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        monitor.shutdownNow();
+    }
+}
@@ -0,0 +1,183 @@
+package gov.nih.nci.bento_ri.service;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.function.IntUnaryOperator;
+
+/**
+ * Collects every result of a query, for InventoryESService.collectAll()
+ * The first page is a search sorted by id, which also returns the total. Results past that page are read from the
+ * documents whose id sorts after the page's last one, in one scroll or in slices scrolled through in parallel,
+ * so every document is read exactly once
+ */
+class ResultCollector {
+    private static final Logger logger = LogManager.getLogger(ResultCollector.class);
+    static final String ID_FIELD = "id";
+
+    // Sends a request to Opensearch
+    interface Sender {
+        JsonObject send(String method, String endpoint, Map<String, String> parameters, Map<String, Object> body) throws IOException;
+    }
+
+    // Runs slices at the same time, returning their results in order
+    interface Parallel {
+        List<List<Map<String, Object>>> run(List<Callable<List<Map<String, Object>>>> tasks) throws IOException;
+    }
+
+    // Builds a row from a document's _source
+    interface RowMapper {
+        Map<String, Object> map(JsonObject source);
+    }
+
+    private final Sender sender;
+    private final Parallel parallel;
+    private final int pageSize;
+    private final IntUnaryOperator sliceCount;
+
+    /**
+     * @param sender Sends requests to Opensearch
+     * @param parallel Runs slices at the same time
+     * @param pageSize Hits per search and per scroll page
+     * @param sliceCount Number of slices to scroll through a number of results in
+     */
+    ResultCollector(Sender sender, Parallel parallel, int pageSize, IntUnaryOperator sliceCount) {
+        this.sender = sender;
+        this.parallel = parallel;
+        this.pageSize = pageSize;
+        this.sliceCount = sliceCount;
+    }
+
+    /**
+     * Retrieves every result of a query
+     * @param index The Opensearch index
+     * @param query Opensearch query, without a sort order
+     * @param includes Opensearch fields to return
+     * @param mapper Builds the rows
+     * @return The rows, in no particular order
+     * @throws IOException
+     */
+    List<Map<String, Object>> collectAll(String index, Map<String, Object> query, List<String> includes, RowMapper mapper) throws IOException {
+        Map<String, Object> pageQuery = new HashMap<>(query);
+        List<Map<String, Object>> rows = new ArrayList<>();
+        Map<String, Object> restQuery;
+        JsonObject hits;
+        JsonArray hitList;
+        JsonElement lastId = null;
+        int total;
+        int restSliceCount;
+
+        // Sorted by id, so that the rest of the results can be told apart from the first page
+        pageQuery.put("sort", List.of(Map.of(ID_FIELD, Map.of("order", "asc", "unmapped_type", "keyword"))));
+        pageQuery.put("size", pageSize);
+        pageQuery.put("_source", includes);
+        pageQuery.put("track_total_hits", true);
+        hits = sender.send("POST", "/" + index + "/_search", Map.of(), pageQuery).getAsJsonObject("hits");
+        total = hits.getAsJsonObject("total").get("value").getAsInt();
+        hitList = hits.getAsJsonArray("hits");
+
+        for (JsonElement hit : hitList) {
+            rows.add(mapper.map(hit.getAsJsonObject().getAsJsonObject("_source")));
+        }
+
+        if (rows.size() >= total) {
+            return rows;
+        }
+
+        if (!hitList.isEmpty()) {
+            JsonArray sortValues = hitList.get(hitList.size() - 1).getAsJsonObject().getAsJsonArray("sort");
+            lastId = sortValues == null || sortValues.isEmpty() ? null : sortValues.get(0);
+        }
+
+        // Documents without an id sort last, so if the page ends with one, the rest can't be told apart from it
+        if (lastId == null || lastId.isJsonNull()) {
+            rows.clear();
+            restQuery = query;
+        } else {
+            restQuery = new HashMap<>(query);
+            restQuery.put("query", Map.of("bool", Map.of("filter", List.of(
+                query.getOrDefault("query", Map.of("match_all", Map.of())),
+                Map.of("range", Map.of(ID_FIELD, Map.of("gt", lastId.getAsString())))
+            ))));
+        }
+
+        restSliceCount = sliceCount.applyAsInt(total - rows.size());
+
+        if (restSliceCount == 1) {
+            rows.addAll(collectSlice(index, restQuery, includes, mapper, 0, 1));
+            return rows;
+        }
+
+        List<Callable<List<Map<String, Object>>>> tasks = new ArrayList<>();
+
+        for (int i = 0; i < restSliceCount; i++) {
+            final int sliceId = i;
+            final Map<String, Object> sliceQuery = restQuery;
+            tasks.add(() -> collectSlice(index, sliceQuery, includes, mapper, sliceId, restSliceCount));
+        }
+
+        for (List<Map<String, Object>> slice : parallel.run(tasks)) {
+            rows.addAll(slice);
+        }
+
+        return rows;
+    }
+
+    // Scrolls through one slice of a query's results
+    private List<Map<String, Object>> collectSlice(String index, Map<String, Object> query, List<String> includes, RowMapper mapper, int sliceId, int sliceCount) throws IOException {
+        Map<String, Object> sliceQuery = new HashMap<>(query);
+        List<Map<String, Object>> rows = new ArrayList<>();
+        String scrollId = null;
+        JsonObject jsonObject;
+        JsonArray hits;
+
+        // Opensearch only accepts slices of more than one
+        if (sliceCount > 1) {
+            sliceQuery.put("slice", Map.of("id", sliceId, "max", sliceCount));
+        }
+
+        sliceQuery.put("sort", List.of("_doc"));
+        sliceQuery.put("size", pageSize);
+        sliceQuery.put("_source", includes);
+
+        try {
+            jsonObject = sender.send("POST", "/" + index + "/_search", Map.of("scroll", InventoryESService.SCROLL_KEEP_ALIVE), sliceQuery);
+
+            while (true) {
+                scrollId = jsonObject.get("_scroll_id").getAsString();
+                hits = jsonObject.getAsJsonObject("hits").getAsJsonArray("hits");
+
+                if (hits.isEmpty()) {
+                    break;
+                }
+
+                for (JsonElement hit : hits) {
+                    rows.add(mapper.map(hit.getAsJsonObject().getAsJsonObject("_source")));
+                }
+
+                jsonObject = sender.send("POST", InventoryESService.SCROLL_ENDPOINT, Map.of(),
+                    Map.of("scroll", InventoryESService.SCROLL_KEEP_ALIVE, "scroll_id", scrollId));
+            }
+        } finally {
+            if (scrollId != null) {
+                try {
+                    sender.send("DELETE", InventoryESService.SCROLL_ENDPOINT, Map.of(), Map.of("scroll_id", List.of(scrollId)));
+                } catch (IOException e) {
+                    logger.warn("Unable to clear scroll: " + e.toString());
+                }
+            }
+        }
+
+        return rows;
+    }
+}
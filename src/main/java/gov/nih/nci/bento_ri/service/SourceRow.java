@@ -0,0 +1,69 @@
+package gov.nih.nci.bento_ri.service;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+
+import java.util.AbstractMap;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * An Opensearch document's _source used directly as a GraphQL result, without copying it field by field
+ * Values are converted from JSON only when they're read, so fields that weren't asked for cost nothing
+ * Fields whose GraphQL name differs from their Opensearch name are renamed, everything else passes through
+ */
+public final class SourceRow extends AbstractMap<String, Object> {
+    private final JsonObject source;
+    private final Map<String, String> renames; // GraphQL field -> Opensearch field
+    private final Gson gson;
+
+    /**
+     * @param source The document's _source
+     * @param renames GraphQL field -> Opensearch field, for the fields whose names differ
+     * @param gson Converts JSON values
+     */
+    public SourceRow(JsonObject source, Map<String, String> renames, Gson gson) {
+        this.source = source == null ? new JsonObject() : source;
+        this.renames = renames;
+        this.gson = gson;
+    }
+
+    @Override
+    public Object get(Object key) {
+        return convert(source.get(renames.getOrDefault(key, (String) key)));
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return source.has(renames.getOrDefault(key, (String) key));
+    }
+
+    // Only used for whole-row copies, such as manifest rows, so it's built on demand
+    @Override
+    public Set<Entry<String, Object>> entrySet() {
+        Map<String, Object> fields = new HashMap<>();
+        Set<String> renamedFields = new HashSet<>(renames.values());
+
+        for (Entry<String, JsonElement> field : source.entrySet()) {
+            if (!renamedFields.contains(field.getKey())) {
+                fields.put(field.getKey(), convert(field.getValue()));
+            }
+        }
+
+        // Renamed fields take the place of any Opensearch field with the same name
+        for (String gqlName : renames.keySet()) {
+            if (containsKey(gqlName)) {
+                fields.put(gqlName, get(gqlName));
+            }
+        }
+
+        return fields.entrySet();
+    }
+
+    private Object convert(JsonElement value) {
+        return value == null || value.isJsonNull() ? null : gson.fromJson(value, Object.class);
+    }
+}
@@ -0,0 +1,161 @@
+package gov.nih.nci.bento_ri.service;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Every study of the current release, kept in memory since there are only a few dozen
+ * The catalog is reloaded from the studies index whenever a new release is detected, with the per-study counts,
+ * such as num_participants and num_diseases, that the index already has. Until the first catalog is loaded, studies
+ * come from Opensearch, and the previous release's catalog is served while the next one loads
+ * Does nothing unless study.catalog.enabled is set, and studies then always come from Opensearch
+ */
+@Service
+public class StudyCatalog {
+    private static final Logger logger = LogManager.getLogger(StudyCatalog.class);
+    public static final String STUDY_KEY = "dbgap_accession";
+
+    private final boolean enabled;
+    private final InventoryESService esService;
+    private final ReleaseMonitor releaseMonitor;
+    private final Set<String> fields = new TreeSet<>(Set.of(STUDY_KEY));
+    // dbgap_accession -> Opensearch fields of the study, in order of dbgap_accession
+    private volatile Map<String, Map<String, Object>> studies;
+
+    public StudyCatalog(
+            @Value("${study.catalog.enabled:false}") boolean enabled,
+            InventoryESService esService,
+            ReleaseMonitor releaseMonitor) {
+        this.enabled = enabled;
+        this.esService = esService;
+        this.releaseMonitor = releaseMonitor;
+    }
+
+    /**
+     * Keeps a catalog of every release, starting with the current one
+     * Does nothing unless study.catalog.enabled is set
+     * @param newFields Opensearch fields of the studies to keep
+     */
+    public void track(Collection<String> newFields) {
+        if (!enabled) {
+            return;
+        }
+
+        fields.addAll(newFields);
+        releaseMonitor.addListener(this::load);
+    }
+
+    /**
+     * Retrieves every study
+     * @return The studies' Opensearch fields, in order of dbgap_accession, or null if they have to come from Opensearch
+     */
+    public List<Map<String, Object>> studies() {
+        Map<String, Map<String, Object>> currentStudies = studies;
+
+        return currentStudies == null ? null : List.copyOf(currentStudies.values());
+    }
+
+    /**
+     * Retrieves a study
+     * @param dbgapAccession The study's dbgap_accession
+     * @return The study's Opensearch fields, an empty map if there's no such study,
+     *         or null if it has to come from Opensearch
+     */
+    public Map<String, Object> find(String dbgapAccession) {
+        Map<String, Map<String, Object>> currentStudies = studies;
+
+        if (currentStudies == null) {
+            return null;
+        }
+
+        return currentStudies.getOrDefault(dbgapAccession, Map.of());
+    }
+
+    /**
+     * Retrieves a page of studies
+     * @param field Opensearch field to match, or null to match every study
+     * @param values Values of the field to match
+     * @param sortKey Opensearch field to sort by, studies without it come last
+     * @param isDescending Whether to sort in descending order
+     * @param pageSize Number of studies in the page
+     * @param offset Offset of the page
+     * @return The page, or null if it has to come from Opensearch
+     */
+    public List<Map<String, Object>> page(String field, Set<String> values, String sortKey, boolean isDescending,
+            int pageSize, int offset) {
+        Map<String, Map<String, Object>> currentStudies = studies;
+        List<Map<String, Object>> matches = new ArrayList<>();
+
+        if (currentStudies == null || !fields.contains(sortKey)) {
+            return null;
+        }
+
+        for (Map<String, Object> study : currentStudies.values()) {
+            if (field == null || values.contains(String.valueOf(study.get(field)))) {
+                matches.add(study);
+            }
+        }
+
+        // Like Opensearch, missing values come last in either order, and ties are broken by study
+        matches.sort((study, otherStudy) -> {
+            Object value = study.get(sortKey);
+            Object otherValue = otherStudy.get(sortKey);
+            int order;
+
+            if (value == null || otherValue == null) {
+                order = Boolean.compare(value == null, otherValue == null);
+            } else {
+                order = isDescending ? compareValues(otherValue, value) : compareValues(value, otherValue);
+            }
+
+            return order != 0 ? order : String.valueOf(study.get(STUDY_KEY)).compareTo(String.valueOf(otherStudy.get(STUDY_KEY)));
+        });
+
+        return matches.subList(Math.min(offset, matches.size()), Math.min(offset + pageSize, matches.size()));
+    }
+
+    // Numbers are compared as numbers, and everything else as text
+    private static int compareValues(Object value, Object otherValue) {
+        if (value instanceof Number number && otherValue instanceof Number otherNumber) {
+            return Double.compare(number.doubleValue(), otherNumber.doubleValue());
+        }
+
+        return value.toString().compareTo(otherValue.toString());
+    }
+
+    // Loads the catalog of a release, serving the previous release's catalog meanwhile
+    private void load(String newRelease) throws IOException {
+        List<Map<String, Object>> properties = new ArrayList<>();
+        Map<String, Map<String, Object>> loaded = new LinkedHashMap<>();
+        List<Map<String, Object>> sources;
+
+        for (String field : fields) {
+            properties.add(Map.of("gqlName", field, "osName", field));
+        }
+
+        sources = new ArrayList<>(esService.collectAll("studies", Map.of("query", Map.of("match_all", Map.of())), properties));
+        sources.sort(Comparator.comparing(study -> String.valueOf(study.get(STUDY_KEY))));
+
+        for (Map<String, Object> study : sources) {
+            loaded.put(String.valueOf(study.get(STUDY_KEY)), Collections.unmodifiableMap(new HashMap<>(study)));
+        }
+
+        studies = Collections.unmodifiableMap(loaded);
+
+        logger.info("Loaded the study catalog of release " + newRelease + ", with " + loaded.size() + " studies");
+    }
+}
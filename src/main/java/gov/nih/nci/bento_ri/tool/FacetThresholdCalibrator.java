@@ -0,0 +1,328 @@
+package gov.nih.nci.bento_ri.tool;
+
+import com.amazonaws.auth.AWS4Signer;
+import com.amazonaws.auth.DefaultAWSCredentialsProviderChain;
+import com.amazonaws.http.AWSRequestSigningApacheInterceptor;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+import gov.nih.nci.bento_ri.model.PrivateESDataFetcher;
+import gov.nih.nci.bento_ri.service.CountStrategy;
+import gov.nih.nci.bento_ri.service.FacetFilterSettings;
+
+import org.apache.http.HttpHost;
+import org.apache.http.util.EntityUtils;
+import org.opensearch.client.Request;
+import org.opensearch.client.Response;
+import org.opensearch.client.RestClient;
+import org.opensearch.client.RestClientBuilder;
+import org.yaml.snakeyaml.DumperOptions;
+import org.yaml.snakeyaml.Yaml;
+
+import java.io.Closeable;
+import java.io.FileInputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Writer;
+import java.util.*;
+
+/**
+ * Regenerates facet_filter_thresholds.yaml from the data in Opensearch
+ * For every value of every facet filter with the hll count strategy, compares
+ * the cardinality estimate against the exact reverse_nested count, and keeps a
+ * threshold only for the values whose estimate is wrong
+ *
+ * Usage: FacetThresholdCalibrator --host=https://... [--output=...] [--margin=0.1]
+ *   [--facet-filters=...] [--thresholds=...] [--sign-region=us-east-1]
+ */
+public class FacetThresholdCalibrator {
+    public static final String DEFAULT_FACET_FILTERS = "src/main/resources/yaml/facet_filters.yaml";
+    public static final String DEFAULT_THRESHOLDS = "src/main/resources/yaml/facet_filter_thresholds.yaml";
+    public static final double DEFAULT_MARGIN = 0.1;
+    static final String HEADER = String.join("\n",
+        "# Opensearch bucket aggregation counts are approximate, not exact",
+        "# They're more likely to be inaccurate for higher counts",
+        "# Beyond curated thresholds, count results with /_count instead",
+        "# Only facet filters with the hll count_strategy in facet_filters.yaml are recounted",
+        "# Generated by FacetThresholdCalibrator, see README for how to rerun it",
+        "",
+        ""
+    );
+
+    private final SearchBackend backend;
+    private final double margin;
+    private final Gson gson = new GsonBuilder().serializeNulls().create();
+
+    /**
+     * Sends search requests to Opensearch, or to a stand-in for tests
+     */
+    public interface SearchBackend {
+        JsonObject search(String endpoint, String body) throws IOException;
+    }
+
+    /**
+     * Thresholds generated by a calibration run, and how they compare to the previous ones
+     * recountsBefore/recountsAfter - recount queries needed for an unfiltered Explore page
+     * wrongCountsBefore - values with wrong counts that the previous thresholds missed
+     */
+    public static class Result {
+        public final Map<String, Map<String, Map<String, Integer>>> thresholds;
+        public final int recountsBefore;
+        public final int recountsAfter;
+        public final int wrongCountsBefore;
+
+        Result(Map<String, Map<String, Map<String, Integer>>> thresholds, int recountsBefore, int recountsAfter, int wrongCountsBefore) {
+            this.thresholds = thresholds;
+            this.recountsBefore = recountsBefore;
+            this.recountsAfter = recountsAfter;
+            this.wrongCountsBefore = wrongCountsBefore;
+        }
+
+        public int recountsSaved() {
+            return recountsBefore - recountsAfter;
+        }
+    }
+
+    /**
+     * @param backend Where to send search requests
+     * @param margin Fraction below an inaccurate count at which to start recounting
+     */
+    public FacetThresholdCalibrator(SearchBackend backend, double margin) {
+        this.backend = backend;
+        this.margin = margin;
+    }
+
+    /**
+     * Sweeps every facet filter value and computes the smallest set of thresholds that gives exact counts
+     * @param facetFilters Contents of facet_filters.yaml
+     * @param previousThresholds Contents of the current facet_filter_thresholds.yaml
+     * @return
+     * @throws IOException
+     */
+    public Result calibrate(Map<String, List<Map<String, Object>>> facetFilters, Map<String, Map<String, Map<String, Integer>>> previousThresholds) throws IOException {
+        Map<String, Map<String, Map<String, Integer>>> thresholds = new TreeMap<>();
+        int recountsBefore = 0;
+        int recountsAfter = 0;
+        int wrongCountsBefore = 0;
+
+        for (Map.Entry<String, List<Map<String, Object>>> entry : facetFilters.entrySet()) {
+            String index = entry.getKey();
+            Map<String, Map<String, Integer>> indexThresholds = new TreeMap<>();
+            Map<String, Map<String, Integer>> previousIndexThresholds = previousThresholds.getOrDefault(index, Map.of());
+
+            thresholds.put(index, indexThresholds);
+
+            for (Map<String, Object> filter : entry.getValue()) {
+                String field = (String) filter.get("agg_name");
+                String cardinalityAggName = (String) filter.get("cardinality_agg_name");
+
+                // Only estimated counts of nested terms facets are ever recounted
+                FacetFilterSettings settings = FacetFilterSettings.fromConfig(filter);
+
+                if (settings.countStrategy() != CountStrategy.HLL
+                    || cardinalityAggName == null
+                    || index.equals("participants")
+                    || PrivateESDataFetcher.RANGE_PARAMS.contains(field)) {
+                    continue;
+                }
+
+                Map<String, Integer> estimates = estimatedCounts(index, field, cardinalityAggName, settings.precisionThreshold());
+                Map<String, Integer> exactCounts = exactCounts(index, field);
+                Map<String, Integer> previousFieldThresholds = previousIndexThresholds.getOrDefault(field, Map.of());
+                Map<String, Integer> fieldThresholds = new TreeMap<>();
+
+                for (Map.Entry<String, Integer> estimate : estimates.entrySet()) {
+                    String value = estimate.getKey();
+                    int estimatedCount = estimate.getValue();
+                    int exactCount = exactCounts.getOrDefault(value, estimatedCount);
+                    Integer previousThreshold = previousFieldThresholds.get(value);
+
+                    if (previousThreshold != null && estimatedCount > previousThreshold) {
+                        recountsBefore++;
+                    }
+
+                    if (estimatedCount == exactCount) {
+                        continue;
+                    }
+
+                    if (previousThreshold == null || estimatedCount <= previousThreshold) {
+                        wrongCountsBefore++;
+                    }
+
+                    // Start recounting a little below the smallest count that was wrong
+                    fieldThresholds.put(value, (int) Math.floor(Math.min(estimatedCount, exactCount) * (1 - margin)));
+                    recountsAfter++;
+                }
+
+                if (!fieldThresholds.isEmpty()) {
+                    indexThresholds.put(field, fieldThresholds);
+                }
+            }
+        }
+
+        return new Result(thresholds, recountsBefore, recountsAfter, wrongCountsBefore);
+    }
+
+    // Participant counts per value, estimated the same way as the Explore page
+    private Map<String, Integer> estimatedCounts(String index, String field, String cardinalityAggName, int precisionThreshold) throws IOException {
+        Map<String, Integer> counts = new HashMap<>();
+        int dotIndex = cardinalityAggName.indexOf(".");
+        Map<String, Object> cardinality = Map.of("cardinality", Map.of(
+            "field", cardinalityAggName,
+            "precision_threshold", precisionThreshold
+        ));
+        Map<String, Object> cardinalityClause = dotIndex == -1 ? cardinality : Map.of(
+            "nested", Map.of("path", cardinalityAggName.substring(0, dotIndex)),
+            "aggs", Map.of("nested_cardinality_count", cardinality)
+        );
+        Map<String, Object> query = Map.of(
+            "size", 0,
+            "track_total_hits", false,
+            "aggs", Map.of(field, Map.of(
+                "terms", Map.of("field", field, "size", 100000),
+                "aggs", Map.of("cardinality_count", cardinalityClause)
+            ))
+        );
+        JsonObject result = backend.search("/" + index + "/_search", gson.toJson(query));
+        JsonArray buckets = result.getAsJsonObject("aggregations").getAsJsonObject(field).getAsJsonArray("buckets");
+
+        for (JsonElement bucket : buckets) {
+            JsonObject count = bucket.getAsJsonObject().getAsJsonObject("cardinality_count");
+
+            if (dotIndex != -1) {
+                count = count.getAsJsonObject("nested_cardinality_count");
+            }
+
+            counts.put(bucket.getAsJsonObject().get("key").getAsString(), count.get("value").getAsInt());
+        }
+
+        return counts;
+    }
+
+    // Participant counts per value, counted exactly with reverse_nested
+    private Map<String, Integer> exactCounts(String index, String field) throws IOException {
+        Map<String, Integer> counts = new HashMap<>();
+        Map<String, Object> query = Map.of(
+            "size", 0,
+            "track_total_hits", false,
+            "aggs", Map.of("exact_count", Map.of(
+                "nested", Map.of("path", index),
+                "aggs", Map.of("agg_buckets", Map.of(
+                    "terms", Map.of("field", index + "." + field, "size", 100000),
+                    "aggs", Map.of("top_reverse_nested", Map.of("reverse_nested", Map.of()))
+                ))
+            ))
+        );
+        JsonObject result = backend.search("/participants/_search", gson.toJson(query));
+        JsonArray buckets = result.getAsJsonObject("aggregations").getAsJsonObject("exact_count")
+            .getAsJsonObject("agg_buckets").getAsJsonArray("buckets");
+
+        for (JsonElement bucket : buckets) {
+            JsonObject bucketObj = bucket.getAsJsonObject();
+            counts.put(bucketObj.get("key").getAsString(), bucketObj.getAsJsonObject("top_reverse_nested").get("doc_count").getAsInt());
+        }
+
+        return counts;
+    }
+
+    /**
+     * Serializes thresholds in the format of facet_filter_thresholds.yaml
+     * @param thresholds Thresholds keyed by index, then field, then value
+     * @return
+     */
+    public static String toYaml(Map<String, Map<String, Map<String, Integer>>> thresholds) {
+        DumperOptions options = new DumperOptions();
+        options.setDefaultFlowStyle(DumperOptions.FlowStyle.BLOCK);
+        options.setIndent(2);
+
+        return HEADER + new Yaml(options).dump(thresholds);
+    }
+
+    public static void main(String[] args) throws IOException {
+        Map<String, String> options = new HashMap<>();
+
+        for (String arg : args) {
+            int equalsIndex = arg.indexOf("=");
+
+            if (!arg.startsWith("--") || equalsIndex == -1) {
+                throw new IllegalArgumentException("Expected --option=value, got " + arg);
+            }
+
+            // Empty values are treated as not given
+            if (equalsIndex < arg.length() - 1) {
+                options.put(arg.substring(2, equalsIndex), arg.substring(equalsIndex + 1));
+            }
+        }
+
+        if (!options.containsKey("host")) {
+            throw new IllegalArgumentException("Missing --host=<Opensearch URL>");
+        }
+
+        String thresholdsPath = options.getOrDefault("thresholds", DEFAULT_THRESHOLDS);
+        String outputPath = options.getOrDefault("output", thresholdsPath);
+        double margin = Double.parseDouble(options.getOrDefault("margin", String.valueOf(DEFAULT_MARGIN)));
+        Map<String, List<Map<String, Object>>> facetFilters = loadYaml(options.getOrDefault("facet-filters", DEFAULT_FACET_FILTERS));
+        Map<String, Map<String, Map<String, Integer>>> previousThresholds = loadYaml(thresholdsPath);
+        Result result;
+
+        try (RestSearchBackend backend = new RestSearchBackend(options.get("host"), options.get("sign-region"))) {
+            result = new FacetThresholdCalibrator(backend, margin).calibrate(facetFilters, previousThresholds);
+        }
+
+        try (Writer writer = new FileWriter(outputPath)) {
+            writer.write(toYaml(result.thresholds));
+        }
+
+        System.out.println("Wrote thresholds to " + outputPath);
+        System.out.println("Recount queries for an unfiltered Explore page: " + result.recountsBefore + " before, " + result.recountsAfter + " after");
+        System.out.println("Recount queries saved: " + result.recountsSaved());
+        System.out.println("Wrong counts the previous thresholds missed: " + result.wrongCountsBefore);
+    }
+
+    private static <T> T loadYaml(String path) throws IOException {
+        try (InputStream inputStream = new FileInputStream(path)) {
+            return new Yaml().load(inputStream);
+        }
+    }
+
+    /**
+     * Sends search requests to an Opensearch cluster, signing them for AWS if a region is given
+     */
+    static class RestSearchBackend implements SearchBackend, Closeable {
+        private final RestClient client;
+
+        RestSearchBackend(String host, String signRegion) {
+            RestClientBuilder builder = RestClient.builder(HttpHost.create(host));
+
+            if (signRegion != null) {
+                AWS4Signer signer = new AWS4Signer();
+                signer.setServiceName("es");
+                signer.setRegionName(signRegion);
+                builder.setHttpClientConfigCallback(callback -> callback.addInterceptorLast(
+                    new AWSRequestSigningApacheInterceptor("es", signer, new DefaultAWSCredentialsProviderChain())
+                ));
+            }
+
+            client = builder.build();
+        }
+
+        @Override
+        public JsonObject search(String endpoint, String body) throws IOException {
+            Request request = new Request("GET", endpoint);
+            request.setJsonEntity(body);
+            Response response = client.performRequest(request);
+
+            return JsonParser.parseString(EntityUtils.toString(response.getEntity())).getAsJsonObject();
+        }
+
+        @Override
+        public void close() throws IOException {
+            client.close();
+        }
+    }
+}
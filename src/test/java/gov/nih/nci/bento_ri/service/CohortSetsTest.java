@@ -0,0 +1,37 @@
+package gov.nih.nci.bento_ri.service;
+
+import org.junit.Test;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class CohortSetsTest {
+    @Test
+    public void compare_Test() {
+        CohortSets.Comparison comparison = CohortSets.compare(List.of(
+            new String[] {"PT_1", "PT_2", "PT_3", "PT_5"},
+            new String[] {"PT_2", "PT_3", "PT_4"},
+            new String[] {"PT_3", "PT_6"}
+        ));
+
+        assertThat(comparison.regions(), is(Map.of(1, 2, 3, 1, 7, 1, 2, 1, 4, 1)));
+        assertThat(List.of(comparison.intersection()), is(List.of("PT_3")));
+        assertThat(List.of(comparison.union()), is(List.of("PT_1", "PT_2", "PT_3", "PT_4", "PT_5", "PT_6")));
+        assertThat(List.of(comparison.difference()), is(List.of("PT_1", "PT_5")));
+    }
+
+    @Test
+    public void emptyCohort_Test() {
+        CohortSets.Comparison comparison = CohortSets.compare(List.of(
+            new String[] {"PT_1"},
+            new String[] {}
+        ));
+
+        assertThat(comparison.regions(), is(Map.of(1, 1)));
+        assertThat(comparison.intersection().length, is(0));
+        assertThat(List.of(comparison.difference()), is(List.of("PT_1")));
+    }
+}
@@ -0,0 +1,86 @@
+package gov.nih.nci.bento_ri.service;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class CohortStoreTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void register_Test() throws IOException {
+        CohortStore store = new CohortStore(100, "", 10);
+        String handle = store.register(List.of("PT_3", "PT_1", "PT_3", "PT_2"));
+
+        assertThat(CohortStore.isHandle(handle), is(true));
+        assertThat(store.register(List.of("PT_1", "PT_2", "PT_3")), is(handle));
+        assertThat(store.register(List.of("PT_1", "PT_2")), is(not(handle)));
+        assertThat(List.of(store.get(handle)), is(List.of("PT_1", "PT_2", "PT_3")));
+    }
+
+    @Test
+    public void resolve_Test() throws IOException {
+        CohortStore store = new CohortStore(100, "", 10);
+        String handle = store.register(List.of("PT_2", "PT_1"));
+        List<String> ids = List.of("PT_9");
+
+        assertThat(store.resolve(ids) == ids, is(true));
+        assertThat(store.resolve(List.of(handle, "PT_2", "PT_3")), is(List.of("PT_1", "PT_2", "PT_3")));
+    }
+
+    @Test
+    public void filterClause_Test() throws IOException {
+        CohortStore store = new CohortStore(100, "", 2);
+        String handle = store.register(List.of("PT_2", "PT_1"));
+
+        assertThat(store.filterClause("id", List.of("")), is(nullValue()));
+        assertThat(store.filterClause("id", List.of(handle)), is(Map.of("terms", Map.of("id", List.of("PT_1", "PT_2")))));
+        assertThat(store.filterClause("participant_pk", List.of("PT_3", handle, "PT_1")), is(Map.of("bool", Map.of(
+            "should", List.of(
+                Map.of("terms", Map.of("participant_pk", List.of("PT_1", "PT_2"))),
+                Map.of("terms", Map.of("participant_pk", List.of("PT_3")))
+            ),
+            "minimum_should_match", 1
+        ))));
+    }
+
+    // Plain IDs, as cohortSetOperations looks up, split only once they're over the limit
+    @Test
+    public void filterClauseAtLimit_Test() throws IOException {
+        CohortStore store = new CohortStore(100, "", 3);
+
+        assertThat(store.filterClause("id", List.of("PT_3", "PT_1", "PT_2", "PT_1")),
+            is(Map.of("terms", Map.of("id", List.of("PT_1", "PT_2", "PT_3")))));
+        assertThat(store.filterClause("id", List.of("PT_4", "PT_3", "PT_1", "PT_2")), is(Map.of("bool", Map.of(
+            "should", List.of(
+                Map.of("terms", Map.of("id", List.of("PT_1", "PT_2", "PT_3"))),
+                Map.of("terms", Map.of("id", List.of("PT_4")))
+            ),
+            "minimum_should_match", 1
+        ))));
+    }
+
+    @Test(expected = IOException.class)
+    public void unknownHandle_Test() throws IOException {
+        new CohortStore(100, "", 10).resolve(List.of(CohortStore.HANDLE_PREFIX + "0123"));
+    }
+
+    @Test
+    public void persistence_Test() throws IOException {
+        String directory = folder.getRoot().getPath();
+        String handle = new CohortStore(100, directory, 10).register(List.of("PT_2", "PT_1"));
+
+        assertThat(List.of(new CohortStore(100, directory, 10).get(handle)), is(List.of("PT_1", "PT_2")));
+        assertThat(new CohortStore(100, "", 10).find(handle), is(nullValue()));
+    }
+}
@@ -0,0 +1,50 @@
+package gov.nih.nci.bento_ri.service;
+
+import org.junit.Test;
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class CursorRegistryTest {
+    @Test
+    public void fullPool_Test() {
+        CursorRegistry registry = new CursorRegistry(1000);
+
+        for (int i = 0; i < CursorRegistry.Pool.EXPORT.maxOpen; i++) {
+            assertThat(registry.add("export" + i, CursorRegistry.Pool.EXPORT, 0), is(true));
+        }
+
+        // A full pool refuses new cursors, and doesn't touch the open ones or the other pool
+        assertThat(registry.add("export", CursorRegistry.Pool.EXPORT, 10), is(false));
+        assertThat(registry.size(CursorRegistry.Pool.EXPORT), is(CursorRegistry.Pool.EXPORT.maxOpen));
+        assertThat(registry.add("interactive", CursorRegistry.Pool.INTERACTIVE, 10), is(true));
+    }
+
+    @Test
+    public void expiry_Test() {
+        CursorRegistry registry = new CursorRegistry(1000);
+
+        for (int i = 0; i < CursorRegistry.Pool.EXPORT.maxOpen; i++) {
+            registry.add("export" + i, CursorRegistry.Pool.EXPORT, 0);
+        }
+
+        // Reading a cursor keeps it alive, the others expire
+        registry.touch("export0", 900);
+
+        assertThat(registry.add("export", CursorRegistry.Pool.EXPORT, 1500), is(true));
+        assertThat(registry.size(CursorRegistry.Pool.EXPORT), is(2));
+        assertThat(registry.remove("export0"), is(true));
+        assertThat(registry.remove("export1"), is(false));
+    }
+
+    @Test
+    public void rename_Test() {
+        CursorRegistry registry = new CursorRegistry(1000);
+
+        registry.add("pit", CursorRegistry.Pool.INTERACTIVE, 0);
+        registry.rename("pit", "newPit");
+
+        assertThat(registry.remove("pit"), is(false));
+        assertThat(registry.remove("newPit"), is(true));
+    }
+}
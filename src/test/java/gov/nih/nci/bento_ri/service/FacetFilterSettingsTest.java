@@ -0,0 +1,74 @@
+package gov.nih.nci.bento_ri.service;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class FacetFilterSettingsTest {
+    @Test
+    public void fromConfig_Test() {
+        FacetFilterSettings settings = FacetFilterSettings.fromConfig(Map.of(
+            "agg_name", "diagnosis",
+            "cardinality_agg_name", "participant.id",
+            "count_strategy", "hll",
+            "precision_threshold", 3000,
+            "max_buckets", 500
+        ));
+
+        assertThat(settings.countStrategy(), is(CountStrategy.HLL));
+        assertThat(settings.precisionThreshold(), is(3000));
+        assertThat(settings.maxBuckets(), is(500));
+    }
+
+    @Test
+    public void fromConfigQuoted_Test() {
+        FacetFilterSettings settings = FacetFilterSettings.fromConfig(Map.of(
+            "agg_name", "diagnosis",
+            "count_strategy", "exact",
+            "precision_threshold", " 3000",
+            "max_buckets", "500"
+        ));
+
+        assertThat(settings.countStrategy(), is(CountStrategy.EXACT));
+        assertThat(settings.precisionThreshold(), is(3000));
+        assertThat(settings.maxBuckets(), is(500));
+    }
+
+    @Test
+    public void fromConfigDefaults_Test() {
+        FacetFilterSettings settings = FacetFilterSettings.fromConfig(Map.of("agg_name", "race"));
+
+        assertThat(settings.countStrategy(), is(CountStrategy.DOC_COUNT));
+        assertThat(settings.precisionThreshold(), is(CountStrategy.DEFAULT_PRECISION_THRESHOLD));
+        assertThat(settings.maxBuckets(), is(nullValue()));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void fromConfigNotANumber_Test() {
+        FacetFilterSettings.fromConfig(Map.of("agg_name", "diagnosis", "precision_threshold", "high"));
+    }
+
+    @Test
+    public void textSettings_Test() {
+        Map<String, Object> facetFilter = new HashMap<>(Map.of("agg_name", "diagnosis", "precision_threshold", 3000));
+        Map<String, String> textSettings;
+
+        facetFilter.put("widget_count_name", null);
+        textSettings = FacetFilterSettings.textSettings(facetFilter);
+
+        assertThat(textSettings.get("agg_name"), is("diagnosis"));
+        assertThat(textSettings.get("precision_threshold"), is("3000"));
+        assertThat(textSettings.get("widget_count_name"), is(nullValue()));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void textSettingsList_Test() {
+        FacetFilterSettings.textSettings(Map.of("agg_name", List.of("diagnosis")));
+    }
+}
@@ -0,0 +1,106 @@
+package gov.nih.nci.bento_ri.service;
+
+import org.junit.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class FacetIndexTest {
+    private static final FacetIndex INDEX = FacetIndex.build(
+        Map.of(
+            "participants", List.of(
+                Map.of("id", "P1", "race", List.of("White"), "study_id", "S1"),
+                Map.of("id", "P2", "race", List.of("Asian"), "study_id", "S1"),
+                Map.of("id", "P3", "race", List.of("White"), "study_id", "S2")
+            ),
+            "diagnoses", List.of(
+                Map.of("diagnosis", "Neuroblastoma", "anatomic_site", List.of("Brain"), "age_at_diagnosis", 100.0, "participant", Map.of("id", "P1")),
+                Map.of("diagnosis", "Wilms tumor", "anatomic_site", List.of("Kidney"), "age_at_diagnosis", 4000.0, "participant", Map.of("id", "P1")),
+                Map.of("diagnosis", "Neuroblastoma", "anatomic_site", List.of("Kidney"), "age_at_diagnosis", 2000.0, "participant", Map.of("id", "P2")),
+                Map.of("diagnosis", "Ependymoma", "anatomic_site", List.of("Brain"), "age_at_diagnosis", 12000.0, "participant", Map.of("id", "P3"))
+            ),
+            "treatments", List.of(
+                Map.of("treatment_type", "Chemotherapy", "participant", Map.of("id", "P1")),
+                Map.of("treatment_type", "Surgical procedure", "participant", Map.of("id", "P3")),
+                Map.of("treatment_type", "Radiation therapy", "participant", Map.of("id", "P9"))
+            )
+        ),
+        Map.of(
+            "race", new FacetIndex.Field("participants", "race"),
+            "study_id", new FacetIndex.Field("participants", "study_id"),
+            "diagnosis", new FacetIndex.Field("diagnoses", "diagnosis"),
+            "anatomic_site", new FacetIndex.Field("diagnoses", "anatomic_site"),
+            "age_at_diagnosis", new FacetIndex.Field("diagnoses", "age_at_diagnosis"),
+            "treatment_type", new FacetIndex.Field("treatments", "treatment_type")
+        ),
+        Set.of("age_at_diagnosis")
+    );
+
+    private static Map<String, Object> group(String value, int subjects) {
+        return Map.of("group", value, "subjects", subjects);
+    }
+
+    @Test
+    public void count_Test() {
+        FacetIndex.Selection all = INDEX.select(Map.of(), Map.of());
+        FacetIndex.Selection treated = INDEX.select(Map.of("treatment_type", Set.of("Chemotherapy")), Map.of());
+
+        assertThat(all.count("participants"), is(3));
+        assertThat(all.count("diagnoses"), is(4));
+        assertThat(all.count("treatments"), is(2));
+        assertThat(all.countValues("diagnosis"), is(3));
+        assertThat(all.countValues("study_id"), is(2));
+        assertThat(treated.count("diagnoses"), is(2));
+        assertThat(treated.countValues("study_id"), is(1));
+    }
+
+    @Test
+    public void groupCounts_Test() {
+        FacetIndex.Selection white = INDEX.select(Map.of("race", Set.of("White")), Map.of());
+
+        assertThat(white.groupCounts("race", Set.of("race"), CountStrategy.DOC_COUNT), is(List.of(group("White", 2), group("Asian", 1))));
+        assertThat(white.groupCounts("race", Set.of(), CountStrategy.DOC_COUNT), is(List.of(group("White", 2))));
+        assertThat(white.groupCounts("diagnosis", Set.of("diagnosis"), CountStrategy.HLL),
+            is(List.of(group("Ependymoma", 1), group("Neuroblastoma", 1), group("Wilms tumor", 1))));
+    }
+
+    @Test
+    public void exactGroupCounts_Test() {
+        FacetIndex.Selection brain = INDEX.select(Map.of("anatomic_site", Set.of("Brain")), Map.of());
+
+        // Other filters of the same index apply to each diagnosis, or to each participant for exact counts
+        assertThat(brain.groupCounts("diagnosis", Set.of("diagnosis"), CountStrategy.HLL),
+            is(List.of(group("Ependymoma", 1), group("Neuroblastoma", 1))));
+        assertThat(brain.groupCounts("diagnosis", Set.of("diagnosis"), CountStrategy.EXACT),
+            is(List.of(group("Ependymoma", 1), group("Neuroblastoma", 1), group("Wilms tumor", 1))));
+    }
+
+    @Test
+    public void range_Test() {
+        FacetIndex.Selection young = INDEX.select(Map.of(), Map.of("age_at_diagnosis", new Double[] {0.0, 3000.0}));
+        FacetIndex.Selection asian = INDEX.select(Map.of("race", Set.of("Asian")), Map.of("age_at_diagnosis", new Double[] {null, 100.0}));
+        List<Map<String, Object>> buckets = List.of(
+            Map.of("key", "young", "from", 0, "to", 5000),
+            Map.of("key", "old", "from", 5000)
+        );
+
+        assertThat(young.count("diagnoses"), is(2));
+        assertThat(young.count("participants"), is(2));
+        assertThat(asian.rangeStats("age_at_diagnosis"), is(Map.of("lowerBound", 2000, "subjects", 1, "upperBound", 2000)));
+        assertThat(INDEX.select(Map.of(), Map.of()).rangeCounts("age_at_diagnosis", buckets, CountStrategy.HLL),
+            is(List.of(group("young", 2), group("old", 1))));
+        assertThat(INDEX.select(Map.of(), Map.of()).rangeCounts("age_at_diagnosis", buckets, CountStrategy.DOC_COUNT),
+            is(List.of(group("young", 3), group("old", 1))));
+    }
+
+    @Test
+    public void unknownFilter_Test() {
+        assertThat(INDEX.select(Map.of("gene_symbol", Set.of("MYCN")), Map.of()), is(nullValue()));
+        assertThat(INDEX.select(Map.of(), Map.of("diagnosis", new Double[] {0.0, 1.0})), is(nullValue()));
+    }
+}
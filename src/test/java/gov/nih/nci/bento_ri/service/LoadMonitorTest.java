@@ -0,0 +1,51 @@
+package gov.nih.nci.bento_ri.service;
+
+import org.junit.Test;
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class LoadMonitorTest {
+    @Test
+    public void notBusy_Test() {
+        LoadMonitor monitor = new LoadMonitor();
+
+        monitor.record(50, false, 1000);
+
+        assertThat(monitor.isBusy(1000), is(false));
+    }
+
+    @Test
+    public void busyAfterRejection_Test() {
+        LoadMonitor monitor = new LoadMonitor();
+
+        monitor.record(50, true, 1000);
+
+        assertThat(monitor.isBusy(1000 + LoadMonitor.BACKOFF_MILLIS - 1), is(true));
+        assertThat(monitor.isBusy(1000 + LoadMonitor.BACKOFF_MILLIS), is(false));
+    }
+
+    @Test
+    public void busyWhileSlow_Test() {
+        LoadMonitor monitor = new LoadMonitor();
+
+        for (int i = 0; i < 20; i++) {
+            monitor.record(5000, false, 1000);
+        }
+
+        assertThat(monitor.isBusy(1000), is(true));
+
+        for (int i = 0; i < 20; i++) {
+            monitor.record(10, false, 1000);
+        }
+
+        assertThat(monitor.isBusy(1000), is(false));
+    }
+
+    @Test
+    public void isRejection_Test() {
+        assertThat(LoadMonitor.isRejection(429), is(true));
+        assertThat(LoadMonitor.isRejection(503), is(true));
+        assertThat(LoadMonitor.isRejection(404), is(false));
+    }
+}
@@ -0,0 +1,116 @@
+package gov.nih.nci.bento_ri.service;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class ManifestJobServiceTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static final List<Map<String, Object>> PROPERTIES = List.of(Map.of("gqlName", "id", "osName", "id"));
+
+    private static final String OWNER = "owner";
+
+    private ManifestJobService service(int maxRetained) throws Exception {
+        ManifestJobService service = new ManifestJobService(folder.getRoot().toString(), 1, 5, 24, maxRetained);
+
+        service.restoreJobs();
+
+        return service;
+    }
+
+    private ManifestJobService.Job finish(ManifestJobService service, String id) throws Exception {
+        ManifestJobService.Job job = service.submit("participants", ManifestWriter.Format.CSV, OWNER, writer -> {
+            writer.writeHeader(PROPERTIES);
+            writer.writeRow(Map.of("id", id));
+        });
+
+        for (int i = 0; i < 500 && (job.getStatus() == ManifestJobService.Status.QUEUED || job.getStatus() == ManifestJobService.Status.RUNNING); i++) {
+            Thread.sleep(10);
+        }
+
+        return job;
+    }
+
+    @Test
+    public void restoreFinishedJobs_Test() throws Exception {
+        ManifestJobService service = service(10);
+        ManifestJobService.Job job = finish(service, "PT_1");
+        ManifestJobService restoredService;
+        ManifestJobService.Job restoredJob;
+
+        service.shutdown();
+        restoredService = service(10);
+        restoredJob = restoredService.getJob(job.id, OWNER);
+        restoredService.shutdown();
+
+        assertThat(job.getStatus(), is(ManifestJobService.Status.DONE));
+        assertThat(restoredJob.getStatus(), is(ManifestJobService.Status.DONE));
+        assertThat(restoredJob.getRowCount(), is(1L));
+        assertThat(restoredJob.getFileName(), is("participants.csv.gz"));
+    }
+
+    @Test
+    public void deleteOrphanedFiles_Test() throws Exception {
+        Path directory = folder.getRoot().toPath();
+        String orphanId = UUID.randomUUID().toString();
+
+        Files.writeString(directory.resolve(orphanId + ".partial"), "id\n");
+        Files.writeString(directory.resolve(orphanId + ".gz"), "id\n");
+        Files.writeString(directory.resolve("notes.gz"), "kept");
+        service(10).shutdown();
+
+        assertThat(Files.exists(directory.resolve(orphanId + ".partial")), is(false));
+        assertThat(Files.exists(directory.resolve(orphanId + ".gz")), is(false));
+        assertThat(Files.exists(directory.resolve("notes.gz")), is(true));
+    }
+
+    @Test
+    public void deleteExcessJobs_Test() throws Exception {
+        ManifestJobService service = service(1);
+        ManifestJobService.Job oldJob = finish(service, "PT_1");
+        ManifestJobService.Job newJob;
+
+        Thread.sleep(5);
+        newJob = finish(service, "PT_2");
+        service.shutdown();
+
+        assertThat(service.getJob(oldJob.id, OWNER), is(nullValue()));
+        assertThat(Files.exists(service.getFile(oldJob)), is(false));
+        assertThat(service.getJob(newJob.id, OWNER).getStatus(), is(ManifestJobService.Status.DONE));
+    }
+
+    @Test
+    public void otherOwner_Test() throws Exception {
+        ManifestJobService service = service(10);
+        ManifestJobService.Job job = finish(service, "PT_1");
+        ManifestJobService restoredService;
+
+        service.shutdown();
+        restoredService = service(10);
+        restoredService.shutdown();
+
+        // Jobs are only found for their submitter, before and after a restart
+        assertThat(service.getJob(job.id, "someone else"), is(nullValue()));
+        assertThat(service.getJob(job.id, null), is(nullValue()));
+        assertThat(restoredService.getJob(job.id, "someone else"), is(nullValue()));
+        assertThat(restoredService.getJob(job.id, OWNER).id, is(job.id));
+    }
+
+    @Test
+    public void isJobId_Test() {
+        assertThat(ManifestJobService.isJobId(UUID.randomUUID().toString()), is(true));
+        assertThat(ManifestJobService.isJobId("notes"), is(false));
+    }
+}
@@ -0,0 +1,82 @@
+package gov.nih.nci.bento_ri.service;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class ManifestWriterTest {
+    private static final List<Map<String, Object>> PROPERTIES = List.of(
+        Map.of("gqlName", "participant_id", "osName", "participant_id"),
+        Map.of("gqlName", "race", "osName", "race"),
+        Map.of("gqlName", "cpi_data", "osName", "cpi_data", "nested", List.of(
+            Map.of("gqlName", "associated_id", "osName", "associated_id")
+        ))
+    );
+
+    private static final Map<String, Object> ROW = Map.of(
+        "participant_id", "PT_1",
+        "race", List.of("Asian", "White"),
+        "cpi_data", List.of(Map.of("associated_id", "A, 1"), Map.of("associated_id", "B"))
+    );
+
+    private static String write(ManifestWriter.Format format) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ManifestWriter writer = new ManifestWriter(out, format);
+
+        writer.writeHeader(PROPERTIES);
+        writer.writeRow(ROW);
+        writer.flush();
+
+        return out.toString(StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void writeCsv_Test() throws Exception {
+        assertThat(write(ManifestWriter.Format.CSV), is(
+            "participant_id,race,cpi_data.associated_id\n"
+            + "PT_1,Asian;White,\"A, 1;B\"\n"
+        ));
+    }
+
+    @Test
+    public void writeTsv_Test() throws Exception {
+        assertThat(write(ManifestWriter.Format.TSV), is(
+            "participant_id\trace\tcpi_data.associated_id\n"
+            + "PT_1\tAsian;White\tA, 1;B\n"
+        ));
+    }
+
+    @Test
+    public void escapeFormula_Test() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ManifestWriter writer = new ManifestWriter(out, ManifestWriter.Format.CSV);
+
+        writer.writeHeader(PROPERTIES);
+        writer.writeRow(Map.of("participant_id", "=HYPERLINK(\"http://x\")", "race", List.of("@SUM(A1)", "+1"), "cpi_data", List.of(Map.of("associated_id", "\rB"))));
+        writer.writeRow(Map.of("participant_id", "-1", "race", List.of("PT=1"), "cpi_data", List.of(Map.of("associated_id", "\tC"))));
+        writer.flush();
+
+        assertThat(out.toString(StandardCharsets.UTF_8), is(
+            "participant_id,race,cpi_data.associated_id\n"
+            + "\"'=HYPERLINK(\"\"http://x\"\")\",'@SUM(A1);+1,\"'\rB\"\n"
+            + "'-1,PT=1,'\tC\n"
+        ));
+        assertThat(ManifestWriter.escapeFormula(""), is(""));
+    }
+
+    @Test
+    public void toText_Test() {
+        ManifestWriter writer = new ManifestWriter(new ByteArrayOutputStream(), ManifestWriter.Format.CSV);
+
+        assertThat(writer.toText(12.0), is("12"));
+        assertThat(writer.toText(12.5), is("12.5"));
+        assertThat(writer.toText(null), is(""));
+        assertThat(writer.toText(Map.of("diagnosis", "Neuroblastoma")), is("{\"diagnosis\":\"Neuroblastoma\"}"));
+    }
+}
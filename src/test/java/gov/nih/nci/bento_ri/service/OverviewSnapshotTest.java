@@ -0,0 +1,77 @@
+package gov.nih.nci.bento_ri.service;
+
+import org.junit.BeforeClass;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class OverviewSnapshotTest {
+    @ClassRule
+    public static TemporaryFolder folder = new TemporaryFolder();
+
+    private static OverviewSnapshot snapshot;
+
+    @BeforeClass
+    public static void writeSnapshot() throws Exception {
+        Path directory = folder.getRoot().toPath().resolve("diagnoses");
+        Map<String, String> fields = new LinkedHashMap<>();
+        List<Map<String, Object>> sources = List.of(
+            Map.of("id", "DX_1", "diagnosis", List.of("Neuroblastoma", "Wilms tumor"), "age_at_diagnosis", 4015.0,
+                "age_at_diagnosis_str", "4015", "participant", Map.of("participant_id", "PT_2")),
+            Map.of("id", "DX_2", "diagnosis", List.of("Ependymoma"), "age_at_diagnosis", 365.0,
+                "age_at_diagnosis_str", "365", "participant", Map.of("participant_id", "PT_1")),
+            Map.of("id", "DX_3", "diagnosis", List.of("Neuroblastoma"), "participant", Map.of("participant_id", "PT_3"))
+        );
+
+        fields.put("id", "id");
+        fields.put("diagnosis", "diagnosis");
+        fields.put("age_at_diagnosis", "age_at_diagnosis_str");
+        fields.put("participant", "participant");
+        OverviewSnapshot.write(directory, sources, fields, Set.of("diagnosis"), Set.of("age_at_diagnosis"),
+            Set.of("id", "age_at_diagnosis", "participant.participant_id"));
+        snapshot = OverviewSnapshot.open(directory);
+    }
+
+    private static List<Object> ids(List<Map<String, Object>> page) {
+        return page.stream().map(row -> row.get("id")).collect(Collectors.toList());
+    }
+
+    @Test
+    public void sort_Test() {
+        assertThat(ids(snapshot.page(Map.of(), Map.of(), "participant.participant_id", false, 10, 0)), is(List.of("DX_2", "DX_1", "DX_3")));
+        assertThat(ids(snapshot.page(Map.of(), Map.of(), "age_at_diagnosis", true, 10, 0)), is(List.of("DX_1", "DX_2", "DX_3")));
+        assertThat(ids(snapshot.page(Map.of(), Map.of(), "id", true, 2, 1)), is(List.of("DX_2", "DX_1")));
+    }
+
+    @Test
+    public void filter_Test() {
+        assertThat(ids(snapshot.page(Map.of("diagnosis", Set.of("Neuroblastoma")), Map.of(), "id", false, 10, 0)), is(List.of("DX_1", "DX_3")));
+        assertThat(ids(snapshot.page(Map.of(), Map.of("age_at_diagnosis", new Double[] {null, 1000.0}), "id", false, 10, 0)), is(List.of("DX_2")));
+        assertThat(ids(snapshot.page(Map.of("diagnosis", Set.of("Glioma")), Map.of(), "id", false, 10, 0)), is(List.of()));
+    }
+
+    @Test
+    public void rows_Test() {
+        Map<String, Object> row = snapshot.page(Map.of(), Map.of(), "id", false, 1, 0).get(0);
+
+        assertThat(row.get("age_at_diagnosis"), is("4015"));
+        assertThat(row.get("participant"), is(Map.of("participant_id", "PT_2")));
+    }
+
+    @Test
+    public void unsupported_Test() {
+        assertThat(snapshot.page(Map.of(), Map.of(), "diagnosis_id", false, 10, 0), is(nullValue()));
+        assertThat(snapshot.page(Map.of("anatomic_site", Set.of("Brain")), Map.of(), "id", false, 10, 0), is(nullValue()));
+    }
+}
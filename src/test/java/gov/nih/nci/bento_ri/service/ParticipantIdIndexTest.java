@@ -0,0 +1,62 @@
+package gov.nih.nci.bento_ri.service;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class ParticipantIdIndexTest {
+    private ParticipantIdIndex buildIndex() {
+        List<String> participantIds = new ArrayList<>();
+
+        // Enough IDs for several blocks
+        for (int i = 0; i < 40; i++) {
+            participantIds.add(String.format("PAT%03d", i));
+        }
+
+        return ParticipantIdIndex.build(
+            participantIds,
+            List.of(
+                Map.of("associated_id", "PAT015", "participant_id", "PAT003"),
+                Map.of("associated_id", "PBX_1", "participant_id", "PAT001")
+            ),
+            List.of(
+                Map.of("participant_id", "PAT002", "study_id", "phs2"),
+                Map.of("participant_id", "PAT002", "study_id", "phs1"),
+                Map.of("participant_id", "PAT005", "study_id", "phs1")
+            )
+        );
+    }
+
+    @Test
+    public void suggest_Test() {
+        ParticipantIdIndex index = buildIndex();
+
+        assertThat(index.size(), is(42));
+        assertThat(index.suggest("PAT01", 3), is(List.of(
+            new ParticipantIdIndex.Match("PAT010", "PAT010"),
+            new ParticipantIdIndex.Match("PAT011", "PAT011"),
+            new ParticipantIdIndex.Match("PAT012", "PAT012")
+        )));
+        assertThat(index.suggest("PAT015", 10), is(List.of(
+            new ParticipantIdIndex.Match("PAT015", "PAT015"),
+            new ParticipantIdIndex.Match("PAT015", "PAT003")
+        )));
+        assertThat(index.suggest("PAT03", 100).size(), is(10));
+        assertThat(index.suggest("PB", 10), is(List.of(new ParticipantIdIndex.Match("PBX_1", "PAT001"))));
+        assertThat(index.suggest("Q", 10), is(List.of()));
+    }
+
+    @Test
+    public void findParticipants_Test() {
+        assertThat(buildIndex().findParticipants(List.of("PAT005", "PAT002", "PAT009", "PAT002")), is(List.of(
+            Map.of("participant_id", "PAT002", "study_id", "phs1"),
+            Map.of("participant_id", "PAT002", "study_id", "phs2"),
+            Map.of("participant_id", "PAT005", "study_id", "phs1")
+        )));
+    }
+}
@@ -0,0 +1,127 @@
+package gov.nih.nci.bento_ri.service;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class ParticipantIdResolverTest {
+    // Only PAT1 and PAT3 exist, and the index is disabled so every ID is looked up
+    private static final Map<String, String> STUDIES = Map.of("PAT1", "phs1", "PAT3", "phs2");
+
+    private ParticipantIdResolver resolver(int maxIds) {
+        return new ParticipantIdResolver(new ParticipantIdLookup(false, null, null), window -> {
+            List<List<Map<String, Object>>> results = new ArrayList<>();
+
+            for (List<String> chunk : window) {
+                List<Map<String, Object>> participants = new ArrayList<>();
+
+                for (String id : chunk) {
+                    if (STUDIES.containsKey(id)) {
+                        participants.add(Map.of("participant_id", id, "study_id", STUDIES.get(id), "participant_pk", id + "_pk"));
+                    }
+                }
+
+                results.add(participants);
+            }
+
+            return results;
+        }, 2, maxIds);
+    }
+
+    private String resolve(String upload, int maxIds) throws IOException {
+        ParticipantIdResolver resolver = resolver(maxIds);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        resolver.resolve(resolver.readIds(new StringReader(upload)), new ManifestWriter(out, ManifestWriter.Format.CSV));
+
+        return out.toString(StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void parseLine_Test() {
+        assertThat(ParticipantIdResolver.parseLine(" PAT1 ,\"PAT2\",, PAT3", ','), is(List.of("PAT1", "PAT2", "", "PAT3")));
+        assertThat(ParticipantIdResolver.parseLine("\"PAT,1\",\"say \"\"hi\"\"\"", ','), is(List.of("PAT,1", "say \"hi\"")));
+        assertThat(ParticipantIdResolver.parseLine("PAT1\tPAT,2", '\t'), is(List.of("PAT1", "PAT,2")));
+        assertThat(ParticipantIdResolver.parseLine("  ", ','), is(List.of("")));
+    }
+
+    @Test
+    public void readIds_Test() throws IOException {
+        ParticipantIdResolver resolver = resolver(10);
+
+        assertThat(resolver.readIds(new StringReader("\uFEFFPAT1\n\nPAT2\nPAT1\n")), is(Set.of("PAT1", "PAT2")));
+        assertThat(List.copyOf(resolver.readIds(new StringReader("PAT2,phs1\nPAT1,\"phs,2\"\n"))), is(List.of("PAT2", "PAT1")));
+        assertThat(List.copyOf(resolver.readIds(new StringReader("study,Participant_ID\nphs1,PAT2\n\"phs,2\",\"PAT1\"\n"))), is(List.of("PAT2", "PAT1")));
+        assertThat(List.copyOf(resolver.readIds(new StringReader("\"participant id\"\tstudy\nPAT3\tphs2\n"))), is(List.of("PAT3")));
+    }
+
+    @Test
+    public void readIdsAtLimit_Test() throws IOException {
+        assertThat(resolver(3).readIds(new StringReader("PAT1\nPAT2\nPAT3\nPAT2\n")).size(), is(3));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void readIdsOverLimit_Test() throws IOException {
+        resolver(3).readIds(new StringReader("PAT1\nPAT2\nPAT3\nPAT4\n"));
+    }
+
+    @Test
+    public void resolve_Test() throws IOException {
+        assertThat(resolve("participant_id\nPAT1\nPAT2\nPAT3\nPAT4\nPAT5\n", 10), is(
+            "participant_id,study_id,participant_pk,found\n"
+            + "PAT1,phs1,PAT1_pk,true\n"
+            + "PAT2,,,false\n"
+            + "PAT3,phs2,PAT3_pk,true\n"
+            + "PAT4,,,false\n"
+            + "PAT5,,,false\n"
+        ));
+    }
+
+    @Test
+    public void resolveEmpty_Test() throws IOException {
+        assertThat(resolve("", 10), is("participant_id,study_id,participant_pk,found\n"));
+        assertThat(resolve("participant_id\n\n", 10), is("participant_id,study_id,participant_pk,found\n"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void chunkOverThreshold_Test() {
+        new ParticipantIdResolver(null, window -> List.of(), InventoryESService.SCROLL_THRESHOLD + 1, 10);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void findChunk_Test() throws IOException {
+        // PAT1 belongs to participants of five studies, more than a page of two
+        List<Map<String, Object>> index = new ArrayList<>();
+        List<Map<String, Object>> found;
+
+        for (int i = 1; i <= 5; i++) {
+            index.add(Map.of("participant_id", "PAT1", "study_id", "phs" + i, "participant_pk", "pk" + i));
+        }
+
+        index.add(Map.of("participant_id", "PAT3", "study_id", "phs1", "participant_pk", "pk6"));
+
+        found = ParticipantIdResolver.findChunk(List.of("PAT1", "PAT3"), 2, query -> {
+            List<Map<String, Object>> filters = (List<Map<String, Object>>) ((Map<String, Object>) ((Map<String, Object>) query.get("query")).get("bool")).get("filter");
+            String after = filters.size() > 1 ? (String) ((Map<String, Map<String, Object>>) filters.get(1).get("range")).get("id").get("gt") : "";
+
+            return index.stream()
+                .filter(participant -> ((String) participant.get("participant_pk")).compareTo(after) > 0)
+                .limit(2)
+                .collect(Collectors.toList());
+        });
+
+        assertThat(found, is(index));
+    }
+}
@@ -0,0 +1,42 @@
+package gov.nih.nci.bento_ri.service;
+
+import org.junit.Test;
+
+import java.util.Map;
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class QueryTemplateTest {
+    private static final Map<String, String> MARKERS = Map.of(
+        "query", "\"{{query}}\"",
+        "include", "[\"{{include}}\"]"
+    );
+
+    @Test
+    public void render_Test() {
+        QueryTemplate template = QueryTemplate.compile(
+            "{\"query\":\"{{query}}\",\"aggs\":{\"race\":{\"terms\":{\"field\":\"race\",\"include\":[\"{{include}}\"]}}}}",
+            MARKERS
+        );
+
+        assertThat(
+            template.render(Map.of("query", "{\"match_all\":{}}", "include", "[\"White\",\"Asian\"]")),
+            is("{\"query\":{\"match_all\":{}},\"aggs\":{\"race\":{\"terms\":{\"field\":\"race\",\"include\":[\"White\",\"Asian\"]}}}}")
+        );
+    }
+
+    @Test
+    public void renderWithoutSlots_Test() {
+        QueryTemplate template = QueryTemplate.compile("{\"size\":0}", MARKERS);
+
+        assertThat(template.render(Map.of()), is("{\"size\":0}"));
+    }
+
+    @Test
+    public void renderMissingValue_Test() {
+        QueryTemplate template = QueryTemplate.compile("{\"query\":\"{{query}}\"}", MARKERS);
+
+        assertThat(template.render(Map.of()), is("{\"query\":null}"));
+    }
+}
@@ -0,0 +1,208 @@
+package gov.nih.nci.bento_ri.service;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.stream.Collectors;
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class ResultCollectorTest {
+    private static final int PAGE_SIZE = 3;
+    private static final int SLICE_THRESHOLD = 10;
+    private static final int SLICES = 4;
+
+    /**
+     * An index of documents with IDs that answers searches, scrolls and clear-scrolls
+     * Only match_all, bool filters, terms and id ranges are understood
+     */
+    private static class FakeIndex {
+        final Gson gson = new Gson();
+        final List<String> ids;
+        final Map<String, List<String>> scrolls = new HashMap<>();
+        final Set<String> clearedScrolls = new HashSet<>();
+        int searchCount = 0;
+
+        FakeIndex(List<String> ids) {
+            this.ids = ids;
+        }
+
+        synchronized JsonObject send(String method, String endpoint, Map<String, String> parameters, Map<String, Object> body) throws IOException {
+            if (method.equals("DELETE")) {
+                @SuppressWarnings("unchecked")
+                List<String> scrollIds = (List<String>) body.get("scroll_id");
+                clearedScrolls.addAll(scrollIds);
+                return new JsonObject();
+            }
+
+            if (endpoint.equals(InventoryESService.SCROLL_ENDPOINT)) {
+                return scrollPage((String) body.get("scroll_id"));
+            }
+
+            List<String> matches = new ArrayList<>();
+
+            for (String id : ids) {
+                if (matches(body.getOrDefault("query", Map.of("match_all", Map.of())), id) && inSlice(body.get("slice"), id)) {
+                    matches.add(id);
+                }
+            }
+
+            searchCount++;
+
+            if (parameters.containsKey("scroll")) {
+                String scrollId = "scroll" + scrolls.size();
+
+                scrolls.put(scrollId, matches);
+                return scrollPage(scrollId);
+            }
+
+            matches.sort(null);
+
+            return response(matches.subList(0, Math.min(PAGE_SIZE, matches.size())), matches.size(), null);
+        }
+
+        private JsonObject scrollPage(String scrollId) throws IOException {
+            List<String> remaining = scrolls.get(scrollId);
+            List<String> page;
+
+            if (clearedScrolls.contains(scrollId)) {
+                throw new IOException("Scroll was cleared");
+            }
+
+            page = new ArrayList<>(remaining.subList(0, Math.min(PAGE_SIZE, remaining.size())));
+            remaining.subList(0, page.size()).clear();
+
+            return response(page, page.size(), scrollId);
+        }
+
+        private JsonObject response(List<String> page, int total, String scrollId) {
+            List<Map<String, Object>> hits = page.stream()
+                .map(id -> Map.<String, Object>of("_source", Map.of("id", id), "sort", List.of(id)))
+                .collect(Collectors.toList());
+            Map<String, Object> response = new HashMap<>(Map.of(
+                "hits", Map.of("total", Map.of("value", total), "hits", hits)
+            ));
+
+            if (scrollId != null) {
+                response.put("_scroll_id", scrollId);
+            }
+
+            return gson.toJsonTree(response).getAsJsonObject();
+        }
+
+        @SuppressWarnings("unchecked")
+        private boolean matches(Object query, String id) {
+            Map<String, Object> clause = (Map<String, Object>) query;
+
+            if (clause.containsKey("match_all")) {
+                return true;
+            }
+
+            if (clause.containsKey("terms")) {
+                return ((Map<String, List<String>>) clause.get("terms")).get("id").contains(id);
+            }
+
+            if (clause.containsKey("range")) {
+                String after = ((Map<String, Map<String, String>>) clause.get("range")).get("id").get("gt");
+                return id.compareTo(after) > 0;
+            }
+
+            List<Object> filters = (List<Object>) ((Map<String, Object>) clause.get("bool")).get("filter");
+
+            return filters.stream().allMatch(filter -> matches(filter, id));
+        }
+
+        @SuppressWarnings("unchecked")
+        private boolean inSlice(Object slice, String id) {
+            if (slice == null) {
+                return true;
+            }
+
+            Map<String, Integer> sliceParams = (Map<String, Integer>) slice;
+
+            return Math.floorMod(id.hashCode(), sliceParams.get("max")) == sliceParams.get("id");
+        }
+    }
+
+    private static List<String> ids(int count) {
+        List<String> ids = new ArrayList<>();
+
+        for (int i = 0; i < count; i++) {
+            ids.add(String.format("PT_%03d", (i * 7) % count));
+        }
+
+        return ids;
+    }
+
+    private static List<String> collect(FakeIndex index, Map<String, Object> query) throws IOException {
+        ResultCollector collector = new ResultCollector(index::send, tasks -> {
+            List<List<Map<String, Object>>> results = new ArrayList<>();
+
+            for (Callable<List<Map<String, Object>>> task : tasks) {
+                try {
+                    results.add(task.call());
+                } catch (Exception e) {
+                    throw new IOException(e);
+                }
+            }
+
+            return results;
+        }, PAGE_SIZE, total -> total < SLICE_THRESHOLD ? 1 : SLICES);
+
+        return collector.collectAll("participants", query, List.of("id"), source -> Map.of("id", source.get("id").getAsString()))
+            .stream()
+            .map(row -> (String) row.get("id"))
+            .collect(Collectors.toList());
+    }
+
+    private static void assertComplete(List<String> collected, List<String> expected) {
+        assertThat(collected.size(), is(expected.size()));
+        assertThat(new HashSet<>(collected), is(new HashSet<>(expected)));
+    }
+
+    @Test
+    public void onePage_Test() throws IOException {
+        FakeIndex index = new FakeIndex(ids(PAGE_SIZE));
+
+        assertComplete(collect(index, Map.of("query", Map.of("match_all", Map.of()))), index.ids);
+        assertThat(index.searchCount, is(1));
+        assertThat(index.scrolls.size(), is(0));
+    }
+
+    @Test
+    public void oneScroll_Test() throws IOException {
+        FakeIndex index = new FakeIndex(ids(SLICE_THRESHOLD));
+
+        assertComplete(collect(index, Map.of("query", Map.of("match_all", Map.of()))), index.ids);
+        assertThat(index.scrolls.size(), is(1));
+        assertThat(index.clearedScrolls, is(index.scrolls.keySet()));
+    }
+
+    @Test
+    public void slices_Test() throws IOException {
+        FakeIndex index = new FakeIndex(ids(50));
+
+        assertComplete(collect(index, Map.of()), index.ids);
+        assertThat(index.scrolls.size(), is(SLICES));
+        assertThat(index.clearedScrolls, is(index.scrolls.keySet()));
+    }
+
+    @Test
+    public void filtered_Test() throws IOException {
+        FakeIndex index = new FakeIndex(ids(50));
+        List<String> wanted = index.ids.subList(5, 40);
+
+        assertComplete(collect(index, Map.of("query", Map.of("terms", Map.of("id", wanted)))), wanted);
+    }
+}
@@ -0,0 +1,19 @@
+package gov.nih.nci.bento_ri.service;
+
+import org.junit.Test;
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class SliceCountTest {
+    @Test
+    public void sliceCountSmall_Test() {
+        assertThat(InventoryESService.sliceCount(InventoryESService.SCROLL_THRESHOLD + 1), is(1));
+        assertThat(InventoryESService.sliceCount(InventoryESService.SLICE_THRESHOLD - 1), is(1));
+    }
+
+    @Test
+    public void sliceCountLarge_Test() {
+        assertThat(InventoryESService.sliceCount(InventoryESService.SLICE_THRESHOLD), is(InventoryESService.SLICES));
+    }
+}
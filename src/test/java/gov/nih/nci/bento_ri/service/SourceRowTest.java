@@ -0,0 +1,39 @@
+package gov.nih.nci.bento_ri.service;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class SourceRowTest {
+    private static final JsonObject SOURCE = JsonParser.parseString(
+        "{\"diagnosis_id\": \"DX_1\", \"age_at_diagnosis\": 4015, \"age_at_diagnosis_str\": \"4015\","
+        + " \"participant\": {\"participant_id\": \"PT_1\"}}"
+    ).getAsJsonObject();
+
+    private static final SourceRow ROW = new SourceRow(SOURCE, Map.of("age_at_diagnosis", "age_at_diagnosis_str"), new Gson());
+
+    @Test
+    public void get_Test() {
+        assertThat(ROW.get("diagnosis_id"), is("DX_1"));
+        assertThat(ROW.get("age_at_diagnosis"), is("4015"));
+        assertThat(ROW.get("participant"), is(Map.of("participant_id", "PT_1")));
+        assertThat(ROW.get("anatomic_site"), is(nullValue()));
+    }
+
+    @Test
+    public void copy_Test() {
+        Map<String, Object> copy = new HashMap<>(ROW);
+
+        assertThat(copy.size(), is(3));
+        assertThat(copy.get("age_at_diagnosis"), is("4015"));
+    }
+}
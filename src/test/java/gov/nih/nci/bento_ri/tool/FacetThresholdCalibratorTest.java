@@ -0,0 +1,95 @@
+package gov.nih.nci.bento_ri.tool;
+
+import com.google.gson.JsonParser;
+
+import org.junit.Test;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class FacetThresholdCalibratorTest {
+    // Stands in for Opensearch: estimates are off for "Blood", exact for "Brain"
+    private static final FacetThresholdCalibrator.SearchBackend STAND_IN = (endpoint, body) -> {
+        String response;
+
+        if (endpoint.equals("/diagnoses/_search")) {
+            response = "{\"aggregations\":{\"anatomic_site\":{\"buckets\":["
+                + "{\"key\":\"Blood\",\"doc_count\":2500,\"cardinality_count\":{\"doc_count\":2500,\"nested_cardinality_count\":{\"value\":2010}}},"
+                + "{\"key\":\"Brain\",\"doc_count\":900,\"cardinality_count\":{\"doc_count\":900,\"nested_cardinality_count\":{\"value\":800}}}"
+                + "]}}}";
+        } else {
+            response = "{\"aggregations\":{\"exact_count\":{\"agg_buckets\":{\"buckets\":["
+                + "{\"key\":\"Blood\",\"doc_count\":2500,\"top_reverse_nested\":{\"doc_count\":2000}},"
+                + "{\"key\":\"Brain\",\"doc_count\":900,\"top_reverse_nested\":{\"doc_count\":800}}"
+                + "]}}}}";
+        }
+
+        return JsonParser.parseString(response).getAsJsonObject();
+    };
+
+    private static final Map<String, List<Map<String, Object>>> FACET_FILTERS = Map.of(
+        "diagnoses", List.of(Map.of(
+            "agg_name", "anatomic_site",
+            "cardinality_agg_name", "participant.id",
+            "count_strategy", "hll"
+        )),
+        "participants", List.of()
+    );
+
+    @Test
+    public void calibrate_Test() throws Exception {
+        FacetThresholdCalibrator calibrator = new FacetThresholdCalibrator(STAND_IN, 0.1);
+        FacetThresholdCalibrator.Result result = calibrator.calibrate(FACET_FILTERS, Map.of(
+            "diagnoses", Map.of("anatomic_site", Map.of("Blood", 2500, "Brain", 500))
+        ));
+
+        assertThat(result.thresholds.get("diagnoses"), is(Map.of("anatomic_site", Map.of("Blood", 1800))));
+        assertThat(result.thresholds.get("participants"), is(Map.of()));
+        assertThat(result.recountsBefore, is(1));
+        assertThat(result.recountsAfter, is(1));
+        assertThat(result.recountsSaved(), is(0));
+        assertThat(result.wrongCountsBefore, is(1));
+    }
+
+    @Test
+    public void calibrateStaleThresholds_Test() throws Exception {
+        FacetThresholdCalibrator calibrator = new FacetThresholdCalibrator(STAND_IN, 0.1);
+        FacetThresholdCalibrator.Result result = calibrator.calibrate(FACET_FILTERS, Map.of(
+            "diagnoses", Map.of("anatomic_site", Map.of("Blood", 1000, "Brain", 100))
+        ));
+
+        assertThat(result.recountsBefore, is(2));
+        assertThat(result.recountsSaved(), is(1));
+        assertThat(result.wrongCountsBefore, is(0));
+    }
+
+    @Test
+    public void toYaml_Test() {
+        String yaml = FacetThresholdCalibrator.toYaml(Map.of(
+            "diagnoses", Map.of("anatomic_site", Map.of("C42.0 : Blood", 1800))
+        ));
+
+        assertThat(yaml, containsString("anatomic_site:"));
+        assertThat(yaml, containsString("'C42.0 : Blood': 1800"));
+    }
+
+    @Test
+    public void calibrateSkipsExactFacets_Test() throws Exception {
+        FacetThresholdCalibrator calibrator = new FacetThresholdCalibrator((endpoint, body) -> {
+            throw new AssertionError("Exact facets shouldn't be queried");
+        }, 0.1);
+        FacetThresholdCalibrator.Result result = calibrator.calibrate(Map.of(
+            "diagnoses", List.of(Map.of(
+                "agg_name", "anatomic_site",
+                "cardinality_agg_name", "participant.id",
+                "count_strategy", "exact"
+            ))
+        ), Map.of());
+
+        assertThat(result.thresholds.get("diagnoses"), is(Map.of()));
+    }
+}